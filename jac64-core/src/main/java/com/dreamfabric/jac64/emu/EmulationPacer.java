@@ -0,0 +1,81 @@
+package com.dreamfabric.jac64.emu;
+
+import java.util.concurrent.locks.LockSupport;
+
+import com.dreamfabric.jac64.emu.bus.ControlBus;
+import com.dreamfabric.jac64.emu.scheduler.PeriodicTimeEvent;
+
+/***
+ * Keeps the emulation at its real speed. The pacer is an event fired every
+ * {@link #PERIOD} cycles, which waits when the emulation is ahead.
+ */
+public abstract class EmulationPacer extends PeriodicTimeEvent {
+
+    // a quarter of a PAL frame
+    public static final int PERIOD = 63 * 312 / 4;
+
+    // the end of a wait is spun instead of slept, sleeping is not that precise
+    private static final long SPIN_NANOS = 1000000;
+
+    private ControlBus controlBus;
+    private boolean fullSpeed = false;
+
+    public EmulationPacer() {
+        super(PERIOD);
+    }
+
+    public void start(ControlBus controlBus, long currentCpuCycles) {
+        this.controlBus = controlBus;
+        restart(currentCpuCycles);
+        controlBus.addEvent(this, currentCpuCycles + PERIOD);
+    }
+
+    public void stop() {
+        if (controlBus != null) {
+            controlBus.removeEvent(this);
+        }
+    }
+
+    /***
+     * Runs the emulation as fast as possible when true.
+     */
+    public void setFullSpeed(boolean fullSpeed) {
+        this.fullSpeed = fullSpeed;
+    }
+
+    public boolean isFullSpeed() {
+        return fullSpeed;
+    }
+
+    @Override
+    public void execute(long currentCpuCycles) {
+        if (fullSpeed) {
+            restart(currentCpuCycles);
+        } else {
+            pace(currentCpuCycles);
+        }
+    }
+
+    /***
+     * Starts measuring the time from currentCpuCycles on.
+     */
+    protected abstract void restart(long currentCpuCycles);
+
+    /***
+     * Waits as long as the emulation is ahead at currentCpuCycles.
+     */
+    protected abstract void pace(long currentCpuCycles);
+
+    /***
+     * Sleeps most of the time and spins the end of it.
+     */
+    protected static void waitNanos(long nanos) {
+        long end = System.nanoTime() + nanos;
+        if (nanos > SPIN_NANOS) {
+            LockSupport.parkNanos(nanos - SPIN_NANOS);
+        }
+        while (end - System.nanoTime() > 0) {
+            Thread.yield();
+        }
+    }
+}
@@ -18,21 +18,34 @@ public class SlowDownCalculator {
         this.loopStartCycles = loopStartCycles;
     }
 
+    /***
+     * Returns how long to wait for the cycles run since the loop start to
+     * take their real time, 0 when the host is too slow.
+     */
     public long calculateWaitInNanos(long markLoopEndNanos, long loopEndCycles) {
-        long durationNanos = markLoopEndNanos - loopStartNanos;
-        long deltaCycles = loopEndCycles - loopStartCycles;
-
-        double curCyclesPerSecond = 1e9 * deltaCycles / durationNanos;
+        long aheadNanos = calculateAheadInNanos(markLoopEndNanos, loopEndCycles);
 
-        if (curCyclesPerSecond > requiredCyclesPerSecond) {
+        if (aheadNanos > 0) {
             // too fast. The host machine is to fast. Need to slow down.
-            double delayInNanos = deltaCycles * oneCycleInNanos;
-            
-            return (long)delayInNanos;
+            return aheadNanos;
         }
-        
+
         // to slow. Is the host machine to slow? No delay required.
         return 0;
+    }
+
+    /***
+     * Returns how far the emulation is ahead of the real time, negative when
+     * it is behind.
+     */
+    public long calculateAheadInNanos(long markLoopEndNanos, long loopEndCycles) {
+        long durationNanos = markLoopEndNanos - loopStartNanos;
+        long deltaCycles = loopEndCycles - loopStartCycles;
+
+        return (long) (deltaCycles * oneCycleInNanos) - durationNanos;
+    }
 
+    public long getRequiredCyclesPerSecond() {
+        return requiredCyclesPerSecond;
     }
 }
@@ -0,0 +1,34 @@
+package com.dreamfabric.jac64.emu;
+
+/***
+ * {@link EmulationPacer} running the emulation at the speed of the cpu on the
+ * wall clock, see {@link SlowDownCalculator}. When the host can't keep up for
+ * longer than {@link #MAX_LAG_NANOS} it restarts from where it is instead of
+ * trying to catch up.
+ */
+public class WallClockPacer extends EmulationPacer {
+
+    public static final long MAX_LAG_NANOS = 100000000;
+
+    private SlowDownCalculator slowDownCalculator;
+
+    public WallClockPacer(int cyclesPerSecond) {
+        slowDownCalculator = new SlowDownCalculator(cyclesPerSecond);
+    }
+
+    @Override
+    protected void restart(long currentCpuCycles) {
+        slowDownCalculator.markLoopStart(System.nanoTime(), currentCpuCycles);
+    }
+
+    @Override
+    protected void pace(long currentCpuCycles) {
+        long now = System.nanoTime();
+        long aheadNanos = slowDownCalculator.calculateAheadInNanos(now, currentCpuCycles);
+        if (aheadNanos > 0) {
+            waitNanos(aheadNanos);
+        } else if (aheadNanos < -MAX_LAG_NANOS) {
+            slowDownCalculator.markLoopStart(now, currentCpuCycles);
+        }
+    }
+}
@@ -7,7 +7,6 @@ import com.dreamfabric.jac64.emu.cia.CIA2;
 import com.dreamfabric.jac64.emu.io.IO;
 import com.dreamfabric.jac64.emu.memory.BasicROM;
 import com.dreamfabric.jac64.emu.memory.CharROM;
-import com.dreamfabric.jac64.emu.memory.ColorRAM;
 import com.dreamfabric.jac64.emu.memory.KernalROM;
 import com.dreamfabric.jac64.emu.memory.RAM;
 
@@ -17,12 +16,34 @@ public class AddressableBus implements AddressableIf {
     private final static int START_ADDRESS = 0x0000;
     private final static int END_ADDRESS = 0xFFFF;
 
+    private final static int PAGE_SHIFT = 8;
+    private final static int PAGE_COUNT = 256;
+
     private BasicROM basicRom;
     private KernalROM kernalRom;
     private CharROM charRom;
     private IO io;
     private RAM ram;
     private CIA2 cia2;
+    private VicMemoryView vicMemory = new VicMemoryView();
+
+    /***
+     * The page table: one entry per 256 bytes page of the CPU address space. When
+     * a page is backed by a plain memory (RAM or ROM) its array is stored
+     * directly in *PageMemory, otherwise the access goes through the
+     * *PageHandler (i.e. IO). Rebuilt by {@link #updatePageTable()} whenever
+     * the banking changes.
+     */
+    private byte[][] readPageMemory = new byte[PAGE_COUNT][];
+    private int[] readPageOffset = new int[PAGE_COUNT];
+    private AddressableIf[] readPageHandler = new AddressableIf[PAGE_COUNT];
+    private byte[][] writePageMemory = new byte[PAGE_COUNT][];
+    private AddressableIf[] writePageHandler = new AddressableIf[PAGE_COUNT];
+    // the chips mapped in, see getConfiguration()
+    private int configuration;
+
+    // i.e. the CPU's translated code, told about every write
+    private WriteListenerIf writeListener;
 
     // statistics
     private long readCount = 0;
@@ -30,6 +51,8 @@ public class AddressableBus implements AddressableIf {
 
     public AddressableBus(CIA2 cia2) {
         this.cia2 = cia2;
+        vicMemory.setBank(cia2.getPRA());
+        cia2.setVicMemoryView(vicMemory);
     }
 
     public void setBasicRom(BasicROM basicRom) {
@@ -42,91 +65,195 @@ public class AddressableBus implements AddressableIf {
 
     public void setCharRom(CharROM charRom) {
         this.charRom = charRom;
+        vicMemory.setCharRom(charRom);
     }
 
     public void setIO(IO io) {
         this.io = io;
+        if (io.getColorRAM() != null) {
+            vicMemory.setColorRAM(io.getColorRAM());
+        }
     }
 
     public void setRAM(RAM ram) {
         this.ram = ram;
+        vicMemory.setRAM(ram);
+    }
+
+    /***
+     * Returns the memory as seen by the VIC.
+     */
+    public VicMemoryView getVicMemoryView() {
+        return vicMemory;
     }
 
     public RAM getRAM() {
         return ram;
     }
 
+    /***
+     * Sets the listener told about the writes (i.e. the translated code of
+     * the CPU), null for none. Also set on the RAM, for the data loaded
+     * behind the bus.
+     */
+    public void setWriteListener(WriteListenerIf writeListener) {
+        this.writeListener = writeListener;
+        ram.setWriteListener(writeListener);
+    }
+
     @Override
     public boolean write(int address, int data, long currentCpuCycles) {
         writeCount++;
 
-        boolean result = false;
+        address &= END_ADDRESS;
+        int page = address >> PAGE_SHIFT;
 
-        // it makes no point to write to ROMs
-        result = io.write(address, data, currentCpuCycles);
-        if (result) {
-            return result;
+        if (writeListener != null) {
+            writeListener.written(address);
+        }
+
+        byte[] memory = writePageMemory[page];
+        if (memory != null) {
+            // it makes no point to write to ROMs, so this is always RAM
+            memory[address] = (byte) data;
+            return true;
+        }
+
+        if (writePageHandler[page].write(address, data, currentCpuCycles)) {
+            return true;
         }
 
         return ram.write(address, data, currentCpuCycles);
     }
 
     @Override
-    public Integer read(int address, long currentCpuCycles) {
+    public int read(int address, long currentCpuCycles) {
         readCount++;
 
-        Integer result = null;
+        address &= END_ADDRESS;
+        int page = address >> PAGE_SHIFT;
 
-        result = basicRom.read(address, currentCpuCycles);
-        if (result != null) {
-            return result;
+        byte[] memory = readPageMemory[page];
+        if (memory != null) {
+            return memory[address - readPageOffset[page]] & 0xff;
         }
 
-        result = kernalRom.read(address, currentCpuCycles);
-        if (result != null) {
+        int result = readPageHandler[page].read(address, currentCpuCycles);
+        if (result != NOT_READABLE) {
             return result;
         }
 
-        result = charRom.read(address, currentCpuCycles);
-        if (result != null) {
-            return result;
+        return ram.read(address, currentCpuCycles);
+    }
+
+    /***
+     * Returns the byte at the address when it is plain memory (RAM or ROM),
+     * without counting it as an access. Returns {@link #NOT_READABLE} for IO.
+     */
+    public int peek(int address) {
+        address &= END_ADDRESS;
+        int page = address >> PAGE_SHIFT;
+
+        byte[] memory = readPageMemory[page];
+        if (memory != null) {
+            return memory[address - readPageOffset[page]] & 0xff;
         }
+        return NOT_READABLE;
+    }
 
-        result = io.read(address, currentCpuCycles);
-        if (result != null) {
-            return result;
+    /***
+     * Returns the memory configuration as seen by the CPU, one bit per chip
+     * which can be mapped in: BASIC ROM, KERNAL ROM, CHAR ROM and IO. Changes
+     * only in {@link #updatePageTable()}.
+     */
+    public int getConfiguration() {
+        return configuration;
+    }
+
+    /***
+     * Rebuilds the page table from the current enabled state of the chips. Must
+     * be called every time the banking changes (see
+     * {@link com.dreamfabric.jac64.emu.pla.PLA}).
+     */
+    public void updatePageTable() {
+        for (int page = 0; page < PAGE_COUNT; page++) {
+            int address = page << PAGE_SHIFT;
+
+            AddressableIf readable = findReadable(address);
+            readPageHandler[page] = readable;
+            if (readable == io) {
+                readPageMemory[page] = null;
+                readPageOffset[page] = 0;
+            } else {
+                AddressableChip chip = (AddressableChip) readable;
+                readPageMemory[page] = chip.memory;
+                readPageOffset[page] = chip.getStartAddress();
+            }
+
+            AddressableIf writable = findWritable(address);
+            writePageHandler[page] = writable;
+            writePageMemory[page] = (writable == ram) ? ((AddressableChip) ram).memory : null;
         }
 
-        return ram.read(address, currentCpuCycles);
+        configuration = (basicRom.isEnabled() ? 1 : 0) | (kernalRom.isEnabled() ? 2 : 0)
+                | (charRom.isEnabled() ? 4 : 0) | (io.isEnabled() ? 8 : 0);
     }
 
-    public int readVicExclusive(int addressSeenByVic) {
-        int cia2PRA = cia2.getPRA();
-        int vicBankBaseAddress = (~(cia2PRA) & 3) << 14;
+    private AddressableIf findReadable(int address) {
+        // the same priority as the chips were asked before
+        if (isMapped(basicRom, address)) {
+            return basicRom;
+        }
 
-        boolean va14 = ((vicBankBaseAddress >> 14) & 0x1) == 1 ? true : false;
+        if (isMapped(kernalRom, address)) {
+            return kernalRom;
+        }
 
-        Integer result = vicReadFromCharacterROM(va14, addressSeenByVic);
-        if (result != null) {
-            return result;
+        if (isMapped(charRom, address)) {
+            return charRom;
+        }
+
+        if (isMapped(io, address)) {
+            return io;
+        }
+
+        return ram;
+    }
+
+    private AddressableIf findWritable(int address) {
+        // it makes no point to write to ROMs
+        if (isMapped(io, address)) {
+            return io;
         }
 
-        // read from RAM
-        int addressSeenByCPU = vicBankBaseAddress | addressSeenByVic;
-        return ram.read(addressSeenByCPU, 0);
+        return ram;
     }
 
-    public Integer readVicExclusiveFromColorRAM(int addressSeenByVic) {
-        ColorRAM colorRam = io.getColorRAM();
+    private boolean isMapped(AddressableIf addressable, int address) {
+        if (!addressable.isEnabled()) {
+            return false;
+        }
+
+        return address >= addressable.getStartAddress() && address <= addressable.getEndAddress();
+    }
 
-        int address = colorRam.getStartAddress() + addressSeenByVic;
+    /***
+     * Returns true when a write to the given address may be seen by the VIC:
+     * the address is in the IO area or in the current VIC bank.
+     */
+    public boolean isVicVisible(int address) {
+        if ((address & 0xf000) == 0xd000) {
+            return true;
+        }
+        return (address & 0xc000) == vicMemory.getBankBaseAddress();
+    }
 
-        boolean enabled = colorRam.isEnabled();
-        colorRam.setEnabled(true);
-        Integer result = colorRam.read(address, 0);
-        colorRam.setEnabled(enabled);
+    public int readVicExclusive(int addressSeenByVic) {
+        return vicMemory.read(addressSeenByVic);
+    }
 
-        return result;
+    public int readVicExclusiveFromColorRAM(int addressSeenByVic) {
+        return vicMemory.readColor(addressSeenByVic);
     }
 
     @Override
@@ -150,6 +277,14 @@ public class AddressableBus implements AddressableIf {
         return true;
     }
 
+    /***
+     * Counts a read the CPU took from its translated code instead of the bus,
+     * so the statistics are the same with and without the translation.
+     */
+    public void countCachedRead() {
+        readCount++;
+    }
+
     public long getReadCount() {
         return readCount;
     }
@@ -164,51 +299,4 @@ public class AddressableBus implements AddressableIf {
         LOGGER.info(String.format("Was %s   CIA operations per second.",
                 1000000 * (io.getCia1().getReadCount() + io.getCia1().getWriteCount()) / currentCpuCycles));
     }
-
-    /***
-     * if (p6 || p7) == true then CharROM is enabled.
-     * <p>
-     * p6 <= n_va14 and not va13 and va12 and n_aec and n_game ; if true then
-     * address 0x1000
-     * </p>
-     * <p>
-     * p7 <= n_va14 and not va13 and va12 and n_aec and not n_exrom and not n_game
-     * ;if true then address 0x9000
-     * </p>
-     * 
-     * @param vicBankBaseAddress
-     * @param addressSeenByVic
-     * @return
-     */
-    private Integer vicReadFromCharacterROM(boolean va14, int addressSeenByVic) {
-        int charROMAddress = -1;
-
-        boolean n_va14 = !va14;
-
-        if (n_va14 == false) {
-            // n_va14 is 0 => p6 = false and p7 = false. CharROM is not enabled.
-            return null;
-        }
-
-        if (addressSeenByVic >= 0x1000 && addressSeenByVic <= 0x1FFF) {
-            // read from Character ROM
-            charROMAddress = addressSeenByVic - 0x1000 + charRom.getStartAddress();
-        }
-
-        if (addressSeenByVic >= 0x9000 && addressSeenByVic <= 0x9FFF) {
-            // read from Character ROM
-            charROMAddress = addressSeenByVic - 0x9000 + charRom.getStartAddress();
-        }
-
-        if (charROMAddress == -1) {
-            return null;
-        }
-
-        boolean enabled = charRom.isEnabled();
-        charRom.setEnabled(true);
-        Integer result = charRom.read(charROMAddress, 0);
-        charRom.setEnabled(enabled);
-
-        return result;
-    }
 }
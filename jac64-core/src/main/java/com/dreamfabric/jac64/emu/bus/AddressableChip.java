@@ -4,13 +4,20 @@ package com.dreamfabric.jac64.emu.bus;
  * A basic implementation that performs a real write and read operations into an
  * internal byte array. This class may be used to implement a real emulated
  * devices.
+ * <p>
+ * Use {@link #load(int, byte[], int, int)} and
+ * {@link #dump(int, byte[], int, int)} to move whole blocks of memory (ROM
+ * images, programs, snapshots) instead of calling {@link #write0(int, int)}
+ * byte by byte.
+ * </p>
  * 
  * @author Witold Markowski
  *
  */
 public abstract class AddressableChip extends AddressableVoid {
 
-    private int memory[];
+    // package visible, so the AddressableBus page table can map it directly
+    byte memory[];
 
     public AddressableChip() {
         super();
@@ -30,7 +37,8 @@ public abstract class AddressableChip extends AddressableVoid {
             return false;
         }
 
-        write0(address, data);
+        // range already checked by canWrite
+        memory[address - getStartAddress()] = (byte) data;
 
         return true;
     }
@@ -38,21 +46,72 @@ public abstract class AddressableChip extends AddressableVoid {
     /***
      * Performs a read operation.
      * 
-     * @return Returns not null value when read succeeded. Returns null if the read
-     *         operation was not possible (device disabled or address mismatch).
+     * @return Returns the read value when read succeeded. Returns
+     *         {@link AddressableIf#NOT_READABLE} if the read operation was not
+     *         possible (device disabled or address mismatch).
      */
     @Override
-    public Integer read(int address, long currentCpuCycles) {
+    public int read(int address, long currentCpuCycles) {
         if (!canRead(address)) {
-            return null;
+            return NOT_READABLE;
         }
 
-        return memory[address - getStartAddress()];
+        return memory[address - getStartAddress()] & 0xff;
+    }
+
+    /***
+     * Copies a block of data into the memory. The methods {@link #isWritable()}
+     * and {@link #isEnabled()} are not taken into account here.
+     * 
+     * @param address
+     *            the first address (as seen by the CPU) to write to
+     * @param src
+     *            the source data
+     * @param offset
+     *            the first byte of src to copy
+     * @param length
+     *            the number of bytes to copy
+     */
+    public void load(int address, byte[] src, int offset, int length) {
+        checkBlock(address, length);
+
+        System.arraycopy(src, offset, memory, address - getStartAddress(), length);
+    }
+
+    /***
+     * Copies a block of the memory into dst. The method {@link #isEnabled()} is
+     * not taken into account here.
+     * 
+     * @param address
+     *            the first address (as seen by the CPU) to read from
+     * @param dst
+     *            the destination array
+     * @param offset
+     *            the first byte of dst to fill
+     * @param length
+     *            the number of bytes to copy
+     */
+    public void dump(int address, byte[] dst, int offset, int length) {
+        checkBlock(address, length);
+
+        System.arraycopy(memory, address - getStartAddress(), dst, offset, length);
     }
 
     protected void initMemory() {
         int length = getEndAddress() - getStartAddress() + 1;
-        memory = new int[length];
+        memory = new byte[length];
+    }
+
+    private void checkBlock(int address, int length) {
+        if (address < getStartAddress()) {
+            throw new IllegalArgumentException(
+                    String.format("Can't copy: address to small %s < %s", address, getStartAddress()));
+        }
+
+        if (address + length - 1 > getEndAddress()) {
+            throw new IllegalArgumentException(String.format("Can't copy: address to big %s > %s",
+                    address + length - 1, getEndAddress()));
+        }
     }
 
     protected void write0(int address, int data) {
@@ -73,10 +132,10 @@ public abstract class AddressableChip extends AddressableVoid {
             throw new IllegalArgumentException(
                     String.format("Can't write: address to big %s > %s", address, getEndAddress()));
         }
-        memory[address - getStartAddress()] = data;
+        memory[address - getStartAddress()] = (byte) data;
     }
 
-    protected Integer read0(int address) {
+    protected int read0(int address) {
         if (address < getStartAddress()) {
             throw new IllegalArgumentException(
                     String.format("Can't write: address to small %s < %s", address, getStartAddress()));
@@ -87,6 +146,6 @@ public abstract class AddressableChip extends AddressableVoid {
                     String.format("Can't write: address to big %s > %s", address, getEndAddress()));
         }
 
-        return memory[address - getStartAddress()];
+        return memory[address - getStartAddress()] & 0xff;
     }
 }
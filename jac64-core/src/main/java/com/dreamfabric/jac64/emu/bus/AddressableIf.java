@@ -2,9 +2,16 @@ package com.dreamfabric.jac64.emu.bus;
 
 public interface AddressableIf {
 
+    /***
+     * Returned by {@link #read(int, long)} when the read operation was not
+     * possible (device disabled or address mismatch). Real values are always
+     * in range 0-255.
+     */
+    public final static int NOT_READABLE = -1;
+
     public boolean write(int address, int data, long currentCpuCycles);
 
-    public Integer read(int address, long currentCpuCycles);
+    public int read(int address, long currentCpuCycles);
 
     public int getStartAddress();
 
@@ -32,14 +32,21 @@ public abstract class AddressableVoid implements AddressableIf {
     }
 
     /***
-     * Performs a 'fake read' operation.
+     * Performs a 'fake read' operation. The device answers for its whole
+     * address range like a real chip would, so the CPU can read every address
+     * mapped to it (i.e. the IO area, where a read nobody answers is an
+     * error).
      * 
-     * @return It returns null.
+     * @return Returns 0 when the device is enabled and the address is in its
+     *         range, {@link AddressableIf#NOT_READABLE} otherwise.
      */
     @Override
-    public Integer read(int address, long currentCpuCycles) {
-        // TODO: return null or maybe zero?
-        return null;
+    public int read(int address, long currentCpuCycles) {
+        if (!canRead(address)) {
+            return NOT_READABLE;
+        }
+
+        return 0;
     }
 
     @Override
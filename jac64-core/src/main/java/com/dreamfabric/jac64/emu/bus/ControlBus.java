@@ -14,6 +14,7 @@ import com.dreamfabric.jac64.emu.cpu.MOS6510Core;
 import com.dreamfabric.jac64.emu.interrupt.InterruptManager;
 import com.dreamfabric.jac64.emu.pla.PLA;
 import com.dreamfabric.jac64.emu.scheduler.EventQueue;
+import com.dreamfabric.jac64.emu.scheduler.PeriodicTimeEvent;
 import com.dreamfabric.jac64.emu.scheduler.TimeEvent;
 import com.dreamfabric.jac64.emu.vic.VICIf;
 
@@ -27,6 +28,9 @@ public class ControlBus implements KeyListener, Joy1KeyListener, Joy2KeyListener
     private VICIf vic;
     private CIA1 cia1;
 
+    // the last cycle the VIC has been clocked for
+    private long vicClockedUntil = 0;
+
     public ControlBus(PLA pla, InterruptManager interruptManager, MOS6510Core cpu, EventQueue scheduler, VICIf vic) {
         this.pla = pla;
         this.interruptManager = interruptManager;
@@ -63,11 +67,17 @@ public class ControlBus implements KeyListener, Joy1KeyListener, Joy2KeyListener
         cpu.baLowUntil = cpuCycles;
     }
 
+    /***
+     * Called by the CPU on every cycle, so keep it cheap: the debug message is
+     * only built when debug logging is really enabled.
+     */
     public void executeFromEventQueue(long currentCpuCycles) {
         while (currentCpuCycles >= scheduler.nextTime) {
             TimeEvent t = scheduler.popFirst();
             if (t != null) {
-                LOGGER.debug("Executing event: " + t.getShort());
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Executing event: " + t.getShort());
+                }
                 // Give it the actual time also!!!
                 t.execute(currentCpuCycles);
             } else {
@@ -85,8 +95,43 @@ public class ControlBus implements KeyListener, Joy1KeyListener, Joy2KeyListener
         return scheduler.removeEvent(event);
     }
 
+    public void scheduleEvent(PeriodicTimeEvent event, long currentCpuCycles) {
+        event.schedule(scheduler, currentCpuCycles);
+    }
+
+    public void setEventPhase(PeriodicTimeEvent event, long phase, long currentCpuCycles) {
+        event.setPhase(scheduler, phase, currentCpuCycles);
+    }
+
+    public void pauseEvent(PeriodicTimeEvent event, long currentCpuCycles) {
+        event.pause(scheduler, currentCpuCycles);
+    }
+
+    public void resumeEvent(PeriodicTimeEvent event, long currentCpuCycles) {
+        event.resume(scheduler, currentCpuCycles);
+    }
+
     public void clock(long currentCpuCycles) {
         vic.clock(currentCpuCycles);
+        vicClockedUntil = currentCpuCycles;
+    }
+
+    /***
+     * Lets the VIC catch up all the cycles it has missed, up to (and including)
+     * the given one.
+     * 
+     * @return the next cycle the VIC has to be synchronized at
+     */
+    public long syncVic(long currentCpuCycles) {
+        if (vicClockedUntil < currentCpuCycles) {
+            vic.clock(vicClockedUntil + 1, currentCpuCycles);
+            vicClockedUntil = currentCpuCycles;
+        }
+        return vic.getNextSyncCycle(currentCpuCycles);
+    }
+
+    public long getNextEventTime() {
+        return scheduler.nextTime;
     }
 
     @Override
@@ -0,0 +1,64 @@
+package com.dreamfabric.jac64.emu.bus;
+
+import com.dreamfabric.jac64.emu.memory.CharROM;
+import com.dreamfabric.jac64.emu.memory.ColorRAM;
+import com.dreamfabric.jac64.emu.memory.RAM;
+
+/***
+ * The memory as seen by the VIC: the 16 KB bank selected by the CIA2 port A,
+ * the Character ROM at $1000 - $1FFF of the banks 0 and 2, and the colour
+ * RAM. The bank is updated by the CIA2 when its port A is written, so the
+ * reads themselves go straight to the memory arrays.
+ */
+public class VicMemoryView {
+
+    private byte[] ram;
+    private byte[] charRom;
+    private byte[] colorRam;
+
+    private int bankBaseAddress;
+    private boolean charRomVisible;
+
+    public void setRAM(RAM ram) {
+        this.ram = ((AddressableChip) ram).memory;
+    }
+
+    public void setCharRom(CharROM charRom) {
+        this.charRom = ((AddressableChip) charRom).memory;
+    }
+
+    public void setColorRAM(ColorRAM colorRam) {
+        this.colorRam = ((AddressableChip) colorRam).memory;
+    }
+
+    /***
+     * Selects the bank from the value of the CIA2 port A (bits 0 and 1,
+     * inverted).
+     */
+    public void setBank(int cia2PRA) {
+        bankBaseAddress = (~cia2PRA & 3) << 14;
+        // The Character ROM is seen in the banks where VA14 is low
+        charRomVisible = (bankBaseAddress & 0x4000) == 0;
+    }
+
+    public int getBankBaseAddress() {
+        return bankBaseAddress;
+    }
+
+    /***
+     * Reads a byte from the 14 bit address seen by the VIC.
+     */
+    public int read(int addressSeenByVic) {
+        if (charRomVisible && (addressSeenByVic & 0x3000) == 0x1000) {
+            return charRom[addressSeenByVic & 0x0fff] & 0xff;
+        }
+        return ram[bankBaseAddress | addressSeenByVic] & 0xff;
+    }
+
+    /***
+     * Reads the colour RAM, the address is 0 - $3FF.
+     */
+    public int readColor(int addressSeenByVic) {
+        return colorRam[addressSeenByVic] & 0xff;
+    }
+}
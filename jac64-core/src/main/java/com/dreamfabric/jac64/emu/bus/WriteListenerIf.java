@@ -0,0 +1,22 @@
+package com.dreamfabric.jac64.emu.bus;
+
+/***
+ * Told about the memory changes, i.e. by the CPU to drop the code it has
+ * translated from the changed bytes.
+ *
+ * @see AddressableBus#setWriteListener(WriteListenerIf)
+ */
+public interface WriteListenerIf {
+
+    /***
+     * The CPU has written to address through the bus. Called from the
+     * emulation thread.
+     */
+    void written(int address);
+
+    /***
+     * length bytes from address have been changed behind the bus (i.e. a
+     * program loaded into the RAM). May be called from any thread.
+     */
+    void loaded(int address, int length);
+}
@@ -207,10 +207,10 @@ public abstract class CIA extends AddressableChip implements SimulableIf {
     }
 
     @Override
-    public Integer read(int address, long currentCpuCycles) {
-        Integer result = super.read(address, currentCpuCycles);
-        if (result == null) {
-            return null;
+    public int read(int address, long currentCpuCycles) {
+        int result = super.read(address, currentCpuCycles);
+        if (result == NOT_READABLE) {
+            return NOT_READABLE;
         }
 
         readCount++;
@@ -285,6 +285,13 @@ public abstract class CIA extends AddressableChip implements SimulableIf {
         // System.out.println("--------------------------");
     }
 
+    /***
+     * Returns the value timer A is reloaded with.
+     */
+    public int getTimerALatch() {
+        return timerA.getLatch();
+    }
+
     public long getReadCount() {
         return readCount;
     }
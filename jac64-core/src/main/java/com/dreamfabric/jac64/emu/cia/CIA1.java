@@ -69,10 +69,10 @@ public class CIA1 extends CIA {
     }
 
     @Override
-    public Integer read(int address, long currentCpuCycles) {
-        Integer result = super.read(address, currentCpuCycles);
-        if (result == null) {
-            return null;
+    public int read(int address, long currentCpuCycles) {
+        int result = super.read(address, currentCpuCycles);
+        if (result == NOT_READABLE) {
+            return NOT_READABLE;
         }
 
         int localAddress = address - getStartAddress();
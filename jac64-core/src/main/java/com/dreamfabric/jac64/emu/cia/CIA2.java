@@ -1,6 +1,7 @@
 package com.dreamfabric.jac64.emu.cia;
 
 import com.dreamfabric.jac64.emu.bus.ControlBus;
+import com.dreamfabric.jac64.emu.bus.VicMemoryView;
 import com.dreamfabric.jac64.emu.interrupt.InterruptManager;
 
 public class CIA2 extends CIA {
@@ -8,10 +9,28 @@ public class CIA2 extends CIA {
     public final static int START_ADDRESS = 0xDD00;
     public final static int END_ADDRESS = 0xDDFF;
 
+    private VicMemoryView vicMemory;
+
     public CIA2(ControlBus controlBus) {
         super(START_ADDRESS, controlBus);
     }
 
+    /***
+     * Sets the VIC memory view which gets the bank from port A.
+     */
+    public void setVicMemoryView(VicMemoryView vicMemory) {
+        this.vicMemory = vicMemory;
+    }
+
+    @Override
+    public boolean write(int address, int data, long currentCpuCycles) {
+        boolean result = super.write(address, data, currentCpuCycles);
+        if (result && vicMemory != null && address - getStartAddress() == PRA) {
+            vicMemory.setBank(getPRA());
+        }
+        return result;
+    }
+
     @Override
     public int getStartAddress() {
         return START_ADDRESS;
@@ -3,7 +3,7 @@ package com.dreamfabric.jac64.emu.cia.timer;
 import com.dreamfabric.jac64.emu.SimulableIf;
 import com.dreamfabric.jac64.emu.bus.ControlBus;
 import com.dreamfabric.jac64.emu.scheduler.EventQueue;
-import com.dreamfabric.jac64.emu.scheduler.TimeEvent;
+import com.dreamfabric.jac64.emu.scheduler.PeriodicTimeEvent;
 
 public class RealTimeClock implements SimulableIf {
 
@@ -22,11 +22,9 @@ public class RealTimeClock implements SimulableIf {
         this.controlBus = controlBus;
     }
 
-    TimeEvent updateEvent = new TimeEvent(0) {
+    PeriodicTimeEvent updateEvent = new PeriodicTimeEvent(clocksPerSample) {
         public void execute(long currentCpuCycles) {
             RealTimeClock.this.execute();
-
-            controlBus.addEvent(this, currentCpuCycles + clocksPerSample);
         }
     };
 
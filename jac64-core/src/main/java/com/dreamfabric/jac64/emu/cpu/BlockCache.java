@@ -0,0 +1,329 @@
+package com.dreamfabric.jac64.emu.cpu;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.dreamfabric.jac64.emu.bus.WriteListenerIf;
+
+/***
+ * Translated straight-line code for {@link MOS6510Core#setTranslation(boolean)}:
+ * a block holds the decoded instructions (opcode and operand bytes) from its
+ * start address up to the first jump, branch, return or BRK, so they are
+ * neither read from the bus nor decoded again while the block stays valid.
+ * <p>
+ * Blocks are kept per memory configuration (see
+ * {@link MOS6510Core#getMemoryConfiguration()}) and start address. A write to
+ * any byte of a block (see {@link #written(int)}) drops the block, so self
+ * modifying code is translated again. Memory changed behind the bus (i.e.
+ * programs loaded into the RAM) must be reported with
+ * {@link #loaded(int, int)}, which drops the blocks touching the pages
+ * changed, or {@link #flush()}.
+ * <p>
+ * Only the emulation thread may use the cache, except {@link #loaded(int, int)}
+ * and {@link #flush()}: these only mark what to drop before the next block is
+ * looked up.
+ */
+public class BlockCache implements WriteListenerIf {
+
+    // the longest block, in instructions
+    public static final int MAX_BLOCK_SIZE = 32;
+    // all the blocks are dropped beyond this, i.e. for code generated on the fly
+    public static final int MAX_BLOCKS = 16384;
+
+    private static final int CONFIGURATIONS = 16;
+    private static final int PAGE_SHIFT = 8;
+    private static final int PAGES = 0x10000 >> PAGE_SHIFT;
+
+    // bytes of each instruction, taken from the MOS6510Ops tables
+    private static final int[] LENGTH = new int[256];
+    // true for the instructions which may not continue at the next one
+    private static final boolean[] ENDS_BLOCK = new boolean[256];
+
+    static {
+        // idempotent, adds the addressing modes to INSTRUCTION_SET
+        MOS6510Ops.init0();
+        for (int opcode = 0; opcode < 256; opcode++) {
+            int instruction = MOS6510Ops.INSTRUCTION_SET[opcode];
+            int addressing = (instruction & MOS6510Ops.ADDRESSING_MASK) >> MOS6510Ops.ADDRESSING_SHIFT;
+            LENGTH[opcode] = MOS6510Ops.ADR_LEN[addressing];
+            switch (instruction & MOS6510Ops.OP_MASK) {
+                case MOS6510Ops.BRK:
+                case MOS6510Ops.JSR:
+                case MOS6510Ops.JMP:
+                case MOS6510Ops.RTS:
+                case MOS6510Ops.RTI:
+                case MOS6510Ops.BPL:
+                case MOS6510Ops.BMI:
+                case MOS6510Ops.BVC:
+                case MOS6510Ops.BVS:
+                case MOS6510Ops.BCC:
+                case MOS6510Ops.BCS:
+                case MOS6510Ops.BNE:
+                case MOS6510Ops.BEQ:
+                    ENDS_BLOCK[opcode] = true;
+                    break;
+            }
+        }
+    }
+
+    /***
+     * The instructions of a block. The operand of instruction i is the byte
+     * after its opcode (always fetched by the 6510, even when not used), the
+     * high byte is -1 for the instructions which have none.
+     */
+    static final class Block {
+        final int start;
+        final int configuration;
+        final int size;
+        final int[] addresses;
+        final int[] opcodes;
+        final int[] operands;
+        final int[] highOperands;
+        // the address after the last byte fetched from the block
+        final int end;
+        boolean valid = true;
+
+        Block(int start, int configuration, int size, int[] addresses, int[] opcodes, int[] operands,
+                int[] highOperands, int end) {
+            this.start = start;
+            this.configuration = configuration;
+            this.size = size;
+            this.addresses = addresses;
+            this.opcodes = opcodes;
+            this.operands = operands;
+            this.highOperands = highOperands;
+            this.end = end;
+        }
+    }
+
+    private final MOS6510Core cpu;
+    private final Block[][] blocks = new Block[CONFIGURATIONS][];
+    // the blocks touching each page
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private final List<Block>[] pageBlocks = new List[PAGES];
+    // true for every byte read by some block
+    private final boolean[] code = new boolean[0x10000];
+    private int blockCount = 0;
+    private volatile boolean flushRequested = false;
+    // one bit per page loaded behind the bus, see loaded()
+    private final AtomicLongArray loadedPages = new AtomicLongArray(PAGES / 64);
+    private volatile boolean loadRequested = false;
+
+    // statistics
+    private long translationCount = 0;
+    private long invalidationCount = 0;
+
+    BlockCache(MOS6510Core cpu) {
+        this.cpu = cpu;
+        for (int page = 0; page < pageBlocks.length; page++) {
+            pageBlocks[page] = new ArrayList<Block>();
+        }
+    }
+
+    /***
+     * Returns the block starting at pc in the given memory configuration,
+     * translating it if needed. Returns null when the code at pc can't be
+     * translated (i.e. it runs from IO).
+     */
+    Block get(int pc, int configuration) {
+        if (flushRequested || blockCount >= MAX_BLOCKS) {
+            clear();
+        }
+        if (loadRequested) {
+            dropLoadedPages();
+        }
+        Block[] table = blocks[configuration];
+        if (table == null) {
+            table = blocks[configuration] = new Block[0x10000];
+        }
+        Block block = table[pc];
+        if (block == null) {
+            block = translate(pc, configuration);
+            if (block != null) {
+                table[pc] = block;
+                add(block);
+            }
+        }
+        return block;
+    }
+
+    /***
+     * Tells the cache the CPU has written to address, the blocks reading it are
+     * dropped.
+     */
+    public void written(int address) {
+        if (!code[address]) {
+            return;
+        }
+        List<Block> page = pageBlocks[address >> PAGE_SHIFT];
+        for (int i = page.size() - 1; i >= 0; i--) {
+            Block block = page.get(i);
+            if (address >= block.start && address < block.end) {
+                remove(block);
+                invalidationCount++;
+            }
+        }
+    }
+
+    /***
+     * Tells the cache length bytes from address were changed behind the bus,
+     * the blocks touching their pages are dropped before the next one is
+     * looked up. May be called from any thread.
+     */
+    @Override
+    public void loaded(int address, int length) {
+        if (length <= 0) {
+            return;
+        }
+        int lastPage = Math.min(address + length - 1, 0xffff) >> PAGE_SHIFT;
+        for (int page = address >> PAGE_SHIFT; page <= lastPage; page++) {
+            long bit = 1L << (page & 63);
+            int word = page >> 6;
+            long bits = loadedPages.get(word);
+            while ((bits & bit) == 0 && !loadedPages.compareAndSet(word, bits, bits | bit)) {
+                bits = loadedPages.get(word);
+            }
+        }
+        loadRequested = true;
+    }
+
+    /***
+     * Drops all the blocks before the next one is looked up. May be called
+     * from any thread.
+     */
+    public void flush() {
+        flushRequested = true;
+    }
+
+    public long getTranslationCount() {
+        return translationCount;
+    }
+
+    public long getInvalidationCount() {
+        return invalidationCount;
+    }
+
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    private Block translate(int start, int configuration) {
+        int[] addresses = new int[MAX_BLOCK_SIZE];
+        int[] opcodes = new int[MAX_BLOCK_SIZE];
+        int[] operands = new int[MAX_BLOCK_SIZE];
+        int[] highOperands = new int[MAX_BLOCK_SIZE];
+        int size = 0;
+        int end = start;
+        int address = start;
+        while (size < MAX_BLOCK_SIZE) {
+            int length = 0;
+            int opcode = address + 2 <= 0xffff ? cpu.peekCode(address) : -1;
+            int operand = opcode >= 0 ? cpu.peekCode(address + 1) : -1;
+            int highOperand = -1;
+            if (operand >= 0) {
+                length = LENGTH[opcode];
+                if (length == 3) {
+                    highOperand = cpu.peekCode(address + 2);
+                    if (highOperand < 0) {
+                        operand = -1;
+                    }
+                }
+            }
+            if (operand < 0) {
+                // the rest is not plain memory
+                break;
+            }
+            addresses[size] = address;
+            opcodes[size] = opcode;
+            operands[size] = operand;
+            highOperands[size] = highOperand;
+            size++;
+            // the byte after the opcode is always fetched
+            end = address + Math.max(length, 2);
+            address += length;
+            if (ENDS_BLOCK[opcode]) {
+                break;
+            }
+        }
+        if (size == 0) {
+            return null;
+        }
+        translationCount++;
+        return new Block(start, configuration, size, Arrays.copyOf(addresses, size), Arrays.copyOf(opcodes, size),
+                Arrays.copyOf(operands, size), Arrays.copyOf(highOperands, size), end);
+    }
+
+    private void add(Block block) {
+        blockCount++;
+        for (int page = block.start >> PAGE_SHIFT; page <= (block.end - 1) >> PAGE_SHIFT; page++) {
+            pageBlocks[page].add(block);
+        }
+        for (int address = block.start; address < block.end; address++) {
+            code[address] = true;
+        }
+    }
+
+    private void remove(Block block) {
+        block.valid = false;
+        blockCount--;
+        Block[] table = blocks[block.configuration];
+        if (table[block.start] == block) {
+            table[block.start] = null;
+        }
+        int firstPage = block.start >> PAGE_SHIFT;
+        int lastPage = (block.end - 1) >> PAGE_SHIFT;
+        for (int page = firstPage; page <= lastPage; page++) {
+            pageBlocks[page].remove(block);
+        }
+        for (int address = block.start; address < block.end; address++) {
+            code[address] = false;
+        }
+        // blocks may overlap, i.e. when a branch goes into the middle of one
+        for (int page = firstPage; page <= lastPage; page++) {
+            for (Block other : pageBlocks[page]) {
+                for (int address = Math.max(other.start, block.start); address < Math.min(other.end,
+                        block.end); address++) {
+                    code[address] = true;
+                }
+            }
+        }
+    }
+
+    private void dropLoadedPages() {
+        loadRequested = false;
+        for (int word = 0; word < loadedPages.length(); word++) {
+            long bits = loadedPages.getAndSet(word, 0);
+            while (bits != 0) {
+                int page = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                List<Block> blocks = pageBlocks[page];
+                while (!blocks.isEmpty()) {
+                    remove(blocks.get(blocks.size() - 1));
+                    invalidationCount++;
+                }
+            }
+        }
+    }
+
+    private void clear() {
+        flushRequested = false;
+        for (int configuration = 0; configuration < CONFIGURATIONS; configuration++) {
+            Block[] table = blocks[configuration];
+            if (table != null) {
+                for (int pc = 0; pc < table.length; pc++) {
+                    if (table[pc] != null) {
+                        table[pc].valid = false;
+                        table[pc] = null;
+                    }
+                }
+            }
+        }
+        for (List<Block> page : pageBlocks) {
+            page.clear();
+        }
+        Arrays.fill(code, false);
+        blockCount = 0;
+    }
+}
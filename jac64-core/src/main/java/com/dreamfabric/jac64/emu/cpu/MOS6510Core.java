@@ -41,10 +41,12 @@ public abstract class MOS6510Core {
     public long baLowUntil = 0;
 
     // The processor flags
-    private boolean sign = false;
-    private boolean zero = false;
-    private boolean overflow = false;
-    private boolean carry = false;
+    // N, Z and V are evaluated lazily - the instructions only store the value
+    // the flag is derived from, see isSign(), isZero() and isOverflow().
+    private int signValue = 0; // N is set when above 0x7f
+    private int zeroValue = 1; // Z is set when 0
+    private int overflowValue = 0; // V is bit 7
+    private int carry = 0; // always 0 or 1
     private boolean decimal = false;
     private boolean brk = false;
     private boolean resetFlag = false;
@@ -63,9 +65,17 @@ public abstract class MOS6510Core {
     // Some temporary and other variables...
     private int pc;
     private int interruptInExec = 0;
+    private long interruptCount = 0;
 
     private boolean disableInterupt = false;
 
+    // Translated code, see setTranslation()
+    private BlockCache blockCache;
+    private BlockCache.Block block;
+    private int blockIndex;
+    // the high operand byte of the instruction run from a block, -1 if none
+    private int blockOperand = -1;
+
     public void init() {
         MOS6510Ops.init0();
     }
@@ -122,6 +132,30 @@ public abstract class MOS6510Core {
         return s;
     }
 
+    /***
+     * Switches between decoding every instruction from the bus (the default)
+     * and running straight-line code from translated blocks, see
+     * {@link BlockCache}. Both do the same bus cycles in the same order, only
+     * the bytes of the instructions are taken from the block instead of being
+     * read again. The memory is taken from {@link #peekCode(int)}, writes must
+     * be reported to {@link #getBlockCache()}.
+     */
+    public void setTranslation(boolean translation) {
+        blockCache = translation ? new BlockCache(this) : null;
+        block = null;
+    }
+
+    public boolean isTranslation() {
+        return blockCache != null;
+    }
+
+    /***
+     * Returns the translated blocks, null when the translation is off.
+     */
+    public BlockCache getBlockCache() {
+        return blockCache;
+    }
+
     public void emulateOp() {
         // Before executing an operation - check for interrupts!!!
         if (checkInterrupt) {
@@ -166,519 +200,928 @@ public abstract class MOS6510Core {
             }
         }
 
+        if (blockCache != null) {
+            emulateTranslatedOp();
+            return;
+        }
+
         // Ok no interrupts, execute instruction
         // fetch instruction!
-        int data = MOS6510Ops.INSTRUCTION_SET[fetchByte(pc++)];
-        int op = data & MOS6510Ops.OP_MASK;
-        int addrMode = data & MOS6510Ops.ADDRESSING_MASK;
-        boolean read = (data & MOS6510Ops.READ) != 0;
-        boolean write = (data & MOS6510Ops.WRITE) != 0;
-        int adr = 0;
-        int tmp = 0;
-        boolean nxtcarry = false;
-
-        // System.out.println("AddrMode:" + Hex.hex2(addrMode) +
-        // " op: " + Hex.hex2(op)
-        // + " data: " + Hex.hex2(data));
+        int opcode = fetchByte(pc++);
 
         // fetch first argument (always fetched...?) - but not always pc++!!
         int p1 = fetchByte(pc);
 
-        // Fetch addres, and read if it should be done!
-        switch (addrMode) {
-            // never any address when immediate
-            case MOS6510Ops.IMMEDIATE:
-                pc++;
-                data = p1;
+        execute(opcode, p1);
+    }
+
+    /***
+     * Runs the next instruction of the current block, or of the block starting
+     * at pc when the code went elsewhere, was written to or the memory
+     * configuration has changed.
+     */
+    private void emulateTranslatedOp() {
+        BlockCache.Block b = block;
+        int i = blockIndex;
+        int configuration = getMemoryConfiguration();
+        if (b == null || i >= b.size || !b.valid || b.addresses[i] != pc || b.configuration != configuration) {
+            b = pc <= 0xffff ? blockCache.get(pc, configuration) : null;
+            i = 0;
+            if (b == null) {
+                // not plain memory, decode it as usual
+                block = null;
+                int opcode = fetchByte(pc++);
+                int p1 = fetchByte(pc);
+                execute(opcode, p1);
+                return;
+            }
+        }
+        block = b;
+        blockIndex = i + 1;
+
+        int opcode = fetchCachedByte(pc++, b.opcodes[i]);
+        int p1 = fetchCachedByte(pc, b.operands[i]);
+        blockOperand = b.highOperands[i];
+        execute(opcode, p1);
+        blockOperand = -1;
+    }
+
+    /**
+     * Executes a single instruction. There is one case per opcode, written out
+     * from the {@link MOS6510Ops#INSTRUCTION_SET} table, so nothing is decoded at
+     * run time. The addressing helpers keep the same order of (dummy) reads and
+     * writes as the real processor.
+     */
+    private void execute(int opcode, int p1) {
+        int adr;
+
+        switch (opcode) {
+            case 0x00: // BRK
+                brk = true;
+                checkInterrupt = true;
                 break;
-            case MOS6510Ops.ABSOLUTE:
-                pc++;
-                adr = (fetchByte(pc++) << 8) + p1;
-                if (read) {
-                    data = fetchByte(adr);
-                }
+            case 0x01: // ORA (indirect,x)
+                opORA(fetchByte(adrIndirectX(p1)));
                 break;
-            case MOS6510Ops.ZERO:
-                pc++;
-                adr = p1;
-                if (read) {
-                    data = fetchByte(adr);
-                }
+            case 0x02: // TRP
+                LOGGER.info("TRAP Instruction executed");
+                break;
+            case 0x03: // SLO (indirect,x)
+                adr = adrIndirectX(p1);
+                writeByte(adr, opSLO(readModify(adr)));
+                break;
+            case 0x04: // NOP zero
+                fetchByte(adrZero(p1));
+                break;
+            case 0x05: // ORA zero
+                opORA(fetchByte(adrZero(p1)));
+                break;
+            case 0x06: // ASL zero
+                adr = adrZero(p1);
+                writeByte(adr, opASL(readModify(adr)));
+                break;
+            case 0x07: // SLO zero
+                adr = adrZero(p1);
+                writeByte(adr, opSLO(readModify(adr)));
+                break;
+            case 0x08: // PHP
+                brk = true;
+                push(getStatusByte());
+                brk = false;
                 break;
-            case MOS6510Ops.ZERO_X:
-            case MOS6510Ops.ZERO_Y:
+            case 0x09: // ORA #imm
                 pc++;
-                // Read from wrong address first...
-                fetchByte(p1);
-
-                if (addrMode == MOS6510Ops.ZERO_X)
-                    adr = (p1 + x) & 0xff;
-                else
-                    adr = (p1 + y) & 0xff;
-
-                if (read) {
-                    data = fetchByte(adr);
-                }
+                opORA(p1);
+                break;
+            case 0x0a: // ASL accumulator
+                acc = opASL(acc);
                 break;
-            case MOS6510Ops.ABSOLUTE_X:
-            case MOS6510Ops.ABSOLUTE_Y:
+            case 0x0b: // ANC #imm
                 pc++;
-                // Fetch hi byte!
-                adr = fetchByte(pc++) << 8;
-
-                // add x/y to low byte & possibly faulty fetch!
-                if (addrMode == MOS6510Ops.ABSOLUTE_X)
-                    p1 += x;
-                else
-                    p1 += y;
-
-                data = fetchByte(adr + (p1 & 0xff));
-                adr += p1;
-
-                // If read - a fifth cycle patches the incorrect address...
-                // Always done if RMW!
-                if (read && (p1 > 0xff || write)) {
-                    data = fetchByte(adr);
-                }
+                opANC(p1);
+                break;
+            case 0x0c: // NOP absolute
+                fetchByte(adrAbsolute(p1));
+                break;
+            case 0x0d: // ORA absolute
+                opORA(fetchByte(adrAbsolute(p1)));
+                break;
+            case 0x0e: // ASL absolute
+                adr = adrAbsolute(p1);
+                writeByte(adr, opASL(readModify(adr)));
+                break;
+            case 0x0f: // SLO absolute
+                adr = adrAbsolute(p1);
+                writeByte(adr, opSLO(readModify(adr)));
+                break;
+            case 0x10: // BPL
+                branch(!isSign(), p1);
+                break;
+            case 0x11: // ORA (indirect),y
+                opORA(readIndirectY(p1));
+                break;
+            case 0x12: // TRP
+                LOGGER.info("TRAP Instruction executed");
+                break;
+            case 0x13: // SLO (indirect),y
+                adr = adrIndirectY(p1);
+                writeByte(adr, opSLO(readModify(adr)));
+                break;
+            case 0x14: // NOP zero,x
+                fetchByte(adrZeroIndexed(p1, x));
+                break;
+            case 0x15: // ORA zero,x
+                opORA(fetchByte(adrZeroIndexed(p1, x)));
+                break;
+            case 0x16: // ASL zero,x
+                adr = adrZeroIndexed(p1, x);
+                writeByte(adr, opASL(readModify(adr)));
+                break;
+            case 0x17: // SLO zero,x
+                adr = adrZeroIndexed(p1, x);
+                writeByte(adr, opSLO(readModify(adr)));
+                break;
+            case 0x18: // CLC
+                carry = 0;
+                break;
+            case 0x19: // ORA absolute,y
+                opORA(readAbsoluteIndexed(p1, y));
+                break;
+            case 0x1a: // NOP
+                break;
+            case 0x1b: // SLO absolute,y
+                adr = adrAbsoluteIndexed(p1, y);
+                writeByte(adr, opSLO(readModify(adr)));
                 break;
-            case MOS6510Ops.RELATIVE:
+            case 0x1c: // NOP absolute,x
+                readAbsoluteIndexed(p1, x);
+                break;
+            case 0x1d: // ORA absolute,x
+                opORA(readAbsoluteIndexed(p1, x));
+                break;
+            case 0x1e: // ASL absolute,x
+                adr = adrAbsoluteIndexed(p1, x);
+                writeByte(adr, opASL(readModify(adr)));
+                break;
+            case 0x1f: // SLO absolute,x
+                adr = adrAbsoluteIndexed(p1, x);
+                writeByte(adr, opSLO(readModify(adr)));
+                break;
+            case 0x20: // JSR
+                opJSR(p1);
+                break;
+            case 0x21: // AND (indirect,x)
+                opAND(fetchByte(adrIndirectX(p1)));
+                break;
+            case 0x22: // TRP
+                LOGGER.info("TRAP Instruction executed");
+                break;
+            case 0x23: // RLA (indirect,x)
+                adr = adrIndirectX(p1);
+                writeByte(adr, opRLA(readModify(adr)));
+                break;
+            case 0x24: // BIT zero
+                opBIT(fetchByte(adrZero(p1)));
+                break;
+            case 0x25: // AND zero
+                opAND(fetchByte(adrZero(p1)));
+                break;
+            case 0x26: // ROL zero
+                adr = adrZero(p1);
+                writeByte(adr, opROL(readModify(adr)));
+                break;
+            case 0x27: // RLA zero
+                adr = adrZero(p1);
+                writeByte(adr, opRLA(readModify(adr)));
+                break;
+            case 0x28: // PLP
+                setStatusByte(pop());
+                brk = false;
+                checkInterrupt = true;
+                break;
+            case 0x29: // AND #imm
                 pc++;
-                adr = pc + (byte) p1;
-                if (((adr ^ pc) & 0xff00) > 0) {
-                    // loose one cycle since adr is on another page...
-                    tmp = 2;
-                } else {
-                    tmp = 1;
-                }
+                opAND(p1);
                 break;
-            case MOS6510Ops.ACCUMULATOR:
-                data = acc;
-                write = false;
+            case 0x2a: // ROL accumulator
+                acc = opROL(acc);
                 break;
-            case MOS6510Ops.INDIRECT_X:
+            case 0x2b: // ANC #imm
                 pc++;
-                // unneccesary read... fetchByte(p1);
-                fetchByte(p1);
-                tmp = (p1 + x) & 0xff;
-
-                adr = (fetchByte(tmp + 1) << 8);
-                adr |= fetchByte(tmp);
-
-                if (read) {
-                    data = fetchByte(adr);
-                }
+                opANC(p1);
+                break;
+            case 0x2c: // BIT absolute
+                opBIT(fetchByte(adrAbsolute(p1)));
+                break;
+            case 0x2d: // AND absolute
+                opAND(fetchByte(adrAbsolute(p1)));
+                break;
+            case 0x2e: // ROL absolute
+                adr = adrAbsolute(p1);
+                writeByte(adr, opROL(readModify(adr)));
+                break;
+            case 0x2f: // RLA absolute
+                adr = adrAbsolute(p1);
+                writeByte(adr, opRLA(readModify(adr)));
+                break;
+            case 0x30: // BMI
+                branch(isSign(), p1);
+                break;
+            case 0x31: // AND (indirect),y
+                opAND(readIndirectY(p1));
+                break;
+            case 0x32: // TRP
+                LOGGER.info("TRAP Instruction executed");
+                break;
+            case 0x33: // RLA (indirect),y
+                adr = adrIndirectY(p1);
+                writeByte(adr, opRLA(readModify(adr)));
                 break;
-            case MOS6510Ops.INDIRECT_Y:
+            case 0x34: // NOP zero,x
+                fetchByte(adrZeroIndexed(p1, x));
+                break;
+            case 0x35: // AND zero,x
+                opAND(fetchByte(adrZeroIndexed(p1, x)));
+                break;
+            case 0x36: // ROL zero,x
+                adr = adrZeroIndexed(p1, x);
+                writeByte(adr, opROL(readModify(adr)));
+                break;
+            case 0x37: // RLA zero,x
+                adr = adrZeroIndexed(p1, x);
+                writeByte(adr, opRLA(readModify(adr)));
+                break;
+            case 0x38: // SEC
+                carry = 1;
+                break;
+            case 0x39: // AND absolute,y
+                opAND(readAbsoluteIndexed(p1, y));
+                break;
+            case 0x3a: // NOP
+                break;
+            case 0x3b: // RLA absolute,y
+                adr = adrAbsoluteIndexed(p1, y);
+                writeByte(adr, opRLA(readModify(adr)));
+                break;
+            case 0x3c: // NOP absolute,x
+                readAbsoluteIndexed(p1, x);
+                break;
+            case 0x3d: // AND absolute,x
+                opAND(readAbsoluteIndexed(p1, x));
+                break;
+            case 0x3e: // ROL absolute,x
+                adr = adrAbsoluteIndexed(p1, x);
+                writeByte(adr, opROL(readModify(adr)));
+                break;
+            case 0x3f: // RLA absolute,x
+                adr = adrAbsoluteIndexed(p1, x);
+                writeByte(adr, opRLA(readModify(adr)));
+                break;
+            case 0x40: // RTI
+                opRTI();
+                break;
+            case 0x41: // EOR (indirect,x)
+                opEOR(fetchByte(adrIndirectX(p1)));
+                break;
+            case 0x42: // TRP
+                LOGGER.info("TRAP Instruction executed");
+                break;
+            case 0x43: // SRE (indirect,x)
+                adr = adrIndirectX(p1);
+                writeByte(adr, opSRE(readModify(adr)));
+                break;
+            case 0x44: // NOP zero
+                fetchByte(adrZero(p1));
+                break;
+            case 0x45: // EOR zero
+                opEOR(fetchByte(adrZero(p1)));
+                break;
+            case 0x46: // LSR zero
+                adr = adrZero(p1);
+                writeByte(adr, opLSR(readModify(adr)));
+                break;
+            case 0x47: // SRE zero
+                adr = adrZero(p1);
+                writeByte(adr, opSRE(readModify(adr)));
+                break;
+            case 0x48: // PHA
+                push(acc);
+                break;
+            case 0x49: // EOR #imm
                 pc++;
-                // Fetch hi and lo
-                adr = (fetchByte(p1 + 1) << 8);
-                p1 = fetchByte(p1);
-                p1 += y;
-
-                data = fetchByte(adr + (p1 & 0xff));
-                adr += p1;
-
-                // If read - a sixth cycle patches the incorrect address...
-                // Always done if RMW!
-                if (read && (p1 > 0xff || write)) {
-                    data = fetchByte(adr);
-                }
+                opEOR(p1);
                 break;
-            case MOS6510Ops.INDIRECT:
+            case 0x4a: // LSR accumulator
+                acc = opLSR(acc);
+                break;
+            case 0x4b: // ASR #imm
                 pc++;
-                // Fetch pointer
-                adr = (fetchByte(pc) << 8) + p1;
-
-                // Calculate address
-                tmp = (adr & 0xfff00) | ((adr + 1) & 0xff);
-                // fetch the real address
-                adr = fetchByte(adr);
-                adr += (fetchByte(tmp) << 8);
+                opASR(p1);
                 break;
-        }
-
-        // -------------------------------------------------------------------
-        // Addressing handled! now on to instructions in order of appearance
-        // -------------------------------------------------------------------
-
-        // If RMW - it will write before proceeding
-        if (read && write) {
-            writeByte(adr, data);
-        }
-
-        switch (op) {
-            case MOS6510Ops.BRK:
-                brk = true;
+            case 0x4c: // JMP absolute
+                pc = adrAbsolute(p1);
+                break;
+            case 0x4d: // EOR absolute
+                opEOR(fetchByte(adrAbsolute(p1)));
+                break;
+            case 0x4e: // LSR absolute
+                adr = adrAbsolute(p1);
+                writeByte(adr, opLSR(readModify(adr)));
+                break;
+            case 0x4f: // SRE absolute
+                adr = adrAbsolute(p1);
+                writeByte(adr, opSRE(readModify(adr)));
+                break;
+            case 0x50: // BVC
+                branch(!isOverflow(), p1);
+                break;
+            case 0x51: // EOR (indirect),y
+                opEOR(readIndirectY(p1));
+                break;
+            case 0x52: // TRP
+                LOGGER.info("TRAP Instruction executed");
+                break;
+            case 0x53: // SRE (indirect),y
+                adr = adrIndirectY(p1);
+                writeByte(adr, opSRE(readModify(adr)));
+                break;
+            case 0x54: // NOP zero,x
+                fetchByte(adrZeroIndexed(p1, x));
+                break;
+            case 0x55: // EOR zero,x
+                opEOR(fetchByte(adrZeroIndexed(p1, x)));
+                break;
+            case 0x56: // LSR zero,x
+                adr = adrZeroIndexed(p1, x);
+                writeByte(adr, opLSR(readModify(adr)));
+                break;
+            case 0x57: // SRE zero,x
+                adr = adrZeroIndexed(p1, x);
+                writeByte(adr, opSRE(readModify(adr)));
+                break;
+            case 0x58: // CLI
+                disableInterupt = false;
                 checkInterrupt = true;
                 break;
-            case MOS6510Ops.AND:
-                acc = acc & data;
-                setZS(acc);
+            case 0x59: // EOR absolute,y
+                opEOR(readAbsoluteIndexed(p1, y));
                 break;
-            case MOS6510Ops.ADC:
-                opADCimp(data);
+            case 0x5a: // NOP
                 break;
-            case MOS6510Ops.SBC:
-                opSBCimp(data);
+            case 0x5b: // SRE absolute,y
+                adr = adrAbsoluteIndexed(p1, y);
+                writeByte(adr, opSRE(readModify(adr)));
                 break;
-            case MOS6510Ops.ORA:
-                acc = acc | data;
-                setZS(acc);
+            case 0x5c: // NOP absolute,x
+                readAbsoluteIndexed(p1, x);
+                break;
+            case 0x5d: // EOR absolute,x
+                opEOR(readAbsoluteIndexed(p1, x));
+                break;
+            case 0x5e: // LSR absolute,x
+                adr = adrAbsoluteIndexed(p1, x);
+                writeByte(adr, opLSR(readModify(adr)));
+                break;
+            case 0x5f: // SRE absolute,x
+                adr = adrAbsoluteIndexed(p1, x);
+                writeByte(adr, opSRE(readModify(adr)));
+                break;
+            case 0x60: // RTS
+                opRTS();
+                break;
+            case 0x61: // ADC (indirect,x)
+                opADC(fetchByte(adrIndirectX(p1)));
+                break;
+            case 0x62: // TRP
+                LOGGER.info("TRAP Instruction executed");
+                break;
+            case 0x63: // RRA (indirect,x)
+                adr = adrIndirectX(p1);
+                writeByte(adr, opRRA(readModify(adr)));
+                break;
+            case 0x64: // NOP zero
+                fetchByte(adrZero(p1));
+                break;
+            case 0x65: // ADC zero
+                opADC(fetchByte(adrZero(p1)));
+                break;
+            case 0x66: // ROR zero
+                adr = adrZero(p1);
+                writeByte(adr, opROR(readModify(adr)));
                 break;
-            case MOS6510Ops.EOR:
-                acc = acc ^ data;
+            case 0x67: // RRA zero
+                adr = adrZero(p1);
+                writeByte(adr, opRRA(readModify(adr)));
+                break;
+            case 0x68: // PLA
+                fetchByte(s | 0x100);
+                acc = pop();
                 setZS(acc);
                 break;
-            case MOS6510Ops.BIT:
-                sign = data > 0x7f;
-                overflow = (data & 0x40) > 0;
-                zero = (acc & data) == 0;
-                break;
-            case MOS6510Ops.LSR:
-                carry = (data & 0x01) != 0;
-                data = data >> 1;
-                zero = (data == 0);
-                sign = false;
-                break;
-            case MOS6510Ops.ROL:
-                data = (data << 1) + (carry ? 1 : 0);
-                carry = (data & 0x100) != 0;
-                data = data & 0xff;
-                setZS(data);
-                break;
-            case MOS6510Ops.ROR:
-                nxtcarry = (data & 0x01) != 0;
-                data = (data >> 1) + (carry ? 0x80 : 0);
-                carry = nxtcarry;
-                setZS(data);
-                break;
-            case MOS6510Ops.TXA:
+            case 0x69: // ADC #imm
+                pc++;
+                opADC(p1);
+                break;
+            case 0x6a: // ROR accumulator
+                acc = opROR(acc);
+                break;
+            case 0x6b: // ARR #imm
+                pc++;
+                opARR(p1);
+                break;
+            case 0x6c: // JMP (indirect)
+                pc = adrIndirect(p1);
+                break;
+            case 0x6d: // ADC absolute
+                opADC(fetchByte(adrAbsolute(p1)));
+                break;
+            case 0x6e: // ROR absolute
+                adr = adrAbsolute(p1);
+                writeByte(adr, opROR(readModify(adr)));
+                break;
+            case 0x6f: // RRA absolute
+                adr = adrAbsolute(p1);
+                writeByte(adr, opRRA(readModify(adr)));
+                break;
+            case 0x70: // BVS
+                branch(isOverflow(), p1);
+                break;
+            case 0x71: // ADC (indirect),y
+                opADC(readIndirectY(p1));
+                break;
+            case 0x72: // TRP
+                LOGGER.info("TRAP Instruction executed");
+                break;
+            case 0x73: // RRA (indirect),y
+                adr = adrIndirectY(p1);
+                writeByte(adr, opRRA(readModify(adr)));
+                break;
+            case 0x74: // NOP zero,x
+                fetchByte(adrZeroIndexed(p1, x));
+                break;
+            case 0x75: // ADC zero,x
+                opADC(fetchByte(adrZeroIndexed(p1, x)));
+                break;
+            case 0x76: // ROR zero,x
+                adr = adrZeroIndexed(p1, x);
+                writeByte(adr, opROR(readModify(adr)));
+                break;
+            case 0x77: // RRA zero,x
+                adr = adrZeroIndexed(p1, x);
+                writeByte(adr, opRRA(readModify(adr)));
+                break;
+            case 0x78: // SEI
+                disableInterupt = true;
+                break;
+            case 0x79: // ADC absolute,y
+                opADC(readAbsoluteIndexed(p1, y));
+                break;
+            case 0x7a: // NOP
+                break;
+            case 0x7b: // RRA absolute,y
+                adr = adrAbsoluteIndexed(p1, y);
+                writeByte(adr, opRRA(readModify(adr)));
+                break;
+            case 0x7c: // NOP absolute,x
+                readAbsoluteIndexed(p1, x);
+                break;
+            case 0x7d: // ADC absolute,x
+                opADC(readAbsoluteIndexed(p1, x));
+                break;
+            case 0x7e: // ROR absolute,x
+                adr = adrAbsoluteIndexed(p1, x);
+                writeByte(adr, opROR(readModify(adr)));
+                break;
+            case 0x7f: // RRA absolute,x
+                adr = adrAbsoluteIndexed(p1, x);
+                writeByte(adr, opRRA(readModify(adr)));
+                break;
+            case 0x80: // NOP
+                break;
+            case 0x81: // STA (indirect,x)
+                writeByte(adrIndirectX(p1), acc);
+                break;
+            case 0x82: // NOP
+                break;
+            case 0x83: // SAX (indirect,x)
+                writeByte(adrIndirectX(p1), acc & x);
+                break;
+            case 0x84: // STY zero
+                writeByte(adrZero(p1), y);
+                break;
+            case 0x85: // STA zero
+                writeByte(adrZero(p1), acc);
+                break;
+            case 0x86: // STX zero
+                writeByte(adrZero(p1), x);
+                break;
+            case 0x87: // SAX zero
+                writeByte(adrZero(p1), acc & x);
+                break;
+            case 0x88: // DEY
+                y = (y - 1) & 0xff;
+                setZS(y);
+                break;
+            case 0x89: // NOP #imm
+                pc++;
+                break;
+            case 0x8a: // TXA
                 acc = x;
                 setZS(acc);
                 break;
-            case MOS6510Ops.TAX:
-                x = acc;
-                setZS(x);
+            case 0x8b: // ANE #imm
+                pc++;
+                opANE(p1);
+                break;
+            case 0x8c: // STY absolute
+                writeByte(adrAbsolute(p1), y);
+                break;
+            case 0x8d: // STA absolute
+                writeByte(adrAbsolute(p1), acc);
+                break;
+            case 0x8e: // STX absolute
+                writeByte(adrAbsolute(p1), x);
+                break;
+            case 0x8f: // SAX absolute
+                writeByte(adrAbsolute(p1), acc & x);
+                break;
+            case 0x90: // BCC
+                branch(carry == 0, p1);
+                break;
+            case 0x91: // STA (indirect),y
+                writeByte(adrIndirectY(p1), acc);
+                break;
+            case 0x92: // TRP
+                LOGGER.info("TRAP Instruction executed");
+                break;
+            case 0x93: // SHA (indirect),y
+                adr = adrIndirectY(p1);
+                writeByte(adr, opSHA(adr));
+                break;
+            case 0x94: // STY zero,x
+                writeByte(adrZeroIndexed(p1, x), y);
+                break;
+            case 0x95: // STA zero,x
+                writeByte(adrZeroIndexed(p1, x), acc);
+                break;
+            case 0x96: // STX zero,y
+                writeByte(adrZeroIndexed(p1, y), x);
+                break;
+            case 0x97: // SAX zero,y
+                writeByte(adrZeroIndexed(p1, y), acc & x);
                 break;
-            case MOS6510Ops.TYA:
+            case 0x98: // TYA
                 acc = y;
                 setZS(acc);
                 break;
-            case MOS6510Ops.TAY:
+            case 0x99: // STA absolute,y
+                writeByte(adrAbsoluteIndexed(p1, y), acc);
+                break;
+            case 0x9a: // TXS
+                s = x & 0xff;
+                break;
+            case 0x9b: // SHS absolute,y
+                adr = adrAbsoluteIndexed(p1, y);
+                writeByte(adr, opSHS(adr));
+                break;
+            case 0x9c: // SHY absolute,x
+                adr = adrAbsoluteIndexed(p1, x);
+                writeByte(adr, opSHY(adr));
+                break;
+            case 0x9d: // STA absolute,x
+                writeByte(adrAbsoluteIndexed(p1, x), acc);
+                break;
+            case 0x9e: // SHX absolute,y
+                adr = adrAbsoluteIndexed(p1, y);
+                writeByte(adr, opSHX(adr));
+                break;
+            case 0x9f: // SHA absolute,y
+                adr = adrAbsoluteIndexed(p1, y);
+                writeByte(adr, opSHA(adr));
+                break;
+            case 0xa0: // LDY #imm
+                pc++;
+                opLDY(p1);
+                break;
+            case 0xa1: // LDA (indirect,x)
+                opLDA(fetchByte(adrIndirectX(p1)));
+                break;
+            case 0xa2: // LDX #imm
+                pc++;
+                opLDX(p1);
+                break;
+            case 0xa3: // LAX (indirect,x)
+                opLAX(fetchByte(adrIndirectX(p1)));
+                break;
+            case 0xa4: // LDY zero
+                opLDY(fetchByte(adrZero(p1)));
+                break;
+            case 0xa5: // LDA zero
+                opLDA(fetchByte(adrZero(p1)));
+                break;
+            case 0xa6: // LDX zero
+                opLDX(fetchByte(adrZero(p1)));
+                break;
+            case 0xa7: // LAX zero
+                opLAX(fetchByte(adrZero(p1)));
+                break;
+            case 0xa8: // TAY
                 y = acc;
                 setZS(y);
                 break;
-            case MOS6510Ops.TSX:
-                x = s;
+            case 0xa9: // LDA #imm
+                pc++;
+                opLDA(p1);
+                break;
+            case 0xaa: // TAX
+                x = acc;
                 setZS(x);
                 break;
-            case MOS6510Ops.TXS:
-                s = x & 0xff;
+            case 0xab: // LXA #imm
+                pc++;
+                opLXA(p1);
                 break;
-            case MOS6510Ops.DEC:
-                data = (data - 1) & 0xff;
-                setZS(data);
+            case 0xac: // LDY absolute
+                opLDY(fetchByte(adrAbsolute(p1)));
                 break;
-            case MOS6510Ops.INC:
-                data = (data + 1) & 0xff;
-                setZS(data);
+            case 0xad: // LDA absolute
+                opLDA(fetchByte(adrAbsolute(p1)));
                 break;
-            case MOS6510Ops.INX:
-                x = (x + 1) & 0xff;
-                setZS(x);
+            case 0xae: // LDX absolute
+                opLDX(fetchByte(adrAbsolute(p1)));
                 break;
-            case MOS6510Ops.DEX:
-                x = (x - 1) & 0xff;
+            case 0xaf: // LAX absolute
+                opLAX(fetchByte(adrAbsolute(p1)));
+                break;
+            case 0xb0: // BCS
+                branch(carry != 0, p1);
+                break;
+            case 0xb1: // LDA (indirect),y
+                opLDA(readIndirectY(p1));
+                break;
+            case 0xb2: // TRP
+                LOGGER.info("TRAP Instruction executed");
+                break;
+            case 0xb3: // LAX (indirect),y
+                opLAX(readIndirectY(p1));
+                break;
+            case 0xb4: // LDY zero,x
+                opLDY(fetchByte(adrZeroIndexed(p1, x)));
+                break;
+            case 0xb5: // LDA zero,x
+                opLDA(fetchByte(adrZeroIndexed(p1, x)));
+                break;
+            case 0xb6: // LDX zero,y
+                opLDX(fetchByte(adrZeroIndexed(p1, y)));
+                break;
+            case 0xb7: // LAX zero,y
+                opLAX(fetchByte(adrZeroIndexed(p1, y)));
+                break;
+            case 0xb8: // CLV
+                overflowValue = 0;
+                break;
+            case 0xb9: // LDA absolute,y
+                opLDA(readAbsoluteIndexed(p1, y));
+                break;
+            case 0xba: // TSX
+                x = s;
                 setZS(x);
                 break;
-            case MOS6510Ops.INY:
-                y = (y + 1) & 0xff;
-                setZS(y);
+            case 0xbb: // LAS absolute,y
+                opLAS(readAbsoluteIndexed(p1, y));
                 break;
-            case MOS6510Ops.DEY:
-                y = (y - 1) & 0xff;
+            case 0xbc: // LDY absolute,x
+                opLDY(readAbsoluteIndexed(p1, x));
+                break;
+            case 0xbd: // LDA absolute,x
+                opLDA(readAbsoluteIndexed(p1, x));
+                break;
+            case 0xbe: // LDX absolute,y
+                opLDX(readAbsoluteIndexed(p1, y));
+                break;
+            case 0xbf: // LAX absolute,y
+                opLAX(readAbsoluteIndexed(p1, y));
+                break;
+            case 0xc0: // CPY #imm
+                pc++;
+                opCPY(p1);
+                break;
+            case 0xc1: // CMP (indirect,x)
+                opCMP(fetchByte(adrIndirectX(p1)));
+                break;
+            case 0xc2: // NOP #imm
+                pc++;
+                break;
+            case 0xc3: // DCP (indirect,x)
+                adr = adrIndirectX(p1);
+                writeByte(adr, opDCP(readModify(adr)));
+                break;
+            case 0xc4: // CPY zero
+                opCPY(fetchByte(adrZero(p1)));
+                break;
+            case 0xc5: // CMP zero
+                opCMP(fetchByte(adrZero(p1)));
+                break;
+            case 0xc6: // DEC zero
+                adr = adrZero(p1);
+                writeByte(adr, opDEC(readModify(adr)));
+                break;
+            case 0xc7: // DCP zero
+                adr = adrZero(p1);
+                writeByte(adr, opDCP(readModify(adr)));
+                break;
+            case 0xc8: // INY
+                y = (y + 1) & 0xff;
                 setZS(y);
                 break;
-            // Jumps
-            case MOS6510Ops.JSR:
+            case 0xc9: // CMP #imm
                 pc++;
-                adr = (fetchByte(pc) << 8) + p1;
-                fetchByte(s | 0x100);
-                push((pc & 0xff00) >> 8); // HI
-                push(pc & 0x00ff); // LOW
-                pc = adr;
+                opCMP(p1);
                 break;
-            case MOS6510Ops.JMP:
-                pc = adr;
+            case 0xca: // DEX
+                x = (x - 1) & 0xff;
+                setZS(x);
                 break;
-            case MOS6510Ops.RTS:
-                fetchByte(s | 0x100);
-                pc = pop() + (pop() << 8);
+            case 0xcb: // SBX #imm
                 pc++;
-                fetchByte(pc);
+                opSBX(p1);
                 break;
-            case MOS6510Ops.RTI:
-                fetchByte(s | 0x100);
-                tmp = pop();
-                setStatusByte(tmp);
-                pc = pop() + (pop() << 8);
-                brk = false;
-                interruptInExec--;
-                // Need to check for interrupts
-                checkInterrupt = true;
+            case 0xcc: // CPY absolute
+                opCPY(fetchByte(adrAbsolute(p1)));
                 break;
-
-            case MOS6510Ops.TRP:
-                LOGGER.info("TRAP Instruction executed");
+            case 0xcd: // CMP absolute
+                opCMP(fetchByte(adrAbsolute(p1)));
                 break;
-            case MOS6510Ops.NOP:
+            case 0xce: // DEC absolute
+                adr = adrAbsolute(p1);
+                writeByte(adr, opDEC(readModify(adr)));
                 break;
-            case MOS6510Ops.ASL:
-                setCarry(data);
-                data = (data << 1) & 0xff;
-                setZS(data);
+            case 0xcf: // DCP absolute
+                adr = adrAbsolute(p1);
+                writeByte(adr, opDCP(readModify(adr)));
                 break;
-            case MOS6510Ops.PHA:
-                push(acc);
+            case 0xd0: // BNE
+                branch(!isZero(), p1);
                 break;
-            case MOS6510Ops.PLA:
-                fetchByte(s | 0x100);
-                acc = pop();
-                setZS(acc);
+            case 0xd1: // CMP (indirect),y
+                opCMP(readIndirectY(p1));
                 break;
-            case MOS6510Ops.PHP:
-                brk = true;
-                push(getStatusByte());
-                brk = false;
+            case 0xd2: // TRP
+                LOGGER.info("TRAP Instruction executed");
                 break;
-            case MOS6510Ops.PLP:
-                tmp = pop();
-                setStatusByte(tmp);
-                brk = false;
-                checkInterrupt = true;
+            case 0xd3: // DCP (indirect),y
+                adr = adrIndirectY(p1);
+                writeByte(adr, opDCP(readModify(adr)));
                 break;
-            case MOS6510Ops.ANC:
-                acc = acc & data;
-                setZS(acc);
-                carry = (acc & 0x80) != 0;
+            case 0xd4: // NOP zero,x
+                fetchByte(adrZeroIndexed(p1, x));
+                break;
+            case 0xd5: // CMP zero,x
+                opCMP(fetchByte(adrZeroIndexed(p1, x)));
                 break;
-            case MOS6510Ops.CMP:
-                data = acc - data;
-                carry = data >= 0;
-                setZS((data & 0xff));
+            case 0xd6: // DEC zero,x
+                adr = adrZeroIndexed(p1, x);
+                writeByte(adr, opDEC(readModify(adr)));
                 break;
-            case MOS6510Ops.CPX:
-                data = x - data;
-                carry = data >= 0;
-                setZS((data & 0xff));
+            case 0xd7: // DCP zero,x
+                adr = adrZeroIndexed(p1, x);
+                writeByte(adr, opDCP(readModify(adr)));
                 break;
-            case MOS6510Ops.CPY:
-                data = y - data;
-                carry = data >= 0;
-                setZS((data & 0xff));
+            case 0xd8: // CLD
+                decimal = false;
                 break;
-            // Branch instructions
-            case MOS6510Ops.BCC:
-                branch(!carry, adr, tmp);
+            case 0xd9: // CMP absolute,y
+                opCMP(readAbsoluteIndexed(p1, y));
                 break;
-            case MOS6510Ops.BCS:
-                branch(carry, adr, tmp);
+            case 0xda: // NOP
                 break;
-            case MOS6510Ops.BEQ:
-                branch(zero, adr, tmp);
+            case 0xdb: // DCP absolute,y
+                adr = adrAbsoluteIndexed(p1, y);
+                writeByte(adr, opDCP(readModify(adr)));
                 break;
-            case MOS6510Ops.BNE:
-                branch(!zero, adr, tmp);
+            case 0xdc: // NOP absolute,x
+                readAbsoluteIndexed(p1, x);
                 break;
-            case MOS6510Ops.BVC:
-                branch(!overflow, adr, tmp);
+            case 0xdd: // CMP absolute,x
+                opCMP(readAbsoluteIndexed(p1, x));
                 break;
-            case MOS6510Ops.BVS:
-                branch(overflow, adr, tmp);
+            case 0xde: // DEC absolute,x
+                adr = adrAbsoluteIndexed(p1, x);
+                writeByte(adr, opDEC(readModify(adr)));
                 break;
-            case MOS6510Ops.BPL:
-                branch(!sign, adr, tmp);
+            case 0xdf: // DCP absolute,x
+                adr = adrAbsoluteIndexed(p1, x);
+                writeByte(adr, opDCP(readModify(adr)));
                 break;
-            case MOS6510Ops.BMI:
-                branch(sign, adr, tmp);
+            case 0xe0: // CPX #imm
+                pc++;
+                opCPX(p1);
                 break;
-            // Modify flags
-            case MOS6510Ops.CLC:
-                carry = false;
+            case 0xe1: // SBC (indirect,x)
+                opSBC(fetchByte(adrIndirectX(p1)));
                 break;
-            case MOS6510Ops.SEC:
-                carry = true;
+            case 0xe2: // NOP #imm
+                pc++;
                 break;
-            case MOS6510Ops.CLD:
-                decimal = false;
+            case 0xe3: // ISB (indirect,x)
+                adr = adrIndirectX(p1);
+                writeByte(adr, opISB(readModify(adr)));
                 break;
-            case MOS6510Ops.SED:
-                decimal = true;
+            case 0xe4: // CPX zero
+                opCPX(fetchByte(adrZero(p1)));
                 break;
-            case MOS6510Ops.CLV:
-                overflow = false;
+            case 0xe5: // SBC zero
+                opSBC(fetchByte(adrZero(p1)));
                 break;
-            case MOS6510Ops.SEI:
-                disableInterupt = true;
+            case 0xe6: // INC zero
+                adr = adrZero(p1);
+                writeByte(adr, opINC(readModify(adr)));
                 break;
-            case MOS6510Ops.CLI:
-                disableInterupt = false;
-                checkInterrupt = true;
+            case 0xe7: // ISB zero
+                adr = adrZero(p1);
+                writeByte(adr, opISB(readModify(adr)));
                 break;
-            // Load / Store instructions
-            case MOS6510Ops.LDA:
-                acc = data;
-                setZS(data);
+            case 0xe8: // INX
+                x = (x + 1) & 0xff;
+                setZS(x);
                 break;
-            case MOS6510Ops.LDX:
-                x = data;
-                setZS(data);
+            case 0xe9: // SBC #imm
+                pc++;
+                opSBC(p1);
                 break;
-            case MOS6510Ops.LDY:
-                y = data;
-                setZS(data);
+            case 0xea: // NOP
                 break;
-            case MOS6510Ops.STA:
-                data = acc;
+            case 0xeb: // SBC #imm
+                pc++;
+                opSBC(p1);
                 break;
-            case MOS6510Ops.STX:
-                data = x;
+            case 0xec: // CPX absolute
+                opCPX(fetchByte(adrAbsolute(p1)));
                 break;
-            case MOS6510Ops.STY:
-                data = y;
+            case 0xed: // SBC absolute
+                opSBC(fetchByte(adrAbsolute(p1)));
                 break;
-
-            // -------------------------------------------------------------------
-            // Undocumented ops
-            // -------------------------------------------------------------------
-            case MOS6510Ops.ANE:
-                acc = p1 & x & (acc | 0xee);
-                setZS(acc);
+            case 0xee: // INC absolute
+                adr = adrAbsolute(p1);
+                writeByte(adr, opINC(readModify(adr)));
                 break;
-            case MOS6510Ops.ARR: // ARR = AND + ROR ??? - not???
-                // A'la frodo
-                tmp = p1 & acc;
-                acc = (carry ? (tmp >> 1) | 0x80 : tmp >> 1);
-                if (!decimal) {
-                    setZS(acc);
-                    carry = (acc & 0x40) != 0;
-                    overflow = ((acc & 0x40) ^ ((acc & 0x20) << 1)) != 0;
-                } else {
-                    sign = carry;
-                    zero = acc == 0;
-                    overflow = ((tmp ^ acc) & 0x40) != 0;
-                    if ((tmp & 0x0f) + (tmp & 0x01) > 5)
-                        acc = acc & 0xf0 | (acc + 6) & 0x0f;
-                    if (carry = ((tmp + (tmp & 0x10)) & 0x1f0) > 0x50)
-                        acc += 0x60;
-                }
+            case 0xef: // ISB absolute
+                adr = adrAbsolute(p1);
+                writeByte(adr, opISB(readModify(adr)));
                 break;
-
-            case MOS6510Ops.ASR: // AND + LSR
-                acc = acc & data;
-                nxtcarry = (acc & 0x01) != 0;
-                acc = (acc >> 1);
-                carry = nxtcarry;
-                setZS(acc);
+            case 0xf0: // BEQ
+                branch(isZero(), p1);
                 break;
-
-            case MOS6510Ops.DCP:
-                data = (data - 1) & 0xff;
-                setZS(data);
-                tmp = acc - data;
-                carry = tmp >= 0;
-                setZS((tmp & 0xff));
+            case 0xf1: // SBC (indirect),y
+                opSBC(readIndirectY(p1));
                 break;
-
-            case MOS6510Ops.ISB:
-                data = (data + 1) & 0xff;
-                // SBC PART!
-                opSBCimp(data);
+            case 0xf2: // TRP
+                LOGGER.info("TRAP Instruction executed");
                 break;
-            case MOS6510Ops.LAX:
-                acc = x = data;
-                setZS(acc);
+            case 0xf3: // ISB (indirect),y
+                adr = adrIndirectY(p1);
+                writeByte(adr, opISB(readModify(adr)));
                 break;
-
-            case MOS6510Ops.LAS: // A,X,S:={adr}&S
-                acc = x = s = (data & s);
-                setZS(acc);
+            case 0xf4: // NOP zero,x
+                fetchByte(adrZeroIndexed(p1, x));
                 break;
-
-            case MOS6510Ops.LXA:
-                x = acc = (acc | 0xee) & p1;
-                setZS(acc);
+            case 0xf5: // SBC zero,x
+                opSBC(fetchByte(adrZeroIndexed(p1, x)));
                 break;
-
-            case MOS6510Ops.RLA:
-                data = (data << 1) + (carry ? 1 : 0);
-                carry = (data & 0x100) != 0;
-                data = data & 0xff;
-                // AND PART
-                acc = acc & data;
-                zero = (acc == 0);
-                sign = (acc > 0x7f);
+            case 0xf6: // INC zero,x
+                adr = adrZeroIndexed(p1, x);
+                writeByte(adr, opINC(readModify(adr)));
                 break;
-
-            case MOS6510Ops.RRA: // RRA ROR + ADC
-                nxtcarry = (data & 0x01) != 0;
-                data = (data >> 1) + (carry ? 0x80 : 0);
-                carry = nxtcarry;
-                // ADC PART!
-                opADCimp(data);
+            case 0xf7: // ISB zero,x
+                adr = adrZeroIndexed(p1, x);
+                writeByte(adr, opISB(readModify(adr)));
                 break;
-
-            case MOS6510Ops.SBX:
-                x = ((acc & x) - p1);
-                carry = x >= 0;
-                x = x & 0xff;
-                setZS(x);
+            case 0xf8: // SED
+                decimal = true;
                 break;
-            case MOS6510Ops.SHA:
-                data = acc & x & ((adr >> 8) + 1);
+            case 0xf9: // SBC absolute,y
+                opSBC(readAbsoluteIndexed(p1, y));
                 break;
-
-            case MOS6510Ops.SHS:
-                data = acc & x & ((adr >> 8) + 1);
-                s = acc & x;
+            case 0xfa: // NOP
                 break;
-
-            case MOS6510Ops.SHX:
-                data = x & ((adr >> 8) + 1);
+            case 0xfb: // ISB absolute,y
+                adr = adrAbsoluteIndexed(p1, y);
+                writeByte(adr, opISB(readModify(adr)));
                 break;
-            case MOS6510Ops.SHY:
-                data = y & ((adr >> 8) + 1);
+            case 0xfc: // NOP absolute,x
+                readAbsoluteIndexed(p1, x);
                 break;
-
-            case MOS6510Ops.SAX:
-                data = acc & x;
+            case 0xfd: // SBC absolute,x
+                opSBC(readAbsoluteIndexed(p1, x));
                 break;
-
-            case MOS6510Ops.SRE:
-                carry = (data & 0x01) != 0;
-                data = data >> 1;
-                // EOR PART
-                acc = acc ^ data;
-                setZS(acc);
+            case 0xfe: // INC absolute,x
+                adr = adrAbsoluteIndexed(p1, x);
+                writeByte(adr, opINC(readModify(adr)));
                 break;
-
-            case MOS6510Ops.SLO:
-                // ASL
-                setCarry(data);
-                data = (data << 1) & 0xff;
-                // Written later...
-                // THE ORA PART
-                acc = acc | data;
-                setZS(acc);
+            case 0xff: // ISB absolute,x
+                adr = adrAbsoluteIndexed(p1, x);
+                writeByte(adr, opISB(readModify(adr)));
                 break;
-            default:
-                unknownInstruction(pc, op);
-        }
-
-        if (write) {
-            writeByte(adr, data);
-        } else if (addrMode == MOS6510Ops.ACCUMULATOR) {
-            acc = data;
         }
     }
 
@@ -699,6 +1142,32 @@ public abstract class MOS6510Core {
 
     protected abstract void writeByte(int adr, int data);
 
+    /***
+     * Does the bus cycle of an instruction fetch whose byte is already known
+     * from a translated block. The cycle must pass exactly as in
+     * {@link #fetchByte(int)}, only the read can be left out.
+     */
+    protected int fetchCachedByte(int adr, int data) {
+        return fetchByte(adr);
+    }
+
+    /***
+     * Returns the byte at adr as the next fetch would get it, without any bus
+     * cycle, or -1 when it can't be known in advance (i.e. IO). Code is only
+     * translated from where a byte is returned, so nothing is by default.
+     */
+    protected int peekCode(int adr) {
+        return -1;
+    }
+
+    /***
+     * Returns a number (0 - 15) for the current memory configuration, the code
+     * translated in one configuration is never run in another.
+     */
+    protected int getMemoryConfiguration() {
+        return 0;
+    }
+
     protected void unknownInstruction(int pc, int op) {
         LOGGER.error("Unknown instruction: " + op);
     }
@@ -707,6 +1176,34 @@ public abstract class MOS6510Core {
         return acc;
     }
 
+    /***
+     * Returns pc, registers and flags packed in one long, cheap to compare
+     * between two instruction boundaries.
+     */
+    protected final long getRegisterState() {
+        return ((long) pc << 40) | ((long) getStatusByte() << 32) | ((long) s << 24) | ((long) y << 16)
+                | ((long) x << 8) | acc;
+    }
+
+    /***
+     * Returns true when an interrupt (or reset) may be taken without any
+     * further change of the interrupt lines, i.e. an IRQ which is still
+     * delayed or only waits for the I flag to be cleared.
+     */
+    protected final boolean isInterruptPending() {
+        if ((NMILow && !NMILastLow) || brk || resetFlag) {
+            return true;
+        }
+        return IRQLow && (!disableInterupt || currentCpuCycles < irqCycleStart);
+    }
+
+    /***
+     * Returns the number of interrupts taken so far.
+     */
+    protected final long getInterruptCount() {
+        return interruptCount;
+    }
+
     private final void doInterrupt(int adr, int status) {
         // System.out.println("Doing Interrupt disableInterrupt before: " +
         // disableInterupt);
@@ -716,32 +1213,53 @@ public abstract class MOS6510Core {
         push(pc & 0x00ff); // LOW ??
         push(status);
         interruptInExec++;
+        interruptCount++;
         pc = (fetchByte(adr + 1) << 8);
         pc += fetchByte(adr);
     }
 
-    private final int getStatusByte() {
-        return ((carry ? 0x01 : 0) + (zero ? 0x02 : 0) + (disableInterupt ? 0x04 : 0) + (decimal ? 0x08 : 0)
-                + (brk ? 0x10 : 0) + 0x20 + (overflow ? 0x40 : 0) + (sign ? 0x80 : 0));
+    /**
+     * Returns the packed status register (NV-BDIZC), i.e. for the debugger or
+     * for a snapshot.
+     */
+    public final int getStatusByte() {
+        return (carry + (isZero() ? 0x02 : 0) + (disableInterupt ? 0x04 : 0) + (decimal ? 0x08 : 0)
+                + (brk ? 0x10 : 0) + 0x20 + (isOverflow() ? 0x40 : 0) + (isSign() ? 0x80 : 0));
     }
 
-    private final void setStatusByte(int status) {
-        carry = (status & 0x01) != 0;
-        zero = (status & 0x02) != 0;
+    /**
+     * Sets all the flags from the packed status register (NV-BDIZC), i.e. when
+     * restoring a snapshot.
+     */
+    public final void setStatusByte(int status) {
+        carry = status & 0x01;
+        zeroValue = ~status & 0x02;
         disableInterupt = (status & 0x04) != 0;
         decimal = (status & 0x08) != 0;
         brk = (status & 0x10) != 0;
-        overflow = (status & 0x40) != 0;
-        sign = (status & 0x80) != 0;
+        overflowValue = status << 1;
+        signValue = status & 0x80;
+    }
+
+    private final boolean isSign() {
+        return signValue > 0x7f;
+    }
+
+    private final boolean isZero() {
+        return zeroValue == 0;
+    }
+
+    private final boolean isOverflow() {
+        return (overflowValue & 0x80) != 0;
     }
 
     private final void setZS(int data) {
-        zero = data == 0;
-        sign = data > 0x7f;
+        zeroValue = data;
+        signValue = data;
     }
 
     private final void setCarry(int data) {
-        carry = data > 0x7f;
+        carry = data > 0x7f ? 1 : 0;
     }
 
     // -------------------------------------------------------------------
@@ -760,12 +1278,12 @@ public abstract class MOS6510Core {
         s = (s - 1) & 0xff;
     }
 
-    private final void opADCimp(int data) {
-        int tmp = data + acc + (carry ? 1 : 0);
-        zero = (tmp & 0xff) == 0; // not valid in decimal mode
+    private final void opADC(int data) {
+        int tmp = data + acc + carry;
+        zeroValue = tmp & 0xff; // not valid in decimal mode
 
         if (decimal) {
-            tmp = (acc & 0xf) + (data & 0xf) + (carry ? 1 : 0);
+            tmp = (acc & 0xf) + (data & 0xf) + carry;
             if (tmp > 0x9)
                 tmp += 0x6;
             if (tmp <= 0x0f)
@@ -773,21 +1291,32 @@ public abstract class MOS6510Core {
             else
                 tmp = (tmp & 0xf) + (acc & 0xf0) + (data & 0xf0) + 0x10;
 
-            overflow = (((acc ^ data) & 0x80) == 0) && (((acc ^ tmp) & 0x80) != 0);
+            overflowValue = ~(acc ^ data) & (acc ^ tmp);
 
-            sign = (tmp & 0x80) > 0;
+            signValue = tmp & 0x80;
 
             if ((tmp & 0x1f0) > 0x90)
                 tmp += 0x60;
-            carry = tmp > 0x99;
+            carry = tmp > 0x99 ? 1 : 0;
         } else {
-            overflow = (((acc ^ data) & 0x80) == 0) && (((acc ^ tmp) & 0x80) != 0);
-            carry = tmp > 0xff;
-            sign = (tmp & 0x80) > 0;
+            overflowValue = ~(acc ^ data) & (acc ^ tmp);
+            carry = tmp > 0xff ? 1 : 0;
+            signValue = tmp & 0x80;
         }
         acc = tmp & 0xff;
     }
 
+    private final void branch(boolean branch, int p1) {
+        pc++;
+        int adr = pc + (byte) p1;
+        if (((adr ^ pc) & 0xff00) > 0) {
+            // loose one cycle since adr is on another page...
+            branch(branch, adr, 2);
+        } else {
+            branch(branch, adr, 1);
+        }
+    }
+
     private final void branch(boolean branch, int adr, int cycDiff) {
         if (branch) {
             int oldPC = pc;
@@ -805,15 +1334,15 @@ public abstract class MOS6510Core {
         }
     }
 
-    private final void opSBCimp(int data) {
-        int tmp = acc - data - (carry ? 0 : 1);
-        boolean nxtcarry = (tmp >= 0);
+    private final void opSBC(int data) {
+        int tmp = acc - data - (carry ^ 1);
+        int nxtcarry = tmp >= 0 ? 1 : 0;
         tmp = tmp & 0x1ff; // Carry is set!
-        sign = (tmp & 0x80) == 0x80; // Invalid in decimal mode??
-        zero = ((tmp & 0xff) == 0);
-        overflow = (((acc ^ tmp) & 0x80) != 0) && (((acc ^ data) & 0x80) != 0);
+        signValue = tmp & 0x80; // Invalid in decimal mode??
+        zeroValue = tmp & 0xff;
+        overflowValue = (acc ^ tmp) & (acc ^ data);
         if (decimal) {
-            tmp = (acc & 0xf) - (data & 0xf) - (carry ? 0 : 1);
+            tmp = (acc & 0xf) - (data & 0xf) - (carry ^ 1);
             if ((tmp & 0x10) > 0)
                 tmp = ((tmp - 6) & 0xf) | ((acc & 0xf0) - (data & 0xf0) - 0x10);
             else
@@ -825,11 +1354,392 @@ public abstract class MOS6510Core {
         carry = nxtcarry;
     }
 
+    // -------------------------------------------------------------------
+    // Addressing modes - each one increases pc and returns the address
+    // -------------------------------------------------------------------
+    // the high byte of an absolute address, taken from the block if translated
+    private final int fetchOperand(int adr) {
+        if (blockOperand >= 0) {
+            return fetchCachedByte(adr, blockOperand);
+        }
+        return fetchByte(adr);
+    }
+
+    private final int adrZero(int p1) {
+        pc++;
+        return p1;
+    }
+
+    private final int adrZeroIndexed(int p1, int index) {
+        pc++;
+        // Read from wrong address first...
+        fetchByte(p1);
+        return (p1 + index) & 0xff;
+    }
+
+    private final int adrAbsolute(int p1) {
+        pc++;
+        return (fetchOperand(pc++) << 8) + p1;
+    }
+
+    // Used by write and rmw instructions - the incorrect address is always read
+    private final int adrAbsoluteIndexed(int p1, int index) {
+        pc++;
+        // Fetch hi byte!
+        int adr = fetchOperand(pc++) << 8;
+
+        // add x/y to low byte & faulty fetch!
+        p1 += index;
+        fetchByte(adr + (p1 & 0xff));
+        return adr + p1;
+    }
+
+    private final int readAbsoluteIndexed(int p1, int index) {
+        pc++;
+        // Fetch hi byte!
+        int adr = fetchOperand(pc++) << 8;
+
+        // add x/y to low byte & possibly faulty fetch!
+        p1 += index;
+        int data = fetchByte(adr + (p1 & 0xff));
+
+        // a fifth cycle patches the incorrect address...
+        if (p1 > 0xff) {
+            data = fetchByte(adr + p1);
+        }
+        return data;
+    }
+
+    private final int adrIndirectX(int p1) {
+        pc++;
+        // unneccesary read...
+        fetchByte(p1);
+        int tmp = (p1 + x) & 0xff;
+
+        int adr = (fetchByte(tmp + 1) << 8);
+        adr |= fetchByte(tmp);
+        return adr;
+    }
+
+    // Used by write and rmw instructions - the incorrect address is always read
+    private final int adrIndirectY(int p1) {
+        pc++;
+        // Fetch hi and lo
+        int adr = (fetchByte(p1 + 1) << 8);
+        p1 = fetchByte(p1);
+        p1 += y;
+
+        fetchByte(adr + (p1 & 0xff));
+        return adr + p1;
+    }
+
+    private final int readIndirectY(int p1) {
+        pc++;
+        // Fetch hi and lo
+        int adr = (fetchByte(p1 + 1) << 8);
+        p1 = fetchByte(p1);
+        p1 += y;
+
+        int data = fetchByte(adr + (p1 & 0xff));
+
+        // a sixth cycle patches the incorrect address...
+        if (p1 > 0xff) {
+            data = fetchByte(adr + p1);
+        }
+        return data;
+    }
+
+    private final int adrIndirect(int p1) {
+        pc++;
+        // Fetch pointer
+        int adr = (fetchOperand(pc) << 8) + p1;
+
+        // Calculate address
+        int tmp = (adr & 0xfff00) | ((adr + 1) & 0xff);
+        // fetch the real address
+        adr = fetchByte(adr);
+        adr += (fetchByte(tmp) << 8);
+        return adr;
+    }
+
+    // RMW - it will write the unmodified value before proceeding
+    private final int readModify(int adr) {
+        int data = fetchByte(adr);
+        writeByte(adr, data);
+        return data;
+    }
+
+    // -------------------------------------------------------------------
+    // Instructions
+    // -------------------------------------------------------------------
+    private final void opORA(int data) {
+        acc = acc | data;
+        setZS(acc);
+    }
+
+    private final void opAND(int data) {
+        acc = acc & data;
+        setZS(acc);
+    }
+
+    private final void opEOR(int data) {
+        acc = acc ^ data;
+        setZS(acc);
+    }
+
+    private final void opBIT(int data) {
+        signValue = data;
+        overflowValue = data << 1;
+        zeroValue = acc & data;
+    }
+
+    private final void opLDA(int data) {
+        acc = data;
+        setZS(data);
+    }
+
+    private final void opLDX(int data) {
+        x = data;
+        setZS(data);
+    }
+
+    private final void opLDY(int data) {
+        y = data;
+        setZS(data);
+    }
+
+    private final void opCMP(int data) {
+        compare(acc, data);
+    }
+
+    private final void opCPX(int data) {
+        compare(x, data);
+    }
+
+    private final void opCPY(int data) {
+        compare(y, data);
+    }
+
+    private final void compare(int register, int data) {
+        data = register - data;
+        carry = data >= 0 ? 1 : 0;
+        setZS((data & 0xff));
+    }
+
+    private final int opASL(int data) {
+        setCarry(data);
+        data = (data << 1) & 0xff;
+        setZS(data);
+        return data;
+    }
+
+    private final int opLSR(int data) {
+        carry = data & 0x01;
+        data = data >> 1;
+        zeroValue = data;
+        signValue = 0;
+        return data;
+    }
+
+    private final int opROL(int data) {
+        data = (data << 1) + carry;
+        carry = (data >> 8) & 0x01;
+        data = data & 0xff;
+        setZS(data);
+        return data;
+    }
+
+    private final int opROR(int data) {
+        int nxtcarry = data & 0x01;
+        data = (data >> 1) + (carry << 7);
+        carry = nxtcarry;
+        setZS(data);
+        return data;
+    }
+
+    private final int opDEC(int data) {
+        data = (data - 1) & 0xff;
+        setZS(data);
+        return data;
+    }
+
+    private final int opINC(int data) {
+        data = (data + 1) & 0xff;
+        setZS(data);
+        return data;
+    }
+
+    private final void opJSR(int p1) {
+        pc++;
+        int adr = (fetchOperand(pc) << 8) + p1;
+        fetchByte(s | 0x100);
+        push((pc & 0xff00) >> 8); // HI
+        push(pc & 0x00ff); // LOW
+        pc = adr;
+    }
+
+    private final void opRTS() {
+        fetchByte(s | 0x100);
+        pc = pop() + (pop() << 8);
+        pc++;
+        fetchByte(pc);
+    }
+
+    private final void opRTI() {
+        fetchByte(s | 0x100);
+        setStatusByte(pop());
+        pc = pop() + (pop() << 8);
+        brk = false;
+        interruptInExec--;
+        // Need to check for interrupts
+        checkInterrupt = true;
+    }
+
+    // -------------------------------------------------------------------
+    // Undocumented ops
+    // -------------------------------------------------------------------
+    private final void opANC(int data) {
+        acc = acc & data;
+        setZS(acc);
+        carry = (acc >> 7) & 0x01;
+    }
+
+    private final void opANE(int data) {
+        acc = data & x & (acc | 0xee);
+        setZS(acc);
+    }
+
+    // ARR = AND + ROR ??? - not???
+    private final void opARR(int data) {
+        // A'la frodo
+        int tmp = data & acc;
+        acc = (tmp >> 1) | (carry << 7);
+        if (!decimal) {
+            setZS(acc);
+            carry = (acc >> 6) & 0x01;
+            overflowValue = ((acc & 0x40) ^ ((acc & 0x20) << 1)) << 1;
+        } else {
+            signValue = carry << 7;
+            zeroValue = acc;
+            overflowValue = (tmp ^ acc) << 1;
+            if ((tmp & 0x0f) + (tmp & 0x01) > 5)
+                acc = acc & 0xf0 | (acc + 6) & 0x0f;
+            carry = ((tmp + (tmp & 0x10)) & 0x1f0) > 0x50 ? 1 : 0;
+            if (carry != 0)
+                acc += 0x60;
+        }
+    }
+
+    // AND + LSR
+    private final void opASR(int data) {
+        acc = acc & data;
+        int nxtcarry = acc & 0x01;
+        acc = (acc >> 1);
+        carry = nxtcarry;
+        setZS(acc);
+    }
+
+    private final int opDCP(int data) {
+        data = (data - 1) & 0xff;
+        setZS(data);
+        int tmp = acc - data;
+        carry = tmp >= 0 ? 1 : 0;
+        setZS((tmp & 0xff));
+        return data;
+    }
+
+    private final int opISB(int data) {
+        data = (data + 1) & 0xff;
+        // SBC PART!
+        opSBC(data);
+        return data;
+    }
+
+    private final void opLAX(int data) {
+        acc = x = data;
+        setZS(acc);
+    }
+
+    // A,X,S:={adr}&S
+    private final void opLAS(int data) {
+        acc = x = s = (data & s);
+        setZS(acc);
+    }
+
+    private final void opLXA(int data) {
+        x = acc = (acc | 0xee) & data;
+        setZS(acc);
+    }
+
+    private final int opRLA(int data) {
+        data = (data << 1) + carry;
+        carry = (data >> 8) & 0x01;
+        data = data & 0xff;
+        // AND PART
+        acc = acc & data;
+        setZS(acc);
+        return data;
+    }
+
+    // RRA ROR + ADC
+    private final int opRRA(int data) {
+        int nxtcarry = data & 0x01;
+        data = (data >> 1) + (carry << 7);
+        carry = nxtcarry;
+        // ADC PART!
+        opADC(data);
+        return data;
+    }
+
+    private final void opSBX(int data) {
+        x = ((acc & x) - data);
+        carry = x >= 0 ? 1 : 0;
+        x = x & 0xff;
+        setZS(x);
+    }
+
+    private final int opSHA(int adr) {
+        return acc & x & ((adr >> 8) + 1);
+    }
+
+    private final int opSHS(int adr) {
+        int data = acc & x & ((adr >> 8) + 1);
+        s = acc & x;
+        return data;
+    }
+
+    private final int opSHX(int adr) {
+        return x & ((adr >> 8) + 1);
+    }
+
+    private final int opSHY(int adr) {
+        return y & ((adr >> 8) + 1);
+    }
+
+    private final int opSRE(int data) {
+        carry = data & 0x01;
+        data = data >> 1;
+        // EOR PART
+        acc = acc ^ data;
+        setZS(acc);
+        return data;
+    }
+
+    private final int opSLO(int data) {
+        // ASL
+        setCarry(data);
+        data = (data << 1) & 0xff;
+        // THE ORA PART
+        acc = acc | data;
+        setZS(acc);
+        return data;
+    }
+
     private void doReset() {
-        sign = false;
-        zero = false;
-        overflow = false;
-        carry = false;
+        signValue = 0;
+        zeroValue = 1;
+        overflowValue = 0;
+        carry = 0;
         decimal = false;
         brk = false;
 
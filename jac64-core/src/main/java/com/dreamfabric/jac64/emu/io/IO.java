@@ -72,35 +72,35 @@ public class IO extends AddressableVoid {
     }
 
     @Override
-    public Integer read(int address, long currentCpuCycles) {
-        Integer result = null;
+    public int read(int address, long currentCpuCycles) {
+        int result = NOT_READABLE;
 
         result = sid.read(address, currentCpuCycles);
-        if (result != null) {
+        if (result != NOT_READABLE) {
             return result;
         }
 
         result = vic.read(address, currentCpuCycles);
-        if (result != null) {
+        if (result != NOT_READABLE) {
             return result;
         }
 
         result = cia1.read(address, currentCpuCycles);
-        if (result != null) {
+        if (result != NOT_READABLE) {
             return result;
         }
 
         result = cia2.read(address, currentCpuCycles);
-        if (result != null) {
+        if (result != NOT_READABLE) {
             return result;
         }
 
         result = colorRAM.read(address, currentCpuCycles);
-        if (result != null) {
+        if (result != NOT_READABLE) {
             return result;
         }
 
-        return null;
+        return NOT_READABLE;
     }
 
     @Override
@@ -1,11 +1,19 @@
 package com.dreamfabric.jac64.emu.memory;
 
 import com.dreamfabric.jac64.emu.bus.AddressableChip;
+import com.dreamfabric.jac64.emu.bus.WriteListenerIf;
 
 public class RAM extends AddressableChip {
     public final static int START_ADDRESS = 0x0000;
     public final static int END_ADDRESS = 0xFFFF;
 
+    // told about the data loaded behind the bus
+    private volatile WriteListenerIf writeListener;
+
+    public void setWriteListener(WriteListenerIf writeListener) {
+        this.writeListener = writeListener;
+    }
+
     @Override
     public int getStartAddress() {
         return START_ADDRESS;
@@ -26,9 +34,23 @@ public class RAM extends AddressableChip {
      */
     public void write0(int address, int data) {
         super.write0(address, data);
+        loaded(address, 1);
     }
-    
-    public Integer read0(int address) {
+
+    @Override
+    public void load(int address, byte[] src, int offset, int length) {
+        super.load(address, src, offset, length);
+        loaded(address, length);
+    }
+
+    private void loaded(int address, int length) {
+        WriteListenerIf listener = writeListener;
+        if (listener != null) {
+            listener.loaded(address, length);
+        }
+    }
+
+    public int read0(int address) {
         return super.read0(address);
     }
 }
@@ -3,6 +3,7 @@ package com.dreamfabric.jac64.emu.pla;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.dreamfabric.jac64.emu.bus.AddressableBus;
 import com.dreamfabric.jac64.emu.io.IO;
 import com.dreamfabric.jac64.emu.memory.BasicROM;
 import com.dreamfabric.jac64.emu.memory.CharROM;
@@ -22,6 +23,7 @@ public class PLA {
     private BasicROM basicRom = null;
     private KernalROM kernalRom = null;
     private CharROM charRom = null;
+    private AddressableBus addressableBus = null;
 
     public PLA() {
         LOGGER.info("Test");
@@ -36,6 +38,9 @@ public class PLA {
         // charen, hiram, loram));
 
         enableChips();
+
+        // the banking has changed, so the bus needs a new page table
+        addressableBus.updatePageTable();
     }
 
     public void setIO(IO io) {
@@ -54,6 +59,10 @@ public class PLA {
         this.charRom = charRom;
     }
 
+    public void setAddressableBus(AddressableBus addressableBus) {
+        this.addressableBus = addressableBus;
+    }
+
     private void enableChips() {
         io.setEnabled(false);
         basicRom.setEnabled(false);
@@ -1,8 +1,21 @@
 package com.dreamfabric.jac64.emu.scheduler;
 
+import java.util.Arrays;
+
+/***
+ * Binary heap of {@link TimeEvent}s ordered by their time. Every event knows
+ * its position in the heap, so rescheduling or removing it does not need to
+ * search for it. Events with the same time are executed in the reverse order
+ * they were added (the last added one first).
+ * <p>
+ * A {@link PeriodicTimeEvent} is not removed by {@link #popFirst()}, it is
+ * moved on to its next period instead.
+ */
 public class EventQueue {
 
-    private TimeEvent first;
+    private TimeEvent heap[] = new TimeEvent[16];
+    private int size = 0;
+    private long sequence = 0;
     public long nextTime;
 
     public EventQueue() {
@@ -14,106 +27,142 @@ public class EventQueue {
     }
 
     public void addEvent(TimeEvent event) {
-        if (event.scheduled) {
-            removeEvent(event);
-        }
-        if (first == null) {
-            first = event;
+        event.sequence = sequence++;
+        if (isQueued(event)) {
+            // just move it to its new place
+            siftUp(event.heapIndex);
+            siftDown(event.heapIndex);
         } else {
-            TimeEvent pos = first;
-            TimeEvent lastPos = first;
-            while (pos != null && pos.cpuCyclesTime < event.cpuCyclesTime) {
-                lastPos = pos;
-                pos = pos.nextEvent;
-            }
-            // Here pos will be the first TE after event
-            // and lastPos the first before
-            if (pos == first) {
-                // Before all other
-                event.nextEvent = pos;
-                first = event;
-            } else {
-                event.nextEvent = pos;
-                lastPos.nextEvent = event;
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
             }
-        }
-        if (first != null) {
-            nextTime = first.cpuCyclesTime;
-        } else {
-            nextTime = 0;
+            heap[size] = event;
+            event.heapIndex = size;
+            size++;
+            siftUp(event.heapIndex);
         }
         event.scheduled = true;
+        updateNextTime();
     }
 
-    // Not yet impl.
     public boolean removeEvent(TimeEvent event) {
-        TimeEvent pos = first;
-        TimeEvent lastPos = first;
-        // System.out.println("Removing: " + event.getShort() + " Before remove: ");
-        // print();
-        while (pos != null && pos != event) {
-            lastPos = pos;
-            pos = pos.nextEvent;
-        }
-        if (pos == null)
+        if (!isQueued(event)) {
             return false;
-        // pos == event!
-        if (pos == first) {
-            // remove it from first pos.
-            first = pos.nextEvent;
-        } else {
-            // else link prev to next...
-            lastPos.nextEvent = pos.nextEvent;
-        }
-        // unlink
-        pos.nextEvent = null;
-
-        if (first != null) {
-            nextTime = first.cpuCyclesTime;
-        } else {
-            nextTime = 0;
         }
-        // System.out.println("Removed =>");
-        // print();
-        event.scheduled = false;
+        removeAt(event.heapIndex);
+        updateNextTime();
         return true;
     }
 
     public TimeEvent popFirst() {
-        if (first == null) {
+        if (size == 0) {
             return null;
         }
 
-        TimeEvent tmp = first;
-        if (tmp != null) {
-            first = tmp.nextEvent;
-            // Unlink.
-            tmp.nextEvent = null;
-        }
-
-        if (first != null) {
-            nextTime = first.cpuCyclesTime;
+        TimeEvent tmp = heap[0];
+        if (tmp.period > 0) {
+            // stays in the queue, one period later
+            tmp.cpuCyclesTime += tmp.period;
+            tmp.sequence = sequence++;
+            siftDown(0);
         } else {
-            nextTime = 0;
+            removeAt(0);
         }
-        tmp.scheduled = false;
+        updateNextTime();
         return tmp;
     }
 
     public void print() {
-        TimeEvent t = first;
+        TimeEvent sorted[] = Arrays.copyOf(heap, size);
+        Arrays.sort(sorted, (a, b) -> before(a, b) ? -1 : 1);
         System.out.print("nxt: " + nextTime + " [");
-        while (t != null) {
-            System.out.print(t.getShort());
-            t = t.nextEvent;
-            if (t != null)
+        for (int i = 0; i < sorted.length; i++) {
+            System.out.print(sorted[i].getShort());
+            if (i + 1 < sorted.length)
                 System.out.print(", ");
         }
         System.out.println("]");
     }
 
     public void empty() {
-        first = null;
+        for (int i = 0; i < size; i++) {
+            unlink(heap[i]);
+            heap[i] = null;
+        }
+        size = 0;
         nextTime = 0;
     }
-} // LLEventQueue
+
+    private boolean isQueued(TimeEvent event) {
+        int index = event.heapIndex;
+        return index >= 0 && index < size && heap[index] == event;
+    }
+
+    private void removeAt(int index) {
+        TimeEvent event = heap[index];
+        size--;
+        if (index != size) {
+            // move the last one into the hole and restore the heap order
+            heap[index] = heap[size];
+            heap[index].heapIndex = index;
+            heap[size] = null;
+            siftUp(index);
+            siftDown(heap[index].heapIndex);
+        } else {
+            heap[size] = null;
+        }
+        unlink(event);
+    }
+
+    private void unlink(TimeEvent event) {
+        event.heapIndex = -1;
+        event.scheduled = false;
+    }
+
+    private void updateNextTime() {
+        // an empty queue has nextTime 0
+        nextTime = size > 0 ? heap[0].cpuCyclesTime : 0;
+    }
+
+    private void siftUp(int index) {
+        TimeEvent event = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >> 1;
+            if (!before(event, heap[parent])) {
+                break;
+            }
+            heap[index] = heap[parent];
+            heap[index].heapIndex = index;
+            index = parent;
+        }
+        heap[index] = event;
+        event.heapIndex = index;
+    }
+
+    private void siftDown(int index) {
+        TimeEvent event = heap[index];
+        int half = size >> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            if (child + 1 < size && before(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!before(heap[child], event)) {
+                break;
+            }
+            heap[index] = heap[child];
+            heap[index].heapIndex = index;
+            index = child;
+        }
+        heap[index] = event;
+        event.heapIndex = index;
+    }
+
+    // true when a has to be executed before b
+    private static boolean before(TimeEvent a, TimeEvent b) {
+        if (a.cpuCyclesTime != b.cpuCyclesTime) {
+            return a.cpuCyclesTime < b.cpuCyclesTime;
+        }
+        return a.sequence > b.sequence;
+    }
+} // EventQueue
@@ -0,0 +1,107 @@
+package com.dreamfabric.jac64.emu.scheduler;
+
+/***
+ * {@link TimeEvent} which fires every period cycles. Once added to an
+ * {@link EventQueue} it stays there: when it is popped the queue moves it on
+ * by one period (from its scheduled time, not from the time it has actually
+ * been executed, so it doesn't drift) before it is executed.
+ * <p>
+ * The phase is the offset inside the period at which the event fires, counted
+ * from cycle 0, see {@link #getNextTime(long)}. {@link #schedule(EventQueue, long)}
+ * and {@link #resume(EventQueue, long)} put the event at its next phase point,
+ * {@link #setPhase(EventQueue, long, long)} moves a queued event to the new one.
+ * Adding it to the queue at an explicit time is still possible, the period then
+ * runs from that time.
+ */
+public abstract class PeriodicTimeEvent extends TimeEvent {
+
+    private long phase;
+    private boolean paused = false;
+
+    public PeriodicTimeEvent(long period) {
+        this(period, 0, null);
+    }
+
+    public PeriodicTimeEvent(long period, long phase, String name) {
+        super(0, name);
+        setPeriod(period);
+        this.phase = phase;
+    }
+
+    public long getPeriod() {
+        return period;
+    }
+
+    /***
+     * Sets the period, used from the next firing on.
+     */
+    public void setPeriod(long period) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("Period must be positive: " + period);
+        }
+        this.period = period;
+    }
+
+    public long getPhase() {
+        return phase;
+    }
+
+    /***
+     * Sets the phase, used the next time the event is scheduled.
+     */
+    public void setPhase(long phase) {
+        this.phase = phase;
+    }
+
+    /***
+     * Sets the phase and, when the event is in the queue, moves it to the first
+     * cycle after currentCpuCycles matching the new phase.
+     */
+    public void setPhase(EventQueue queue, long phase, long currentCpuCycles) {
+        this.phase = phase;
+        if (isScheduled()) {
+            queue.addEvent(this, getNextTime(currentCpuCycles));
+        }
+    }
+
+    /***
+     * Returns the first cycle after currentCpuCycles at which the event fires
+     * according to its period and phase.
+     */
+    public long getNextTime(long currentCpuCycles) {
+        long offset = Math.floorMod(currentCpuCycles - phase, period);
+        return currentCpuCycles + period - offset;
+    }
+
+    /***
+     * Adds the event to the queue (or moves it there) at its next phase point
+     * after currentCpuCycles.
+     */
+    public void schedule(EventQueue queue, long currentCpuCycles) {
+        paused = false;
+        queue.addEvent(this, getNextTime(currentCpuCycles));
+    }
+
+    /***
+     * Removes the event from the queue until {@link #resume(EventQueue, long)}.
+     */
+    public void pause(EventQueue queue, long currentCpuCycles) {
+        if (queue.removeEvent(this)) {
+            paused = true;
+        }
+    }
+
+    /***
+     * Puts a paused event back to the queue at its next phase point, so the
+     * firings stay on the same grid as before the pause.
+     */
+    public void resume(EventQueue queue, long currentCpuCycles) {
+        if (paused) {
+            schedule(queue, currentCpuCycles);
+        }
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+}
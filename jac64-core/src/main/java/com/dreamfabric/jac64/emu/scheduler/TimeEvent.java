@@ -1,9 +1,12 @@
 package com.dreamfabric.jac64.emu.scheduler;
 
 public abstract class TimeEvent {
-    // For linking events...
-    TimeEvent nextEvent;
-    TimeEvent prevEvent;
+    // Position in the EventQueue heap, -1 when not queued
+    int heapIndex = -1;
+    // Order of insertion, used when two events have the same time
+    long sequence;
+    // Set by PeriodicTimeEvent, 0 for one-shot events
+    long period = 0;
     boolean scheduled = false;
 
     String name;
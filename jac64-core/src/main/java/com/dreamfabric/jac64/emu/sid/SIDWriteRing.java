@@ -0,0 +1,119 @@
+package com.dreamfabric.jac64.emu.sid;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/***
+ * The SID register writes, stamped with the cpu cycle they happened at,
+ * handed from the emulation thread (the only producer) to the thread
+ * rendering the sound (the only consumer) without locking.
+ * <p>
+ * Besides the writes the producer publishes the cycle the emulation has
+ * reached: all the writes before it are in the ring, so the consumer can
+ * render up to it.
+ */
+public class SIDWriteRing {
+
+    private final long[] cycles;
+    private final int[] writes;
+    private final int mask;
+
+    // next entry to read, only moved by the consumer
+    private final AtomicLong head = new AtomicLong();
+    // next entry to write, only moved by the producer
+    private final AtomicLong tail = new AtomicLong();
+    // last value of head seen by the producer
+    private long headCache = 0;
+    // last value of tail seen by the consumer
+    private long tailCache = 0;
+
+    private volatile long publishedCycles;
+
+    /***
+     * @param capacity
+     *            number of writes the ring holds, a power of two
+     */
+    public SIDWriteRing(int capacity) {
+        if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        cycles = new long[capacity];
+        writes = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    public int getCapacity() {
+        return cycles.length;
+    }
+
+    /***
+     * Adds a write, returns false when the ring is full.
+     */
+    public boolean offer(long cycle, int register, int value) {
+        long t = tail.get();
+        if (t - headCache == cycles.length) {
+            headCache = head.get();
+            if (t - headCache == cycles.length) {
+                return false;
+            }
+        }
+        int i = (int) t & mask;
+        cycles[i] = cycle;
+        writes[i] = register << 8 | value & 0xff;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /***
+     * Adds a write, waiting for the consumer while the ring is full.
+     */
+    public void put(long cycle, int register, int value) {
+        while (!offer(cycle, register, value)) {
+            Thread.yield();
+        }
+    }
+
+    /***
+     * Tells the consumer that the emulation has reached cpuCycles.
+     */
+    public void publishCycles(long cpuCycles) {
+        publishedCycles = cpuCycles;
+    }
+
+    public long getPublishedCycles() {
+        return publishedCycles;
+    }
+
+    public boolean isEmpty() {
+        long h = head.get();
+        if (h >= tailCache) {
+            tailCache = tail.get();
+        }
+        return h >= tailCache;
+    }
+
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    /***
+     * Returns the cycle of the oldest write, the ring must not be empty.
+     */
+    public long peekCycle() {
+        return cycles[(int) head.get() & mask];
+    }
+
+    public int peekRegister() {
+        return writes[(int) head.get() & mask] >> 8;
+    }
+
+    public int peekValue() {
+        return writes[(int) head.get() & mask] & 0xff;
+    }
+
+    /***
+     * Removes the oldest write, the ring must not be empty.
+     */
+    public void remove() {
+        head.lazySet(head.get() + 1);
+    }
+}
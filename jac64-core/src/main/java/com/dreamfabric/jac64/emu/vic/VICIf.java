@@ -19,4 +19,25 @@ public interface VICIf extends AddressableIf, SimulableIf {
     }
 
     public void clock(long currentCpuCycles);
+
+    /***
+     * Clocks the chip for every cycle from fromCpuCycles up to (and including)
+     * toCpuCycles. Used when the chip is synchronized lazily, see
+     * {@link #getNextSyncCycle(long)}.
+     */
+    default public void clock(long fromCpuCycles, long toCpuCycles) {
+        for (long cycle = fromCpuCycles; cycle <= toCpuCycles; cycle++) {
+            clock(cycle);
+        }
+    }
+
+    /***
+     * Returns the next cycle (after currentCpuCycles, which has already been
+     * clocked) at which the chip may do something the CPU can notice, like
+     * raising an IRQ or pulling BA low. Until then the chip may be clocked
+     * lazily. By default the chip wants to be clocked on every cycle.
+     */
+    default public long getNextSyncCycle(long currentCpuCycles) {
+        return currentCpuCycles + 1;
+    }
 }
\ No newline at end of file
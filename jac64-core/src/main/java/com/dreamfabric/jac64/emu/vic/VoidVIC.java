@@ -29,4 +29,15 @@ public class VoidVIC extends AddressableVoid implements VICIf {
     public void clock(long currentCpuCycles) {
         // nothing to do here
     }
+
+    @Override
+    public void clock(long fromCpuCycles, long toCpuCycles) {
+        // nothing to do here
+    }
+
+    @Override
+    public long getNextSyncCycle(long currentCpuCycles) {
+        // never disturbs the CPU
+        return Long.MAX_VALUE;
+    }
 }
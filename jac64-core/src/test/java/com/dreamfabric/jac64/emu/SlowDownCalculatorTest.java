@@ -0,0 +1,31 @@
+package com.dreamfabric.jac64.emu;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class SlowDownCalculatorTest {
+
+    private SlowDownCalculator subject;
+
+    @Before
+    public void init() {
+        // 1 cycle = 1000 ns
+        subject = new SlowDownCalculator(1000000);
+        subject.markLoopStart(5000000, 100);
+    }
+
+    @Test
+    public void testTooFast() {
+        // 1000 cycles take 1 ms, only 0.4 ms are gone
+        assertEquals(600000, subject.calculateWaitInNanos(5400000, 1100));
+        assertEquals(600000, subject.calculateAheadInNanos(5400000, 1100));
+    }
+
+    @Test
+    public void testTooSlow() {
+        assertEquals(0, subject.calculateWaitInNanos(6500000, 1100));
+        assertEquals(-500000, subject.calculateAheadInNanos(6500000, 1100));
+    }
+}
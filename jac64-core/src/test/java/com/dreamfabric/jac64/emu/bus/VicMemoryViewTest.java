@@ -0,0 +1,61 @@
+package com.dreamfabric.jac64.emu.bus;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.dreamfabric.jac64.emu.memory.CharROM;
+import com.dreamfabric.jac64.emu.memory.ColorRAM;
+import com.dreamfabric.jac64.emu.memory.RAM;
+
+public class VicMemoryViewTest {
+
+    private VicMemoryView subject;
+
+    @Before
+    public void init() {
+        RAM ram = new RAM();
+        for (int bank = 0; bank < 4; bank++) {
+            ram.write0(bank << 14 | 0x0400, 0x10 + bank);
+            ram.write0(bank << 14 | 0x1234, 0x20 + bank);
+        }
+        CharROM charRom = new CharROM();
+        charRom.load(CharROM.START_ADDRESS + 0x0234, new byte[] { 0x55 }, 0, 1);
+        ColorRAM colorRam = new ColorRAM();
+        colorRam.load(ColorRAM.START_ADDRESS + 0x3e7, new byte[] { 0x0e }, 0, 1);
+
+        subject = new VicMemoryView();
+        subject.setRAM(ram);
+        subject.setCharRom(charRom);
+        subject.setColorRAM(colorRam);
+    }
+
+    @Test
+    public void testBanks() {
+        // port A bits are inverted: 3 => bank 0 ... 0 => bank 3
+        for (int pra = 0; pra < 4; pra++) {
+            subject.setBank(0xfc | pra);
+            int bank = 3 - pra;
+            assertEquals(bank << 14, subject.getBankBaseAddress());
+            assertEquals(0x10 + bank, subject.read(0x0400));
+        }
+    }
+
+    @Test
+    public void testCharRom() {
+        subject.setBank(3); // bank 0
+        assertEquals(0x55, subject.read(0x1234));
+        subject.setBank(2); // bank 1
+        assertEquals(0x21, subject.read(0x1234));
+        subject.setBank(1); // bank 2
+        assertEquals(0x55, subject.read(0x1234));
+        subject.setBank(0); // bank 3
+        assertEquals(0x23, subject.read(0x1234));
+    }
+
+    @Test
+    public void testColorRam() {
+        assertEquals(0x0e, subject.readColor(0x3e7));
+    }
+}
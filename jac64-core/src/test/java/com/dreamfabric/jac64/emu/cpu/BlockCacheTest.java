@@ -0,0 +1,222 @@
+package com.dreamfabric.jac64.emu.cpu;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.dreamfabric.jac64.emu.bus.AddressableBus;
+import com.dreamfabric.jac64.emu.cia.CIA1;
+import com.dreamfabric.jac64.emu.cia.CIA2;
+import com.dreamfabric.jac64.emu.io.IO;
+import com.dreamfabric.jac64.emu.memory.BasicROM;
+import com.dreamfabric.jac64.emu.memory.CharROM;
+import com.dreamfabric.jac64.emu.memory.ColorRAM;
+import com.dreamfabric.jac64.emu.memory.KernalROM;
+import com.dreamfabric.jac64.emu.memory.RAM;
+import com.dreamfabric.jac64.emu.pla.PLA;
+import com.dreamfabric.jac64.emu.sid.VoidSID;
+import com.dreamfabric.jac64.emu.vic.VoidVIC;
+
+public class BlockCacheTest {
+
+    /***
+     * A 6510 on the AddressableBus and the PLA, as wired in a C64 but without
+     * the chips. Every bus cycle is traced.
+     */
+    static class BusCpu extends MOS6510Core {
+        final RAM ram = new RAM();
+        final BasicROM basicRom = new BasicROM();
+        final CIA2 cia2 = new CIA2(null);
+        final AddressableBus bus = new AddressableBus(cia2);
+        final PLA pla = new PLA();
+        final List<String> trace = new ArrayList<String>();
+
+        BusCpu() {
+            IO io = new IO();
+            io.setSid(new VoidSID());
+            io.setVic(new VoidVIC());
+            io.setCia1(new CIA1(null));
+            io.setCia2(cia2);
+            io.setColorRAM(new ColorRAM());
+            KernalROM kernalRom = new KernalROM();
+            CharROM charRom = new CharROM();
+            pla.setIO(io);
+            pla.setBasicROM(basicRom);
+            pla.setKernalROM(kernalRom);
+            pla.setCharROM(charRom);
+            pla.setAddressableBus(bus);
+            bus.setIO(io);
+            bus.setBasicRom(basicRom);
+            bus.setKernalRom(kernalRom);
+            bus.setCharRom(charRom);
+            ram.setEnabled(true);
+            bus.setRAM(ram);
+            bus.updatePageTable();
+            init();
+        }
+
+        @Override
+        public void setTranslation(boolean translation) {
+            super.setTranslation(translation);
+            bus.setWriteListener(getBlockCache());
+        }
+
+        @Override
+        protected int fetchByte(int adr) {
+            currentCpuCycles++;
+            int data = bus.read(adr, currentCpuCycles);
+            trace.add(currentCpuCycles + " r " + (adr & 0xffff) + " " + data);
+            return data;
+        }
+
+        @Override
+        protected int fetchCachedByte(int adr, int data) {
+            currentCpuCycles++;
+            bus.countCachedRead();
+            trace.add(currentCpuCycles + " r " + (adr & 0xffff) + " " + data);
+            return data;
+        }
+
+        @Override
+        protected void writeByte(int adr, int data) {
+            currentCpuCycles++;
+            trace.add(currentCpuCycles + " w " + (adr & 0xffff) + " " + data);
+            if (adr == 0x01) {
+                pla.setCharenHiramLoram(data);
+            }
+            bus.write(adr, data, currentCpuCycles);
+        }
+
+        @Override
+        protected int peekCode(int adr) {
+            return bus.peek(adr);
+        }
+
+        @Override
+        protected int getMemoryConfiguration() {
+            return bus.getConfiguration();
+        }
+
+        void load(int address, int... bytes) {
+            for (int i = 0; i < bytes.length; i++) {
+                ram.write0(address + i, bytes[i]);
+            }
+        }
+
+        void run(int pc, int instructions) {
+            setPc(pc);
+            for (int i = 0; i < instructions; i++) {
+                emulateOp();
+            }
+        }
+    }
+
+    // INC patches the LDA #imm two instructions ahead, in the same block
+    private static final int[] SELF_MODIFYING = { //
+            0xa2, 0x00, // $1000 LDX #$00
+            0xee, 0x06, 0x10, // $1002 INC $1006
+            0xa9, 0x00, // $1005 LDA #$00
+            0x9d, 0x00, 0x20, // $1007 STA $2000,X
+            0xe8, // $100a INX
+            0xe0, 0x10, // $100b CPX #$10
+            0xd0, 0xf3, // $100d BNE $1002
+            0x4c, 0x0f, 0x10 }; // $100f JMP $100f
+
+    @Test
+    public void testSelfModifyingCode() {
+        BusCpu interpreted = new BusCpu();
+        interpreted.load(0x1000, SELF_MODIFYING);
+        interpreted.run(0x1000, 120);
+
+        BusCpu translated = new BusCpu();
+        translated.setTranslation(true);
+        translated.load(0x1000, SELF_MODIFYING);
+        translated.run(0x1000, 120);
+
+        for (int i = 0; i < 0x10; i++) {
+            assertEquals(i + 1, translated.ram.read0(0x2000 + i));
+        }
+        // the same bus cycles, at the same time
+        assertEquals(interpreted.trace, translated.trace);
+        assertEquals(interpreted.bus.getReadCount(), translated.bus.getReadCount());
+        assertTrue(translated.getBlockCache().getInvalidationCount() >= 0x10);
+        assertTrue(translated.getBlockCache().getTranslationCount() > 0x10);
+    }
+
+    @Test
+    public void testMemoryConfiguration() {
+        int[] program = { //
+                0xa9, 0x37, // $1000 LDA #$37 - BASIC ROM in
+                0x85, 0x01, // $1002 STA $01
+                0x20, 0x00, 0xa0, // $1004 JSR $A000
+                0xa9, 0x36, // $1007 LDA #$36 - BASIC ROM out
+                0x85, 0x01, // $1009 STA $01
+                0x20, 0x00, 0xa0, // $100b JSR $A000
+                0x4c, 0x00, 0x10 }; // $100e JMP $1000
+        // INC $0400, RTS in the RAM and INC $0401, RTS in the ROM below
+        int[] ramCode = { 0xee, 0x00, 0x04, 0x60 };
+        byte[] romCode = { (byte) 0xee, 0x01, 0x04, 0x60 };
+
+        List<List<String>> traces = new ArrayList<List<String>>();
+        for (boolean translation : new boolean[] { false, true }) {
+            BusCpu cpu = new BusCpu();
+            cpu.setTranslation(translation);
+            cpu.load(0x1000, program);
+            cpu.load(0xa000, ramCode);
+            cpu.basicRom.load(0xa000, romCode, 0, romCode.length);
+            cpu.run(0x1000, 11 * 3);
+
+            assertEquals(3, cpu.ram.read0(0x0400));
+            assertEquals(3, cpu.ram.read0(0x0401));
+            traces.add(cpu.trace);
+        }
+        assertEquals(traces.get(0), traces.get(1));
+    }
+
+    @Test
+    public void testLoadBehindTheBus() {
+        BusCpu cpu = new BusCpu();
+        cpu.setTranslation(true);
+        // INC $2000, JMP $1000
+        cpu.load(0x1000, 0xee, 0x00, 0x20, 0x4c, 0x00, 0x10);
+        cpu.run(0x1000, 10);
+        assertEquals(5, cpu.ram.read0(0x2000));
+
+        // i.e. a program loaded from a disk image: INC $2001
+        cpu.ram.load(0x1000, new byte[] { (byte) 0xee, 0x01, 0x20 }, 0, 3);
+        cpu.run(0x1000, 10);
+        assertEquals(5, cpu.ram.read0(0x2000));
+        assertEquals(5, cpu.ram.read0(0x2001));
+    }
+
+    @Test
+    public void testLoadDropsOnlyItsPages() {
+        BusCpu cpu = new BusCpu();
+        cpu.setTranslation(true);
+        // INC $2000, JMP $1000 and INC $2001, JMP $3000
+        cpu.load(0x1000, 0xee, 0x00, 0x20, 0x4c, 0x00, 0x10);
+        cpu.load(0x3000, 0xee, 0x01, 0x20, 0x4c, 0x00, 0x30);
+        cpu.run(0x1000, 2);
+        cpu.run(0x3000, 2);
+        BlockCache cache = cpu.getBlockCache();
+        assertEquals(2, cache.getBlockCount());
+
+        // poked behind the bus, byte by byte as i.e. a driver is installed
+        cpu.ram.write0(0x10ff, 0xea);
+        cpu.ram.write0(0x1100, 0xea);
+        cpu.run(0x3000, 2);
+        assertEquals(1, cache.getBlockCount());
+        assertEquals(1, cache.getInvalidationCount());
+
+        // the block at $1000 is translated again and sees the new code: INC
+        // $2002
+        cpu.ram.write0(0x1001, 0x02);
+        cpu.run(0x1000, 2);
+        assertEquals(1, cpu.ram.read0(0x2002));
+        assertEquals(2, cache.getBlockCount());
+    }
+}
@@ -0,0 +1,186 @@
+package com.dreamfabric.jac64.emu.cpu;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import org.junit.Test;
+
+/***
+ * Runs every opcode once from a few fixed states and compares the cycles,
+ * the registers and flags and all the bus accesses (in order, with the
+ * written values) to the values recorded from the interpreter which decoded
+ * the instructions through MOS6510Ops.INSTRUCTION_SET.
+ */
+public class MOS6510CoreTest {
+
+    private static final String RECORDED = "opcodes.txt";
+
+    // a, x, y, s, p - the decimal flag is set in half of them
+    private static final int[][] STATES = { { 0x00, 0x00, 0x00, 0xff, 0x20 }, { 0x80, 0x7f, 0x01, 0x10, 0xe3 },
+            { 0x99, 0x45, 0xfe, 0x80, 0x29 }, { 0x3c, 0xff, 0x80, 0x01, 0xff }, { 0x49, 0x02, 0x10, 0xfe, 0x08 },
+            { 0x0f, 0x80, 0xff, 0x00, 0x6d }, { 0xff, 0x33, 0x7e, 0x40, 0xc2 }, { 0x58, 0xc1, 0x00, 0x7f, 0x69 } };
+
+    // where the opcode is put, some make the operands cross a page
+    private static final int[] OPCODE_ADDRESSES = { 0x1000, 0x20f0, 0x30fe, 0xc0ff, 0x0400, 0x81fe, 0xe0ff, 0x5a80 };
+
+    // the memory the opcodes run in, one random image per state
+    private static final int[][] MEMORY = new int[STATES.length][];
+
+    static {
+        for (int state = 0; state < STATES.length; state++) {
+            byte[] random = new byte[0x10000];
+            new Random(state).nextBytes(random);
+            MEMORY[state] = new int[random.length];
+            for (int i = 0; i < random.length; i++) {
+                MEMORY[state][i] = random[i] & 0xff;
+            }
+        }
+    }
+
+    /***
+     * A 6510 on a flat 64k memory, adding every bus access to a checksum.
+     */
+    static class TestCpu extends MOS6510Core {
+        final int[] memory;
+        final CRC32 accesses = new CRC32();
+
+        TestCpu(int[] memory) {
+            this.memory = memory;
+        }
+
+        @Override
+        protected int fetchByte(int adr) {
+            currentCpuCycles++;
+            adr &= 0xffff;
+            record(0, adr, memory[adr]);
+            return memory[adr];
+        }
+
+        @Override
+        protected void writeByte(int adr, int data) {
+            currentCpuCycles++;
+            adr &= 0xffff;
+            record(1, adr, data);
+            memory[adr] = data & 0xff;
+            if (getBlockCache() != null) {
+                getBlockCache().written(adr);
+            }
+        }
+
+        @Override
+        protected int fetchCachedByte(int adr, int data) {
+            currentCpuCycles++;
+            record(0, adr & 0xffff, data);
+            return data;
+        }
+
+        @Override
+        protected int peekCode(int adr) {
+            return memory[adr & 0xffff];
+        }
+
+        private void record(int write, int adr, int data) {
+            accesses.update(write);
+            accesses.update(adr >> 8);
+            accesses.update(adr);
+            accesses.update(data >> 8);
+            accesses.update(data);
+        }
+
+        long getState() {
+            return getRegisterState();
+        }
+    }
+
+    /***
+     * Runs opcode from the state, returns the line recorded for it: opcode,
+     * state, cycles, registers (see MOS6510Core.getRegisterState()) and the
+     * checksum of the bus accesses.
+     */
+    static String run(int opcode, int state) {
+        return run(opcode, state, false);
+    }
+
+    private static String run(int opcode, int state, boolean translation) {
+        TestCpu cpu = new TestCpu(MEMORY[state].clone());
+        cpu.init();
+        cpu.setTranslation(translation);
+
+        int[] registers = STATES[state];
+        int address = OPCODE_ADDRESSES[state] - 10;
+        cpu.setPc(address);
+        // LDX #s-1, TXS, LDA #a, LDX #x, LDY #y, PLP
+        int[] setup = { M6510Ops.LDX_I, (registers[3] - 1) & 0xff, M6510Ops.TXS, M6510Ops.LDA_I, registers[0],
+                M6510Ops.LDX_I, registers[1], M6510Ops.LDY_I, registers[2], M6510Ops.PLP };
+        for (int i = 0; i < setup.length; i++) {
+            cpu.memory[address + i] = setup[i];
+        }
+        cpu.memory[0x100 | registers[3]] = registers[4];
+        cpu.memory[OPCODE_ADDRESSES[state]] = opcode;
+        for (int i = 0; i < 6; i++) {
+            cpu.emulateOp();
+        }
+
+        cpu.accesses.reset();
+        long cycles = cpu.getCycles();
+        cpu.emulateOp();
+        return String.format("%02x %d %d %014x %08x", opcode, state, cpu.getCycles() - cycles, cpu.getState(),
+                cpu.accesses.getValue());
+    }
+
+    @Test
+    public void testSetup() {
+        // the NOP leaves the state set up untouched
+        assertEquals(String.format("%02x 1 2 %04x%02x%02x%02x%02x%02x", M6510Ops.NOP, 0x20f1, 0xe3, 0x10, 0x01, 0x7f,
+                0x80), run(M6510Ops.NOP, 1).substring(0, 21));
+    }
+
+    @Test
+    public void testAllOpcodes() throws IOException {
+        List<String> recorded = readRecorded();
+        assertEquals(256 * STATES.length, recorded.size());
+        int i = 0;
+        for (int opcode = 0; opcode < 256; opcode++) {
+            for (int state = 0; state < STATES.length; state++) {
+                assertEquals(MOS6510Ops.toString(opcode), recorded.get(i++), run(opcode, state));
+            }
+        }
+    }
+
+    @Test
+    public void testAllOpcodesTranslated() throws IOException {
+        // the set up and the opcode run from one block
+        List<String> recorded = readRecorded();
+        int i = 0;
+        for (int opcode = 0; opcode < 256; opcode++) {
+            for (int state = 0; state < STATES.length; state++) {
+                assertEquals(MOS6510Ops.toString(opcode), recorded.get(i++), run(opcode, state, true));
+            }
+        }
+    }
+
+    private List<String> readRecorded() throws IOException {
+        InputStream in = getClass().getResourceAsStream(RECORDED);
+        assertNotNull(in);
+        List<String> lines = new ArrayList<String>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    lines.add(line);
+                }
+            }
+        }
+        return lines;
+    }
+}
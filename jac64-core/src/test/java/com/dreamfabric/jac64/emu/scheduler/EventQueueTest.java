@@ -0,0 +1,219 @@
+package com.dreamfabric.jac64.emu.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class EventQueueTest {
+
+    private EventQueue subject;
+
+    @Before
+    public void init() {
+        subject = new EventQueue();
+    }
+
+    @Test
+    public void testEmpty() {
+        assertEquals(0, subject.nextTime);
+        assertNull(subject.popFirst());
+    }
+
+    @Test
+    public void testPopInTimeOrder() {
+        TimeEvent a = new TestEvent("a");
+        TimeEvent b = new TestEvent("b");
+        TimeEvent c = new TestEvent("c");
+        subject.addEvent(b, 20);
+        subject.addEvent(c, 30);
+        subject.addEvent(a, 10);
+
+        assertEquals(10, subject.nextTime);
+        assertSame(a, subject.popFirst());
+        assertEquals(20, subject.nextTime);
+        assertSame(b, subject.popFirst());
+        assertSame(c, subject.popFirst());
+        assertEquals(0, subject.nextTime);
+        assertFalse(c.isScheduled());
+    }
+
+    @Test
+    public void testSameTimeLastAddedFirst() {
+        TimeEvent a = new TestEvent("a");
+        TimeEvent b = new TestEvent("b");
+        subject.addEvent(a, 10);
+        subject.addEvent(b, 10);
+
+        assertSame(b, subject.popFirst());
+        assertSame(a, subject.popFirst());
+    }
+
+    @Test
+    public void testReschedule() {
+        TimeEvent a = new TestEvent("a");
+        TimeEvent b = new TestEvent("b");
+        subject.addEvent(a, 10);
+        subject.addEvent(b, 20);
+        subject.addEvent(a, 30);
+
+        assertEquals(20, subject.nextTime);
+        assertSame(b, subject.popFirst());
+        assertSame(a, subject.popFirst());
+        assertNull(subject.popFirst());
+    }
+
+    @Test
+    public void testRemove() {
+        TimeEvent a = new TestEvent("a");
+        TimeEvent b = new TestEvent("b");
+        subject.addEvent(a, 10);
+        subject.addEvent(b, 20);
+
+        assertTrue(subject.removeEvent(a));
+        assertFalse(a.isScheduled());
+        assertFalse(subject.removeEvent(a));
+        assertEquals(20, subject.nextTime);
+        assertSame(b, subject.popFirst());
+    }
+
+    @Test
+    public void testAgainstSortedList() {
+        // the same operations on a plain sorted list, the way the queue used
+        // to work
+        Random random = new Random(64);
+        TimeEvent events[] = new TimeEvent[40];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = new TestEvent("e" + i);
+        }
+        List<TimeEvent> expected = new ArrayList<TimeEvent>();
+
+        for (int i = 0; i < 20000; i++) {
+            TimeEvent event = events[random.nextInt(events.length)];
+            int op = random.nextInt(3);
+            if (op == 0) {
+                long time = random.nextInt(50);
+                expected.remove(event);
+                event.setTime(time);
+                int pos = 0;
+                while (pos < expected.size() && expected.get(pos).getTime() < time) {
+                    pos++;
+                }
+                expected.add(pos, event);
+                subject.addEvent(event, time);
+            } else if (op == 1) {
+                assertEquals(expected.remove(event), subject.removeEvent(event));
+            } else {
+                TimeEvent first = expected.isEmpty() ? null : expected.remove(0);
+                assertSame(first, subject.popFirst());
+            }
+            assertEquals(expected.isEmpty() ? 0 : expected.get(0).getTime(), subject.nextTime);
+        }
+    }
+
+    @Test
+    public void testPeriodicStaysQueued() {
+        PeriodicTimeEvent p = new TestPeriodicEvent(22, 0);
+        TimeEvent a = new TestEvent("a");
+        subject.addEvent(p, 22);
+        subject.addEvent(a, 50);
+
+        assertSame(p, subject.popFirst());
+        assertTrue(p.isScheduled());
+        assertEquals(44, subject.nextTime);
+        assertSame(p, subject.popFirst());
+        assertSame(a, subject.popFirst());
+        assertSame(p, subject.popFirst());
+        assertEquals(88, subject.nextTime);
+    }
+
+    @Test
+    public void testPeriodicPauseResume() {
+        PeriodicTimeEvent p = new TestPeriodicEvent(100, 30);
+        p.schedule(subject, 0);
+        assertEquals(30, subject.nextTime);
+
+        p.pause(subject, 70);
+        assertTrue(p.isPaused());
+        assertFalse(p.isScheduled());
+        assertNull(subject.popFirst());
+
+        // back on the grid of the phase
+        p.resume(subject, 1000);
+        assertFalse(p.isPaused());
+        assertEquals(1030, subject.nextTime);
+        assertSame(p, subject.popFirst());
+        assertEquals(1130, subject.nextTime);
+    }
+
+    @Test
+    public void testPeriodicSchedule() {
+        PeriodicTimeEvent p = new TestPeriodicEvent(10, 3);
+        p.schedule(subject, 5);
+        assertEquals(13, subject.nextTime);
+        assertSame(p, subject.popFirst());
+        assertEquals(23, subject.nextTime);
+
+        // the phase point itself is not after currentCpuCycles
+        p.schedule(subject, 23);
+        assertEquals(33, subject.nextTime);
+    }
+
+    @Test
+    public void testPeriodicSetPhase() {
+        PeriodicTimeEvent p = new TestPeriodicEvent(10, 3);
+        TimeEvent a = new TestEvent("a");
+        p.schedule(subject, 0);
+        subject.addEvent(a, 5);
+
+        p.setPhase(subject, 7, 1);
+        assertEquals(7, p.getPhase());
+        assertSame(a, subject.popFirst());
+        assertSame(p, subject.popFirst());
+        assertEquals(17, subject.nextTime);
+
+        // not queued: only used when scheduled
+        p.pause(subject, 8);
+        p.setPhase(subject, 1, 8);
+        assertFalse(p.isScheduled());
+        p.resume(subject, 8);
+        assertEquals(11, subject.nextTime);
+    }
+
+    @Test
+    public void testPeriodicNextTime() {
+        PeriodicTimeEvent p = new TestPeriodicEvent(10, 3);
+
+        assertEquals(3, p.getNextTime(0));
+        assertEquals(13, p.getNextTime(3));
+        assertEquals(13, p.getNextTime(12));
+    }
+
+    private static class TestPeriodicEvent extends PeriodicTimeEvent {
+        public TestPeriodicEvent(long period, long phase) {
+            super(period, phase, "p");
+        }
+
+        @Override
+        public void execute(long currentCpuCycles) {
+        }
+    }
+
+    private static class TestEvent extends TimeEvent {
+        public TestEvent(String name) {
+            super(0, name);
+        }
+
+        @Override
+        public void execute(long currentCpuCycles) {
+        }
+    }
+}
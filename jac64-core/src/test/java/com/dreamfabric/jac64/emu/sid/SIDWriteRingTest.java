@@ -0,0 +1,86 @@
+package com.dreamfabric.jac64.emu.sid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class SIDWriteRingTest {
+
+    private SIDWriteRing subject;
+
+    @Before
+    public void init() {
+        subject = new SIDWriteRing(4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCapacityPowerOfTwo() {
+        new SIDWriteRing(6);
+    }
+
+    @Test
+    public void testInOrder() {
+        assertTrue(subject.isEmpty());
+        subject.put(10, 0x04, 0x21);
+        subject.put(20, 0x18, 0x10f);
+
+        assertFalse(subject.isEmpty());
+        assertEquals(10, subject.peekCycle());
+        assertEquals(0x04, subject.peekRegister());
+        assertEquals(0x21, subject.peekValue());
+        subject.remove();
+        assertEquals(20, subject.peekCycle());
+        assertEquals(0x18, subject.peekRegister());
+        assertEquals(0x0f, subject.peekValue());
+        subject.remove();
+        assertTrue(subject.isEmpty());
+    }
+
+    @Test
+    public void testFull() {
+        for (int i = 0; i < 4; i++) {
+            assertTrue(subject.offer(i, i, i));
+        }
+        assertFalse(subject.offer(4, 4, 4));
+        assertEquals(4, subject.size());
+
+        subject.remove();
+        assertTrue(subject.offer(4, 4, 4));
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(i, subject.peekCycle());
+            subject.remove();
+        }
+        assertTrue(subject.isEmpty());
+    }
+
+    @Test
+    public void testOtherThread() throws InterruptedException {
+        final int count = 100000;
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < count; i++) {
+                subject.put(i, i & 0x1f, i & 0xff);
+            }
+            subject.publishCycles(count);
+        });
+        producer.start();
+
+        int next = 0;
+        while (next < count) {
+            if (subject.isEmpty()) {
+                Thread.yield();
+                continue;
+            }
+            assertEquals(next, subject.peekCycle());
+            assertEquals(next & 0x1f, subject.peekRegister());
+            assertEquals(next & 0xff, subject.peekValue());
+            subject.remove();
+            next++;
+        }
+        producer.join();
+        assertEquals(count, subject.getPublishedCycles());
+        assertTrue(subject.isEmpty());
+    }
+}
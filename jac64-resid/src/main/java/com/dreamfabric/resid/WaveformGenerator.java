@@ -285,8 +285,10 @@ public class WaveformGenerator implements IWave6581, IWave8580 {
      * SID clocking - 1 cycle.
      */
     public void clock() {
-        // No operation if test bit is set.
+        // No operation if test bit is set. The accumulator is held at zero, so
+        // the MSB can't rise and sync the next oscillator.
         if (test != 0) {
+            msb_rising = false;
             return;
         }
 
@@ -313,8 +315,10 @@ public class WaveformGenerator implements IWave6581, IWave8580 {
      * SID clocking - delta_t cycles.
      */
     public void clock(int/* cycle_count */ delta_t) {
-        // No operation if test bit is set.
+        // No operation if test bit is set. The accumulator is held at zero, so
+        // the MSB can't rise and sync the next oscillator.
         if (test != 0) {
+            msb_rising = false;
             return;
         }
 
@@ -409,18 +409,41 @@ public class JaC64 implements ActionListener, KeyEventDispatcher {
 
     public static void main(String[] args) {
         String autostart = null;
+        boolean translation = false;
+        boolean threadedSid = false;
+        boolean lineRendering = false;
+        int frameSkip = 0;
 
         for (int i = 0; i < args.length; i++) {
             if (args[i].equals("-a")) {
                 i++;
                 autostart = args[i];
+            } else if (args[i].equals("-t")) {
+                translation = true;
+            } else if (args[i].equals("-s")) {
+                threadedSid = true;
+            } else if (args[i].equals("-l")) {
+                lineRendering = true;
+            } else if (args[i].equals("-f")) {
+                i++;
+                frameSkip = Integer.parseInt(args[i]);
             } else {
-                System.out.println("Usage: java [-cp <classpath>] JaC64 [-a <autostart(.d64|.t64|.prg|.p00)>]");
+                System.out.println("Usage: java [-cp <classpath>] JaC64 [-a <autostart(.d64|.t64|.prg|.p00)>] [-t] [-s] [-l] [-f <n>]");
+                System.out.println("  -t  run the 6510 from translated blocks of code");
+                System.out.println("  -s  generate the sound on a thread of its own");
+                System.out.println("  -l  paint the screen a raster line at a time");
+                System.out.println("  -f  paint only every n+1:th frame");
                 System.exit(1);
             }
         }
 
         JaC64 emu = new JaC64();
+        emu.emulationContext.getCpu().setTranslation(translation);
+        emu.scr.setLineRendering(lineRendering);
+        emu.scr.setFrameSkip(frameSkip);
+        if (threadedSid && emu.getSid() instanceof RESID) {
+            ((RESID) emu.getSid()).setThreaded(true);
+        }
         if (autostart != null) {
             emu.autoStart(autostart);
         }
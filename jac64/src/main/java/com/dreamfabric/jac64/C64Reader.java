@@ -46,6 +46,7 @@ public class C64Reader {
     private Hashtable dirEntries = new Hashtable();
 
     private int type = 0;
+    private PSIDTune sidTune;
     private int diskSize = 0; // Size in sectors
 
     // This is typically a DISK but can also hold a tape!
@@ -364,12 +365,10 @@ public class C64Reader {
         int nextTrak = sec[0] & 0xff;
 
         try {
-            for (int i = 0; i < 252; i++) {
-                if (out != null) {
-                    out.write(sec[i + 4] & 0xff);
-                } else {
-                    setMemory(i + address, sec[i + 4] & 0xff);
-                }
+            if (out != null) {
+                out.write(sec, 4, 252);
+            } else {
+                ram.load(address, sec, 4, 252);
             }
         } catch (Exception e) {
             System.out.println("Could not write to output stream");
@@ -387,12 +386,10 @@ public class C64Reader {
             reading = nextTrak != 0;
 
             try {
-                for (int i = 0; i < 254; i++) {
-                    if (out != null)
-                        out.write(sec[i + 2] & 0xff);
-                    else
-                        setMemory(i + address, sec[i + 2] & 0xff);
-                }
+                if (out != null)
+                    out.write(sec, 2, 254);
+                else
+                    ram.load(address, sec, 2, 254);
             } catch (Exception e) {
                 System.out.println("Could not write to output stream");
                 e.printStackTrace();
@@ -427,11 +424,13 @@ public class C64Reader {
         if ((startAdr >> 8) < 16)
             sb.append('0');
         sb.append(Integer.toString(startAdr >> 8));
-        for (int i = startAdr; i < lastAdr; i++) {
-            int m = getMemory(i);
+        byte[] data = new byte[Math.max(lastAdr - startAdr, 0)];
+        ram.dump(startAdr, data, 0, data.length);
+        for (int i = 0; i < data.length; i++) {
+            int m = data[i] & 0xff;
             if (m < 16)
                 sb.append('0');
-            sb.append(Integer.toString(getMemory(i), 16));
+            sb.append(Integer.toString(m, 16));
         }
 
         return sb.toString();
@@ -460,9 +459,8 @@ public class C64Reader {
         System.out.println("Storing at: " + address);
         System.out.println("Size: " + dire.size);
 
-        for (int i = 0; i < dire.size; i++) {
-            setMemory(address++, sectors[(i + offset) >> 8][(i + offset) & 0xff] & 0xff);
-        }
+        loadSectors(address, offset, dire.size);
+        address += dire.size;
         setAddress(address);
         return dire.name;
     }
@@ -486,8 +484,8 @@ public class C64Reader {
                 address = (start[0] + (start[1] * 256));
 
             System.out.println("Storing at: " + address);
-            for (int i = 0; i < noBytes; i++)
-                setMemory(address++, sectors[(i) >> 8][i & 0xff] & 0xff);
+            loadSectors(address, 0, noBytes);
+            address += noBytes;
 
             // Fixa set address and then it is finished???
             setAddress(address);
@@ -567,57 +565,27 @@ public class C64Reader {
 
     // Should return a SID object ...
     private boolean readSID(InputStream stream) {
-        byte[] start = new byte[0x16];
         try {
-            DataInputStream reader = new DataInputStream(stream);
-            reader.readFully(start);
-
-            String st = new String(start);
-
-            if (st.startsWith("PSID")) {
-                int version = start[4] * 256 + start[5];
-                // int offset = start[6]*256 + start[7];
-                int addr = start[8] * 256 + start[9];
-                int iaddr = start[10] * 256 + start[11];
-                int paddr = start[12] * 256 + start[13];
-                int songs = start[14] * 256 + start[15];
-                int startsong = start[16] * 256 + start[17];
-                long speed = (start[18] << 24) + (start[19] << 16) + (start[20] << 8) + start[21];
-
-                System.out.println("FOUND SID TUNE!");
-                System.out.println("Version: " + version);
-                System.out.println("LAddr: " + addr);
-                System.out.println("IAddr: " + iaddr);
-                System.out.println("PAddr: " + paddr);
-                System.out.println("Songs: " + songs);
-                System.out.println("StartSong: " + startsong);
-                System.out.println("Speed: " + speed);
-
-                byte[] str = new byte[0x20];
-                for (int i = 0; i < songs; i++) {
-                    reader.readFully(str);
-                    System.out.println("Song " + (i + 1));
-                    System.out.println("Name      :" + new String(str));
-                    reader.readFully(str);
-                    System.out.println("Author    :" + new String(str));
-                    reader.readFully(str);
-                    System.out.println("Copyright :" + new String(str));
-                }
-                if (version == 2) {
-                    byte[] garbage = new byte[6];
-                    reader.readFully(garbage);
-                }
-
-                byte[] adr = new byte[2];
-                reader.readFully(adr);
-                // int startAddress = adr[1]*256 + adr[0];
+            sidTune = PSIDTune.read(stream);
+            System.out.println("FOUND SID TUNE!");
+            System.out.println(sidTune);
+            if (ram != null) {
+                sidTune.loadInto(ram);
             }
+            return true;
         } catch (Exception e) {
-            System.out.println("Error while reading SID");
+            System.out.println("Error while reading SID: " + e.getMessage());
         }
         return false;
     }
 
+    /**
+     * Returns the tune last read by {@link #readSIDFromFile(String)}.
+     */
+    public PSIDTune getSIDTune() {
+        return sidTune;
+    }
+
     private int readSector(DataInputStream reader, int sector) {
         // Read this sector...
         int no, numRead = 0;
@@ -737,6 +705,19 @@ public class C64Reader {
         }
     }
 
+    // copies length bytes of the sectors, starting at offset, into the RAM
+    private void loadSectors(int address, int offset, int length) {
+        while (length > 0) {
+            int inSector = offset & 0xff;
+            int chunk = Math.min(256 - inSector, length);
+            ram.load(address, sectors[offset >> 8], inSector, chunk);
+
+            address += chunk;
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
     private int getMemory(int address) {
         return ram.read0(address);
     }
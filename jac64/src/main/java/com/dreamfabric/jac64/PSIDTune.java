@@ -0,0 +1,239 @@
+/**
+ * This file is a part of JaC64 - a Java C64 Emulator
+ * Main Developer: Joakim Eriksson (Dreamfabric.com)
+ * Contact: joakime@sics.se
+ * Web: http://www.dreamfabric.com/c64
+ * ---------------------------------------------------
+ */
+
+package com.dreamfabric.jac64;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import com.dreamfabric.jac64.emu.memory.RAM;
+
+/**
+ * A PSID (or RSID) tune: the header and the data loaded into the memory.
+ * All the header values are big endian.
+ */
+public class PSIDTune {
+
+    public static final int FLAG_CLOCK_PAL = 0x04;
+    public static final int FLAG_CLOCK_NTSC = 0x08;
+    public static final int FLAG_MODEL_8580 = 0x20;
+
+    private static final int HEADER_V1_SIZE = 0x76;
+
+    private String magic;
+    private int version;
+    private int loadAddress;
+    private int initAddress;
+    private int playAddress;
+    private int songs;
+    private int startSong;
+    private long speed;
+    private String name;
+    private String author;
+    private String released;
+    private int flags;
+    private int startPage;
+    private int pageLength;
+    private byte[] data;
+
+    /**
+     * Reads the tune, throws an IOException if it is not a PSID or RSID
+     * file.
+     */
+    public static PSIDTune read(InputStream stream) throws IOException {
+        DataInputStream reader = new DataInputStream(stream);
+        byte[] header = new byte[HEADER_V1_SIZE];
+        reader.readFully(header);
+
+        PSIDTune tune = new PSIDTune();
+        tune.magic = new String(header, 0, 4, StandardCharsets.US_ASCII);
+        if (!tune.magic.equals("PSID") && !tune.magic.equals("RSID")) {
+            throw new IOException("Not a SID tune: " + tune.magic);
+        }
+        tune.version = word(header, 4);
+        int dataOffset = word(header, 6);
+        tune.loadAddress = word(header, 8);
+        tune.initAddress = word(header, 10);
+        tune.playAddress = word(header, 12);
+        tune.songs = word(header, 14);
+        tune.startSong = word(header, 16);
+        tune.speed = ((long) word(header, 18) << 16) | word(header, 20);
+        tune.name = string(header, 0x16);
+        tune.author = string(header, 0x36);
+        tune.released = string(header, 0x56);
+
+        int skip = dataOffset - HEADER_V1_SIZE;
+        if (skip < 0) {
+            throw new IOException("Data offset in the header: " + dataOffset);
+        }
+        if (tune.version >= 2 && skip >= 6) {
+            byte[] header2 = new byte[6];
+            reader.readFully(header2);
+            tune.flags = word(header2, 0);
+            tune.startPage = header2[2] & 0xff;
+            tune.pageLength = header2[3] & 0xff;
+            skip -= 6;
+        }
+        if (reader.skipBytes(skip) != skip) {
+            throw new IOException("No data at offset " + dataOffset);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = reader.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+        byte[] data = out.toByteArray();
+        if (tune.loadAddress == 0) {
+            // the load address is the first two bytes of the data, as in a
+            // PRG file
+            if (data.length < 2) {
+                throw new IOException("No load address");
+            }
+            tune.loadAddress = (data[0] & 0xff) | (data[1] & 0xff) << 8;
+            tune.data = new byte[data.length - 2];
+            System.arraycopy(data, 2, tune.data, 0, tune.data.length);
+        } else {
+            tune.data = data;
+        }
+        if (tune.initAddress == 0) {
+            tune.initAddress = tune.loadAddress;
+        }
+        if (tune.songs == 0) {
+            tune.songs = 1;
+        }
+        if (tune.startSong == 0 || tune.startSong > tune.songs) {
+            tune.startSong = 1;
+        }
+        return tune;
+    }
+
+    private static int word(byte[] b, int offset) {
+        return (b[offset] & 0xff) << 8 | (b[offset + 1] & 0xff);
+    }
+
+    private static String string(byte[] b, int offset) {
+        int end = offset;
+        while (end < offset + 0x20 && b[end] != 0) {
+            end++;
+        }
+        return new String(b, offset, end - offset, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Copies the data into the RAM at the load address, whatever is mapped
+     * in.
+     */
+    public void loadInto(RAM ram) {
+        int length = Math.min(data.length, 0x10000 - loadAddress);
+        ram.load(loadAddress, data, 0, length);
+    }
+
+    /**
+     * Returns true when the play routine of the song (1 - songs) is called
+     * on the CIA 1 timer A underflows, false when it is called once per
+     * frame.
+     */
+    public boolean isCIASpeed(int song) {
+        int bit = Math.min(song, 32) - 1;
+        return (speed >> bit & 1) != 0;
+    }
+
+    /**
+     * Returns true when the tune is made for NTSC machines only, tunes for
+     * both (or unknown) play on PAL.
+     */
+    public boolean isNTSC() {
+        return (flags & (FLAG_CLOCK_PAL | FLAG_CLOCK_NTSC)) == FLAG_CLOCK_NTSC;
+    }
+
+    /**
+     * RSID tunes need a real C64 environment, they install their own
+     * interrupts and have no play address.
+     */
+    public boolean isRSID() {
+        return magic.equals("RSID");
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public int getLoadAddress() {
+        return loadAddress;
+    }
+
+    /**
+     * Returns the address after the last byte of the data.
+     */
+    public int getEndAddress() {
+        return Math.min(loadAddress + data.length, 0x10000);
+    }
+
+    public int getInitAddress() {
+        return initAddress;
+    }
+
+    /**
+     * Returns 0 when the tune installs its own interrupt handler.
+     */
+    public int getPlayAddress() {
+        return playAddress;
+    }
+
+    public int getSongs() {
+        return songs;
+    }
+
+    public int getStartSong() {
+        return startSong;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public String getReleased() {
+        return released;
+    }
+
+    public int getFlags() {
+        return flags;
+    }
+
+    /**
+     * Returns the first page free for a driver, 0 when not known and $FF
+     * when there is none.
+     */
+    public int getStartPage() {
+        return startPage;
+    }
+
+    public int getPageLength() {
+        return pageLength;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    @Override
+    public String toString() {
+        return magic + " v" + version + " \"" + name + "\" by " + author + " (" + released + ") load: "
+                + Hex.hex2(loadAddress) + " init: " + Hex.hex2(initAddress) + " play: " + Hex.hex2(playAddress)
+                + " songs: " + songs + " start: " + startSong;
+    }
+}
@@ -16,6 +16,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.dreamfabric.jac64.emu.cpu.C64Cpu;
+import com.dreamfabric.jac64.emu.sid.AudioClockPacer;
+import com.dreamfabric.jac64.emu.sid.AudioDriverRing;
+import com.dreamfabric.jac64.emu.sid.RESID;
+import com.dreamfabric.jac64.emu.sid.SIDIf;
 
 /**
  * CPU "implements" the C64s 6510 processor in java code. reimplemented from old
@@ -27,10 +31,14 @@ import com.dreamfabric.jac64.emu.cpu.C64Cpu;
 public class Emulation {
     private static Logger LOGGER = LoggerFactory.getLogger(Emulation.class);
 
+    // sound queued before it is played when paced by the sound card
+    private static final int AUDIO_LATENCY_MILLIS = 100;
+
     // The state of the program (runs if running = true)
     public boolean running = true;
     public boolean pause = false;
     EmulationContext emulationContext;
+    private EmulationPacer pacer;
 
     public Emulation(EmulationContext emulationContext) {
         this.emulationContext = emulationContext;
@@ -60,6 +68,9 @@ public class Emulation {
         running = false;
         pause = false;
         emulationContext.getSid().stop();
+        if (pacer != null) {
+            pacer.stop();
+        }
         notify();
     }
 
@@ -90,6 +101,10 @@ public class Emulation {
         getCpu().setPc(address);
 
         emulationContext.getSid().start(getCpu().getCycles());
+        if (pacer == null) {
+            pacer = createPacer(emulationContext.getSid());
+        }
+        pacer.start(emulationContext.getControlBus(), getCpu().getCycles());
 
         loop();
     }
@@ -105,6 +120,29 @@ public class Emulation {
         }
     }
 
+    /***
+     * Paces with the wall clock, also holding the sound latency when the SID
+     * plays through an {@link AudioDriverRing}.
+     */
+    private EmulationPacer createPacer(SIDIf sid) {
+        if (sid instanceof RESID && ((RESID) sid).getAudioDriver() instanceof AudioDriverRing) {
+            return new AudioClockPacer(EmulationContext.CPUFrq, (RESID) sid,
+                    (AudioDriverRing) ((RESID) sid).getAudioDriver(), AUDIO_LATENCY_MILLIS);
+        }
+        return new WallClockPacer(EmulationContext.CPUFrq);
+    }
+
+    public EmulationPacer getPacer() {
+        return pacer;
+    }
+
+    /***
+     * Replaces the pacer, before the emulation is started.
+     */
+    public void setPacer(EmulationPacer pacer) {
+        this.pacer = pacer;
+    }
+
     public C64Cpu getCpu() {
         return emulationContext.getCpu();
     }
@@ -26,8 +26,11 @@ import com.dreamfabric.jac64.emu.memory.RAM;
 import com.dreamfabric.jac64.emu.memory.ROM;
 import com.dreamfabric.jac64.emu.pla.PLA;
 import com.dreamfabric.jac64.emu.scheduler.EventQueue;
+import com.dreamfabric.jac64.emu.sid.AudioDriver;
+import com.dreamfabric.jac64.emu.sid.AudioDriverRing;
 import com.dreamfabric.jac64.emu.sid.RESID;
 import com.dreamfabric.jac64.emu.sid.SIDIf;
+import com.dreamfabric.jac64.emu.sid.VoidSID;
 import com.dreamfabric.jac64.emu.vic.C64Screen;
 
 public class EmulationContext {
@@ -46,7 +49,7 @@ public class EmulationContext {
     private ControlBus controlBus = new ControlBus(pla, interruptManager, cpu, scheduler, vic);
 
     private IO io = new IO();
-    private SIDIf sid = new RESID(controlBus);
+    private SIDIf sid;
     private CIA1 cia1 = new CIA1(controlBus);
     private CIA2 cia2 = new CIA2(controlBus);
 
@@ -59,10 +62,24 @@ public class EmulationContext {
     private ColorRAM colorRAM = new ColorRAM();
 
     public EmulationContext() {
+        this(true, new AudioDriverRing());
+    }
+
+    /***
+     * @param display
+     *            false to run the VIC without a canvas (and without AWT), the
+     *            frames can be taken with a FrameSink
+     * @param audioDriver
+     *            driver the RESID writes its samples to (i.e. a
+     *            WavAudioDriver), null for a silent {@link VoidSID} which
+     *            opens no sound line
+     */
+    public EmulationContext(boolean display, AudioDriver audioDriver) {
+        sid = audioDriver != null ? new RESID(controlBus, audioDriver) : new VoidSID();
         controlBus.setCIA1(cia1);
 
         // prepare IO
-        vic.init(controlBus); // FIXME: vic should not use cia1 directly
+        vic.init(controlBus, display); // FIXME: vic should not use cia1 directly
         vic.setAddressableBus(addressableBus);
         io.setSid(sid);
         io.setVic(vic);
@@ -75,6 +92,7 @@ public class EmulationContext {
         pla.setBasicROM(basicROM);
         pla.setKernalROM(kernalROM);
         pla.setCharROM(charROM);
+        pla.setAddressableBus(addressableBus);
 
         // prepare AddressableBus
         addressableBus.setIO(io);
@@ -83,6 +101,7 @@ public class EmulationContext {
         addressableBus.setCharRom(charROM);
         ram.setEnabled(true);
         addressableBus.setRAM(ram);
+        addressableBus.updatePageTable();
 
         // prepare CPU
         cpu.init();
@@ -143,7 +162,7 @@ public class EmulationContext {
         loadROM("/roms/chargen.c64", charROM, 0x1000);
     }
 
-    private void loadROM(String resource, ROM rom, int len) {
+    static void loadROM(String resource, ROM rom, int len) {
         try {
             SELoader loader = new SELoader();
             InputStream ins = loader.getResourceStream(resource);
@@ -159,14 +178,7 @@ public class EmulationContext {
                         pos += t;
                     }
                     LOGGER.info("Installing rom at :" + Integer.toString(startMem, 16) + " size:" + pos);
-                    for (int i = 0; i < charBuf.length; i++) {
-                        int data = ((int) charBuf[i]) & 0xff;
-                        boolean result = rom.load(startMem + i, data);
-                        if (!result) {
-                            throw new RuntimeException(
-                                    "Problem writing rom file: can't write to addressable. Addres out of range or addressable is disabled.");
-                        }
-                    }
+                    rom.load(startMem, charBuf, 0, charBuf.length);
                 } catch (Exception e) {
                     LOGGER.error("Problem reading rom file ");
                     e.printStackTrace();
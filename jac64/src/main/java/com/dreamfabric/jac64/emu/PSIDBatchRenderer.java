@@ -0,0 +1,82 @@
+package com.dreamfabric.jac64.emu;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.dreamfabric.jac64.PSIDTune;
+
+/***
+ * Renders the start song of every SID tune in a directory to a WAV file,
+ * using all the cores: each tune gets a {@link PSIDRenderer} of its own.
+ * <p>
+ * Usage: PSIDBatchRenderer &lt;sid file or directory&gt; &lt;wav
+ * directory&gt; [seconds] [threads]
+ */
+public class PSIDBatchRenderer {
+
+    public static final double DEFAULT_SECONDS = 60;
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 2) {
+            System.out.println("Usage: PSIDBatchRenderer <sid file or directory> <wav directory> [seconds] [threads]");
+            System.exit(1);
+        }
+        File input = new File(args[0]);
+        File output = new File(args[1]);
+        double seconds = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_SECONDS;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        File[] tunes = input.isDirectory() ? input.listFiles((dir, name) -> name.toLowerCase().endsWith(".sid"))
+                : new File[] { input };
+        if (tunes == null) {
+            System.out.println("Can't read " + input);
+            System.exit(1);
+        }
+        Arrays.sort(tunes);
+        output.mkdirs();
+
+        long t0 = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<String>> results = new ArrayList<Future<String>>();
+        for (File tune : tunes) {
+            String name = tune.getName().replaceFirst("(?i)\\.sid$", "") + ".wav";
+            File wav = new File(output, name);
+            results.add(executor.submit(() -> render(tune, wav, seconds)));
+        }
+        executor.shutdown();
+
+        int failed = 0;
+        for (int i = 0; i < tunes.length; i++) {
+            try {
+                System.out.println(results.get(i).get());
+            } catch (ExecutionException e) {
+                failed++;
+                System.out.println(tunes[i].getName() + ": failed: " + e.getCause());
+            }
+        }
+        System.out.println("Rendered " + (tunes.length - failed) + " of " + tunes.length + " tunes in "
+                + (System.currentTimeMillis() - t0) + " ms");
+        System.exit(failed == 0 ? 0 : 2);
+    }
+
+    private static String render(File sidFile, File wavFile, double seconds) throws IOException {
+        PSIDTune tune;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(sidFile))) {
+            tune = PSIDTune.read(in);
+        }
+        long t0 = System.currentTimeMillis();
+        long samples = new PSIDRenderer().render(tune, tune.getStartSong(), seconds, wavFile.getPath());
+        return sidFile.getName() + " -> " + wavFile.getName() + ": " + samples + " samples in "
+                + (System.currentTimeMillis() - t0) + " ms";
+    }
+}
@@ -0,0 +1,285 @@
+package com.dreamfabric.jac64.emu;
+
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.dreamfabric.jac64.Hex;
+import com.dreamfabric.jac64.PSIDTune;
+import com.dreamfabric.jac64.emu.bus.AddressableBus;
+import com.dreamfabric.jac64.emu.bus.ControlBus;
+import com.dreamfabric.jac64.emu.cia.CIA1;
+import com.dreamfabric.jac64.emu.cia.CIA2;
+import com.dreamfabric.jac64.emu.cpu.C64Cpu;
+import com.dreamfabric.jac64.emu.cpu.M6510Ops;
+import com.dreamfabric.jac64.emu.interrupt.InterruptManager;
+import com.dreamfabric.jac64.emu.io.IO;
+import com.dreamfabric.jac64.emu.memory.BasicROM;
+import com.dreamfabric.jac64.emu.memory.CharROM;
+import com.dreamfabric.jac64.emu.memory.ColorRAM;
+import com.dreamfabric.jac64.emu.memory.KernalROM;
+import com.dreamfabric.jac64.emu.memory.RAM;
+import com.dreamfabric.jac64.emu.pla.PLA;
+import com.dreamfabric.jac64.emu.scheduler.EventQueue;
+import com.dreamfabric.jac64.emu.scheduler.PeriodicTimeEvent;
+import com.dreamfabric.jac64.emu.sid.RESID;
+import com.dreamfabric.jac64.emu.sid.WavAudioDriver;
+import com.dreamfabric.jac64.emu.vic.VoidVIC;
+
+/***
+ * Renders a PSID tune to a WAV file as fast as the host allows. The machine
+ * is a C64 without a screen: the CPU, the CIAs and RESID, with a
+ * {@link VoidVIC} which never disturbs the CPU.
+ * <p>
+ * A small driver put in free memory calls the init routine and then idles;
+ * the play routine is called from the idle loop once per frame, or at the
+ * rate of the CIA 1 timer A set up by the init routine. Tunes without a play
+ * address (and RSID tunes) play from their own interrupts, which only works
+ * when these come from the CIAs.
+ * <p>
+ * Tunes flagged NTSC only run with the NTSC clock and frame rate, all the
+ * others on PAL.
+ * <p>
+ * An instance renders one tune, it is not thread safe but several instances
+ * can render in parallel.
+ */
+public class PSIDRenderer {
+    private static Logger LOGGER = LoggerFactory.getLogger(PSIDRenderer.class);
+
+    // PAL: 312 lines of 63 cycles
+    public static final int CYCLES_PER_FRAME = 63 * 312;
+    // NTSC: 263 lines of 65 cycles
+    public static final int NTSC_CYCLES_PER_FRAME = 65 * 263;
+
+    // the timer A value set by the KERNAL
+    private static final int DEFAULT_CIA_TIMER = 0x4025;
+    private static final int NTSC_DEFAULT_CIA_TIMER = 0x4295;
+    // places tried for the driver, the first one not used by the tune
+    private static final int[] DRIVER_ADDRESSES = { 0x0334, 0x0200, 0xcf00 };
+    private static final int DRIVER_SIZE = 0x20;
+
+    private EventQueue scheduler = new EventQueue();
+    private C64Cpu cpu = new C64Cpu();
+    private InterruptManager interruptManager = new InterruptManager(cpu);
+    private PLA pla = new PLA();
+    private VoidVIC vic = new VoidVIC();
+    private ControlBus controlBus = new ControlBus(pla, interruptManager, cpu, scheduler, vic);
+
+    private IO io = new IO();
+    private CIA1 cia1 = new CIA1(controlBus);
+    private CIA2 cia2 = new CIA2(controlBus);
+
+    private AddressableBus addressableBus = new AddressableBus(cia2);
+
+    private BasicROM basicROM = new BasicROM();
+    private KernalROM kernalROM = new KernalROM();
+    private CharROM charROM = new CharROM();
+    private RAM ram = new RAM();
+    private ColorRAM colorRAM = new ColorRAM();
+
+    private int idleAddress;
+    private int playCallAddress;
+    private boolean playDue = false;
+    private boolean rendered = false;
+
+    private PeriodicTimeEvent playEvent = new PeriodicTimeEvent(CYCLES_PER_FRAME) {
+        public void execute(long currentCpuCycles) {
+            playDue = true;
+        }
+    };
+
+    public PSIDRenderer() {
+        controlBus.setCIA1(cia1);
+
+        io.setVic(vic);
+        io.setCia1(cia1);
+        io.setCia2(cia2);
+        io.setColorRAM(colorRAM);
+
+        pla.setIO(io);
+        pla.setBasicROM(basicROM);
+        pla.setKernalROM(kernalROM);
+        pla.setCharROM(charROM);
+        pla.setAddressableBus(addressableBus);
+
+        addressableBus.setIO(io);
+        addressableBus.setBasicRom(basicROM);
+        addressableBus.setKernalRom(kernalROM);
+        addressableBus.setCharRom(charROM);
+        ram.setEnabled(true);
+        addressableBus.setRAM(ram);
+        addressableBus.updatePageTable();
+
+        cpu.init();
+        cpu.setControlBus(controlBus);
+        cpu.setAddressableBus(addressableBus);
+
+        EmulationContext.loadROM("/roms/kernal.c64", kernalROM, 0x2000);
+        EmulationContext.loadROM("/roms/basic.c64", basicROM, 0x2000);
+        EmulationContext.loadROM("/roms/chargen.c64", charROM, 0x1000);
+    }
+
+    /***
+     * Renders seconds of the song (1 - songs) of the tune to wavFile.
+     *
+     * @return the number of samples written
+     * @throws IllegalStateException if called a second time, the memory and
+     *         the chips are left as the first tune left them
+     */
+    public long render(PSIDTune tune, int song, double seconds, String wavFile) throws IOException {
+        if (rendered) {
+            throw new IllegalStateException("Already rendered a tune, use another PSIDRenderer");
+        }
+        rendered = true;
+        int clock = tune.isNTSC() ? RESID.NTSC_CLOCK : RESID.PAL_CLOCK;
+        WavAudioDriver wav = new WavAudioDriver(wavFile);
+        RESID sid = new RESID(controlBus, wav, RESID.SAMPLE_RATE, clock);
+        if ((tune.getFlags() & PSIDTune.FLAG_MODEL_8580) != 0) {
+            sid.setChipVersion(RESID.RESID_8580);
+        }
+        io.setSid(sid);
+
+        tune.loadInto(ram);
+        int driverAddress = getDriverAddress(tune);
+        installDriver(tune, song, driverAddress);
+        if (tune.getPlayAddress() == 0 || tune.isRSID()) {
+            LOGGER.info(tune.getName() + " plays from its own interrupts");
+        }
+
+        cpu.reset();
+        sid.reset();
+        sid.start(cpu.getCycles());
+        cpu.setPc(driverAddress);
+        cpu.setEventHorizon(true);
+        cpu.setIdleDetection(true);
+        cpu.setUsageStatistics(false);
+
+        long endCycles = cpu.getCycles() + (long) (seconds * clock);
+        boolean initDone = false;
+        try {
+            while (cpu.getCycles() < endCycles) {
+                cpu.emulateOp();
+                if (cpu.getPc() != idleAddress) {
+                    continue;
+                }
+                if (!initDone) {
+                    initDone = true;
+                    startPlaying(tune, song);
+                } else if (playDue) {
+                    playDue = false;
+                    cpu.setPc(playCallAddress);
+                }
+            }
+        } finally {
+            controlBus.removeEvent(playEvent);
+            sid.stop();
+            wav.close();
+        }
+        return wav.getSamples();
+    }
+
+    private void startPlaying(PSIDTune tune, int song) {
+        if (tune.getPlayAddress() == 0 || tune.isRSID()) {
+            return;
+        }
+        long period = tune.isNTSC() ? NTSC_CYCLES_PER_FRAME : CYCLES_PER_FRAME;
+        if (tune.isCIASpeed(song)) {
+            int latch = cia1.getTimerALatch();
+            if (latch == 0) {
+                latch = tune.isNTSC() ? NTSC_DEFAULT_CIA_TIMER : DEFAULT_CIA_TIMER;
+            }
+            period = latch + 1;
+        }
+        playEvent.setPeriod(period);
+        // the first call is right after the init
+        playDue = true;
+        controlBus.addEvent(playEvent, cpu.getCycles() + period);
+    }
+
+    /***
+     * The free pages given by the tune if the driver fits there, else the
+     * first of the usual places that is free.
+     */
+    static int getDriverAddress(PSIDTune tune) {
+        int startPage = tune.getStartPage();
+        if (startPage != 0 && startPage != 0xff) {
+            if (tune.getPageLength() > 0 && isFreeForDriver(tune, startPage << 8)) {
+                return startPage << 8;
+            }
+            LOGGER.warn("Free pages " + Hex.hex2(startPage) + "+" + tune.getPageLength()
+                    + " not usable for the driver: " + tune);
+        }
+        for (int address : DRIVER_ADDRESSES) {
+            if (isFreeForDriver(tune, address)) {
+                return address;
+            }
+        }
+        throw new IllegalArgumentException("No room for the driver: " + tune);
+    }
+
+    /***
+     * The driver has to be in RAM with all the memory configurations it sets,
+     * and outside the tune.
+     */
+    private static boolean isFreeForDriver(PSIDTune tune, int address) {
+        int end = address + DRIVER_SIZE;
+        boolean ram = address >= 0x0200 && end <= 0xa000 || address >= 0xc000 && end <= 0xd000;
+        return ram && (end <= tune.getLoadAddress() || address >= tune.getEndAddress());
+    }
+
+    /***
+     * The driver: sets the memory configuration, calls init with the song in
+     * A and idles; the play call jumps back to the idle loop.
+     */
+    private void installDriver(PSIDTune tune, int song, int address) {
+        boolean ownInterrupts = tune.getPlayAddress() == 0 || tune.isRSID();
+        if (ownInterrupts) {
+            // the KERNAL IRQ handler, if the tune relies on it
+            ram.write0(0x0314, 0x31);
+            ram.write0(0x0315, 0xea);
+        }
+
+        int a = address;
+        ram.write0(a++, M6510Ops.SEI);
+        ram.write0(a++, M6510Ops.LDA_I);
+        ram.write0(a++, getMemoryConfiguration(tune));
+        ram.write0(a++, M6510Ops.STA_Z);
+        ram.write0(a++, 0x01);
+        ram.write0(a++, M6510Ops.LDX_I);
+        ram.write0(a++, 0);
+        ram.write0(a++, M6510Ops.LDY_I);
+        ram.write0(a++, 0);
+        ram.write0(a++, M6510Ops.LDA_I);
+        ram.write0(a++, song - 1);
+        a = writeCall(a, M6510Ops.JSR, tune.getInitAddress());
+        ram.write0(a++, ownInterrupts ? M6510Ops.CLI : M6510Ops.NOP);
+        idleAddress = a;
+        a = writeCall(a, M6510Ops.JMP, idleAddress);
+        playCallAddress = a;
+        a = writeCall(a, M6510Ops.JSR, tune.getPlayAddress());
+        writeCall(a, M6510Ops.JMP, idleAddress);
+    }
+
+    private int writeCall(int address, int op, int target) {
+        ram.write0(address++, op);
+        ram.write0(address++, target & 0xff);
+        ram.write0(address++, target >> 8);
+        return address;
+    }
+
+    /***
+     * The ROMs overlapped by the tune are switched off, the I/O stays in.
+     */
+    private int getMemoryConfiguration(PSIDTune tune) {
+        int start = tune.getLoadAddress();
+        int end = tune.getEndAddress();
+        if (end > 0xe000) {
+            return 0x35;
+        }
+        if (start < 0xc000 && end > 0xa000) {
+            return 0x36;
+        }
+        return 0x37;
+    }
+}
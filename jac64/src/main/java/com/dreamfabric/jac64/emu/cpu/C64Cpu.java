@@ -4,6 +4,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.dreamfabric.jac64.emu.bus.AddressableBus;
+import com.dreamfabric.jac64.emu.bus.AddressableIf;
 import com.dreamfabric.jac64.emu.bus.ControlBus;
 
 public class C64Cpu extends MOS6510Core {
@@ -12,8 +13,32 @@ public class C64Cpu extends MOS6510Core {
     private ControlBus controlBus;
     private AddressableBus addressableBus;
 
+    private boolean usageStatistics = true;
     private long lastStatictiscDumpCpuCycles = 0;
 
+    // When enabled the VIC is not clocked on every cycle, but only when it may
+    // disturb the CPU (see VICIf.getNextSyncCycle()) or when the CPU accesses
+    // something the VIC can see.
+    private boolean eventHorizon = false;
+    private long vicSyncCycle = 0;
+
+    // Idle loop detection, see skipIdleLoop()
+    // Wait loops are a few instructions long (JMP * takes 3 cycles, polling a
+    // flag about 10), longer loops are rarely idle. About one raster line, it
+    // also bounds the cycles in which writes are compared to the RAM.
+    private static final int MAX_IDLE_LOOP_CYCLES = 64;
+    // The VIC has a deadline at least once per line, so skips are much
+    // shorter. Only a safety net for an empty event queue, about one PAL frame
+    // (19656 cycles) to not run far ahead of the pacing.
+    private static final int MAX_IDLE_SKIP_CYCLES = 20000;
+    private boolean idleDetection = false;
+    private int idleLoopStart = -1;
+    private long idleLoopCycles;
+    private long idleLoopState;
+    private long idleLoopInterrupts;
+    private boolean idleLoopDirty;
+    private int lastPc;
+
     public void setControlBus(ControlBus controlBus) {
         this.controlBus = controlBus;
     }
@@ -22,6 +47,60 @@ public class C64Cpu extends MOS6510Core {
         this.addressableBus = addressableBus;
     }
 
+    /***
+     * Switches between clocking the VIC on every cycle (the default) and
+     * running the CPU freely up to the next event or VIC deadline, letting the
+     * VIC catch up lazily.
+     */
+    public void setEventHorizon(boolean eventHorizon) {
+        // bring the VIC up to date before switching
+        vicSyncCycle = controlBus.syncVic(currentCpuCycles);
+        this.eventHorizon = eventHorizon;
+    }
+
+    public boolean isEventHorizon() {
+        return eventHorizon;
+    }
+
+    /***
+     * Switches the bus usage statistics, logged every million cycles, on (the
+     * default) or off.
+     */
+    public void setUsageStatistics(boolean usageStatistics) {
+        this.usageStatistics = usageStatistics;
+    }
+
+    /***
+     * Enables skipping of idle loops (see skipIdleLoop()), off by default.
+     */
+    public void setIdleDetection(boolean idleDetection) {
+        this.idleDetection = idleDetection;
+        idleLoopStart = -1;
+    }
+
+    public boolean isIdleDetection() {
+        return idleDetection;
+    }
+
+    /***
+     * Runs straight-line code from translated blocks, see
+     * {@link MOS6510Core#setTranslation(boolean)}. The writes through the bus
+     * and the data loaded into the RAM drop the blocks they change.
+     */
+    @Override
+    public void setTranslation(boolean translation) {
+        super.setTranslation(translation);
+        addressableBus.setWriteListener(getBlockCache());
+    }
+
+    @Override
+    public void emulateOp() {
+        if (idleDetection) {
+            skipIdleLoop();
+        }
+        super.emulateOp();
+    }
+
     public void reset() {
         // this will ensure the correct PLA state
         writeByte(1, 0x7);
@@ -38,28 +117,70 @@ public class C64Cpu extends MOS6510Core {
     // Reads the memory with all respect to all flags...
     @Override
     protected final int fetchByte(int adr) {
+        clockRead(adr);
+
+        int result = addressableBus.read(adr, currentCpuCycles);
+        if (result != AddressableIf.NOT_READABLE) {
+            return result;
+        }
+
+        throw new IllegalArgumentException("Read operation should be handled by addressable bus!");
+    }
+
+    // The byte is known from a translated block, only the cycle passes
+    @Override
+    protected final int fetchCachedByte(int adr, int data) {
+        clockRead(adr);
+        addressableBus.countCachedRead();
+        return data;
+    }
+
+    @Override
+    protected final int peekCode(int adr) {
+        return addressableBus.peek(adr);
+    }
+
+    @Override
+    protected final int getMemoryConfiguration() {
+        return addressableBus.getConfiguration();
+    }
+
+    private void clockRead(int adr) {
         /* a cycles passes for this read */
         currentCpuCycles++;
 
-        if (currentCpuCycles - lastStatictiscDumpCpuCycles >= 1000000) {
+        if (usageStatistics && currentCpuCycles - lastStatictiscDumpCpuCycles >= 1000000) {
             addressableBus.dumpUsage(currentCpuCycles);
             
             lastStatictiscDumpCpuCycles = currentCpuCycles;
         }
 
         /* Chips work first, then CPU */
-        executeFromEventQueue(currentCpuCycles);
-        while (baLowUntil > currentCpuCycles) {
-            currentCpuCycles++;
+        if (eventHorizon) {
+            clockChipsLazily();
+            while (baLowUntil > currentCpuCycles) {
+                // nothing happens until BA goes high, the next event or the
+                // next VIC deadline, so jump straight there
+                long next = Math.min(baLowUntil, Math.min(vicSyncCycle, controlBus.getNextEventTime()));
+                currentCpuCycles = Math.max(next, currentCpuCycles + 1);
+                clockChipsLazily();
+            }
+            if ((adr & 0xfc00) == 0xd000) {
+                // VIC register read, the VIC has to be up to date
+                vicSyncCycle = controlBus.syncVic(currentCpuCycles);
+            }
+        } else {
             executeFromEventQueue(currentCpuCycles);
+            while (baLowUntil > currentCpuCycles) {
+                currentCpuCycles++;
+                executeFromEventQueue(currentCpuCycles);
+            }
         }
 
-        Integer result = addressableBus.read(adr, currentCpuCycles);
-        if (result != null) {
-            return (int) result;
+        if (idleDetection && (adr & 0xf000) == 0xd000) {
+            // IO may change at any time
+            idleLoopDirty = true;
         }
-
-        throw new IllegalArgumentException("Read operation should be handled by addressable bus!");
     }
 
     // A byte is written directly to memory or to ioChips
@@ -67,7 +188,24 @@ public class C64Cpu extends MOS6510Core {
     protected final void writeByte(int adr, int data) {
         currentCpuCycles++;
 
-        executeFromEventQueue(currentCpuCycles);
+        if (eventHorizon) {
+            clockChipsLazily();
+            if (addressableBus.isVicVisible(adr)) {
+                // the VIC must not see this write too early
+                controlBus.syncVic(currentCpuCycles);
+                // the write may change the VIC's deadline (e.g. IRQ mask,
+                // sprite enable), so synchronize again on the next cycle
+                vicSyncCycle = currentCpuCycles + 1;
+            }
+        } else {
+            executeFromEventQueue(currentCpuCycles);
+        }
+
+        if (idleDetection && !idleLoopDirty) {
+            // the RAM is only compared while the loop can still be skipped
+            idleLoopDirty = currentCpuCycles - idleLoopCycles > MAX_IDLE_LOOP_CYCLES || (adr & 0xf000) == 0xd000
+                    || addressableBus.getRAM().read0(adr) != data;
+        }
 
         if (adr == 0x01) {
             // setting CHAREN, HIRAM and LORAM of PLA
@@ -113,6 +251,57 @@ public class C64Cpu extends MOS6510Core {
         controlBus.executeFromEventQueue(currentCpuCycles);
     }
 
+    /***
+     * Called on every instruction boundary. A loop is tracked from the target
+     * of the last backward jump or branch. When the CPU gets back there with the
+     * same registers and flags, without having touched IO, changed memory or
+     * taken an interrupt, every further iteration does exactly the same, until
+     * an event or the VIC changes something. So all the iterations which end
+     * before the next event or VIC deadline are skipped at once, the VIC
+     * catches up and interrupts are taken at the same cycle as without
+     * skipping.
+     */
+    private void skipIdleLoop() {
+        int pc = getPc();
+        if (pc <= lastPc) {
+            long state = getRegisterState();
+            long period = currentCpuCycles - idleLoopCycles;
+            if (pc == idleLoopStart && state == idleLoopState && !idleLoopDirty && period <= MAX_IDLE_LOOP_CYCLES
+                    && idleLoopInterrupts == getInterruptCount() && !isInterruptPending()
+                    && baLowUntil <= idleLoopCycles) {
+                long deadline = controlBus.getNextEventTime();
+                if (deadline <= currentCpuCycles) {
+                    // empty queue
+                    deadline = Long.MAX_VALUE;
+                }
+                deadline = Math.min(deadline, eventHorizon ? vicSyncCycle : controlBus.syncVic(currentCpuCycles));
+                deadline = Math.min(deadline, currentCpuCycles + MAX_IDLE_SKIP_CYCLES);
+
+                long iterations = (deadline - 1 - currentCpuCycles) / period;
+                if (iterations > 0) {
+                    currentCpuCycles += iterations * period;
+                    if (!eventHorizon) {
+                        // the VIC is expected to be clocked on every cycle
+                        controlBus.syncVic(currentCpuCycles);
+                    }
+                }
+            }
+            idleLoopStart = pc;
+            idleLoopState = state;
+            idleLoopCycles = currentCpuCycles;
+            idleLoopInterrupts = getInterruptCount();
+            idleLoopDirty = false;
+        }
+        lastPc = pc;
+    }
+
+    private void clockChipsLazily() {
+        if (currentCpuCycles >= vicSyncCycle) {
+            vicSyncCycle = controlBus.syncVic(currentCpuCycles);
+        }
+        controlBus.executeFromEventQueue(currentCpuCycles);
+    }
+
     private int getMemory(int address) {
         return addressableBus.getRAM().read0(address);
     }
@@ -0,0 +1,94 @@
+package com.dreamfabric.jac64.emu.sid;
+
+import com.dreamfabric.jac64.emu.WallClockPacer;
+
+/***
+ * {@link WallClockPacer} which also holds the sound queued in an
+ * {@link AudioDriverRing} at a target latency. The wall clock is the master:
+ * the sound card plays at its own clock, which drifts from it, so the SID
+ * sample rate is moved by fractions of a percent (dynamic rate control) to
+ * produce the samples as fast as the card plays them. Only when the queue
+ * still grows halfway from the target to the most the driver can hold (i.e.
+ * the card is slower than the rate control can follow) the emulation waits
+ * for the card, which is the master clock then. Without a sound line only the
+ * wall clock is used.
+ */
+public class AudioClockPacer extends WallClockPacer {
+
+    // the sample rate is moved by 0.5 % at most
+    private static final double MAX_ADJUST = 0.005;
+    // part of the new error taken into the adjustment at each pacing
+    private static final double SMOOTHING = 0.05;
+
+    private final RESID resid;
+    private final AudioDriverRing audioDriver;
+    private final int bytesPerSecond;
+    private final int targetBytes;
+    private double adjust = 0;
+    private long cardWaits = 0;
+
+    /***
+     * @param latencyMillis
+     *            how long the sound is queued before it is played
+     */
+    public AudioClockPacer(int cyclesPerSecond, RESID resid, AudioDriverRing audioDriver, int latencyMillis) {
+        super(cyclesPerSecond);
+        this.resid = resid;
+        this.audioDriver = audioDriver;
+        bytesPerSecond = resid.getSampleRate() * 2;
+        targetBytes = bytesPerSecond / 1000 * latencyMillis & ~1;
+    }
+
+    @Override
+    protected void pace(long currentCpuCycles) {
+        super.pace(currentCpuCycles);
+        if (!audioDriver.hasSound()) {
+            return;
+        }
+
+        int queued = audioDriver.getQueuedBytes();
+        int target = getTargetBytes();
+        double error = Math.max(-1, Math.min(1, (double) (queued - target) / target));
+        adjust += (error * MAX_ADJUST - adjust) * SMOOTHING;
+        // more queued than the target: fewer samples per emulated second
+        resid.adjustSamplingFrequency(resid.getSampleRate() * (1 - adjust));
+
+        if (queued > getBlockingBytes()) {
+            cardWaits++;
+            waitNanos((queued - target) * 1000000000L / bytesPerSecond);
+            restart(currentCpuCycles);
+        }
+    }
+
+    /***
+     * The bytes the rate control keeps queued: the latency asked for, but at
+     * most three quarters of what the driver can queue.
+     */
+    public int getTargetBytes() {
+        return Math.min(targetBytes, audioDriver.getMaxQueuedBytes() * 3 / 4 & ~1);
+    }
+
+    /***
+     * The queued bytes beyond which the emulation waits for the card, halfway
+     * from the target to the most the driver can queue, so it is reached
+     * before any samples are dropped.
+     */
+    public int getBlockingBytes() {
+        int target = getTargetBytes();
+        return target + (audioDriver.getMaxQueuedBytes() - target) / 2;
+    }
+
+    /***
+     * Number of times the emulation has waited for the sound card.
+     */
+    public long getCardWaits() {
+        return cardWaits;
+    }
+
+    /***
+     * The current sample rate adjustment, -0.005 - 0.005.
+     */
+    public double getAdjustment() {
+        return adjust;
+    }
+}
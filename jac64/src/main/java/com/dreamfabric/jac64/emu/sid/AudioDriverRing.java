@@ -0,0 +1,224 @@
+package com.dreamfabric.jac64.emu.sid;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.FloatControl;
+import javax.sound.sampled.SourceDataLine;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/***
+ * {@link AudioDriver} which never blocks the emulation: {@link #write(byte[])}
+ * only copies the samples into a ring buffer, a thread of its own drains the
+ * ring into the {@link SourceDataLine}. When the ring is full the samples
+ * written are dropped (an overrun), when the line runs dry because the ring
+ * is empty it is an underrun.
+ */
+public class AudioDriverRing extends AudioDriver {
+    private static Logger LOGGER = LoggerFactory.getLogger(AudioDriverRing.class);
+
+    private SourceDataLine dataLine;
+    private FloatControl volume;
+    private int vol = 0;
+    private boolean soundOn = true;
+    private boolean fullSpeed = false;
+
+    private byte[] ring;
+    private int mask;
+    // bytes written to / read from the ring since the start, each moved by
+    // one thread only
+    private volatile long writePos = 0;
+    private volatile long readPos = 0;
+    private volatile long overruns = 0;
+    private volatile long underruns = 0;
+
+    private Thread drainThread;
+    private volatile boolean draining;
+
+    /***
+     * Opens the line and starts draining, the ring holds at least bufferSize
+     * bytes.
+     */
+    public void init(int sampleRate, int bufferSize) {
+        AudioFormat af = new AudioFormat(sampleRate, 16, 1, true, false);
+        DataLine.Info dli = new DataLine.Info(SourceDataLine.class, af, bufferSize);
+        SourceDataLine line;
+        try {
+            line = (SourceDataLine) AudioSystem.getLine(dli);
+            line.open(line.getFormat(), bufferSize);
+            volume = (FloatControl) line.getControl(FloatControl.Type.MASTER_GAIN);
+            setMasterVolume(100);
+            line.start();
+        } catch (Exception e) {
+            LOGGER.warn("No audio line: " + e.getMessage());
+            return;
+        }
+        start(line, bufferSize);
+    }
+
+    /***
+     * Starts draining a ring of at least bufferSize bytes into the open and
+     * started line.
+     */
+    void start(SourceDataLine line, int bufferSize) {
+        dataLine = line;
+        ring = new byte[Integer.highestOneBit(bufferSize - 1) * 2];
+        mask = ring.length - 1;
+        draining = true;
+        drainThread = new Thread(this::drain, "Audio drain");
+        drainThread.setDaemon(true);
+        drainThread.start();
+    }
+
+    public void write(byte[] buffer) {
+        if (dataLine == null) {
+            return;
+        }
+        int length = buffer.length;
+        long w = writePos;
+        if (ring.length - (w - readPos) < length) {
+            overruns++;
+            return;
+        }
+        int start = (int) w & mask;
+        int first = Math.min(length, ring.length - start);
+        if (soundOn) {
+            System.arraycopy(buffer, 0, ring, start, first);
+            System.arraycopy(buffer, first, ring, 0, length - first);
+        } else {
+            // Kill sound!!!
+            Arrays.fill(ring, start, start + first, (byte) 0);
+            Arrays.fill(ring, 0, length - first, (byte) 0);
+        }
+        writePos = w + length;
+        LockSupport.unpark(drainThread);
+    }
+
+    private void drain() {
+        int lineSize = dataLine.getBufferSize();
+        boolean starving = false;
+        while (draining) {
+            long r = readPos;
+            int fill = (int) (writePos - r);
+            if (fill == 0) {
+                if (!starving && dataLine.available() >= lineSize) {
+                    underruns++;
+                    starving = true;
+                }
+                LockSupport.parkNanos(this, 1000000);
+                continue;
+            }
+            starving = false;
+            int start = (int) r & mask;
+            // blocks while the line is full, which is fine here
+            int n = dataLine.write(ring, start, Math.min(fill, ring.length - start));
+            readPos = r + n;
+        }
+    }
+
+    /***
+     * Bytes waiting in the ring.
+     */
+    public int getFillLevel() {
+        return (int) (writePos - readPos);
+    }
+
+    /***
+     * Bytes written but not played yet, in the ring and in the line.
+     */
+    public int getQueuedBytes() {
+        if (dataLine == null)
+            return 0;
+        return getFillLevel() + dataLine.getBufferSize() - dataLine.available();
+    }
+
+    public int getCapacity() {
+        return ring == null ? 0 : ring.length;
+    }
+
+    /***
+     * The most {@link #getQueuedBytes()} can be, a full ring and a full line.
+     * Writes beyond it are dropped.
+     */
+    public int getMaxQueuedBytes() {
+        if (dataLine == null)
+            return 0;
+        return getCapacity() + dataLine.getBufferSize();
+    }
+
+    /***
+     * Number of writes dropped because the ring was full.
+     */
+    public long getOverruns() {
+        return overruns;
+    }
+
+    /***
+     * Number of times the line ran dry.
+     */
+    public long getUnderruns() {
+        return underruns;
+    }
+
+    public int available() {
+        if (dataLine == null)
+            return 0;
+        return ring.length - getFillLevel();
+    }
+
+    public int getMasterVolume() {
+        return vol;
+    }
+
+    public long getMicros() {
+        if (dataLine == null)
+            return 0;
+        return dataLine.getMicrosecondPosition();
+    }
+
+    public boolean hasSound() {
+        return dataLine != null;
+    }
+
+    public void setMasterVolume(int v) {
+        if (volume != null) {
+            volume.setValue(-10.0f + 0.1f * v);
+        }
+        vol = v;
+    }
+
+    public void shutdown() {
+        if (dataLine == null) {
+            return;
+        }
+        draining = false;
+        LockSupport.unpark(drainThread);
+        try {
+            drainThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        dataLine.close();
+    }
+
+    public void setSoundOn(boolean on) {
+        soundOn = on;
+    }
+
+    /***
+     * The driver never waits, so this is only remembered for the users of
+     * the driver to pace the emulation.
+     */
+    public void setFullSpeed(boolean full) {
+        fullSpeed = full;
+    }
+
+    public boolean fullSpeed() {
+        return fullSpeed;
+    }
+}
@@ -1,9 +1,10 @@
 package com.dreamfabric.jac64.emu.sid;
 
+import java.util.concurrent.locks.LockSupport;
+
 import com.dreamfabric.jac64.emu.bus.AddressableChip;
 import com.dreamfabric.jac64.emu.bus.ControlBus;
-import com.dreamfabric.jac64.emu.scheduler.EventQueue;
-import com.dreamfabric.jac64.emu.scheduler.TimeEvent;
+import com.dreamfabric.jac64.emu.scheduler.PeriodicTimeEvent;
 import com.dreamfabric.resid.ISIDDefs;
 import com.dreamfabric.resid.ISIDDefs.sampling_method;
 import com.dreamfabric.resid.SID;
@@ -11,6 +12,20 @@ import com.dreamfabric.resid.SID;
 /***
  * Implementation of {@link SIDIf} which uses reSID algorithm to emulate SID
  * chip.
+ * <p>
+ * The SID is clocked lazily: it is brought up to the current cycle only when
+ * one of its registers is accessed and once per sample buffer, each time with
+ * a single delta clocking which generates all the samples due meanwhile.
+ * <p>
+ * In the threaded mode (see {@link #setThreaded(boolean)}) the SID generating
+ * the sound is owned by a thread of its own: the emulation thread only logs
+ * the register writes with their cycle in a {@link SIDWriteRing} and the
+ * render thread replays them. The registers read back (OSC3, ENV3 and the
+ * paddles) come from a shadow SID without filters kept on the emulation
+ * thread. The shadow is clocked in other steps than the SID generating the
+ * sound, but reSID's delta clocking doesn't depend on the steps, so OSC3 and
+ * ENV3 read the same as in the unthreaded mode. With the filters off (see
+ * {@link #setFilter(boolean)}) the samples are the same in both modes.
  * 
  * @see {@link com.dreamfabric.resid.*}
  * 
@@ -22,47 +37,132 @@ public class RESID extends AddressableChip implements SIDIf {
     public static final int RESID_6581 = 1;
     public static final int RESID_8580 = 2;
 
-    static final int SAMPLE_RATE = 44000;
+    public static final int SAMPLE_RATE = 44000;
     static final int DL_BUFFER_SIZE = 44000;
+    // bytes buffered in the line, the pacing keeps the latency low
+    static final int LINE_BUFFER_SIZE = 8192;
+
+    // writes the emulation can log before waiting for the render thread
+    private static final int WRITE_RING_SIZE = 4096;
+    // buffers the render thread can be behind before the emulation waits
+    private static final int MAX_RENDER_LAG = 4;
 
     int BUFFER_SIZE = 256;
     byte[] buffer = new byte[BUFFER_SIZE * 2];
+    short[] samples = new short[BUFFER_SIZE];
 
     private SID sid;
-    private int CPUFrq = 985248;
-    private int clocksPerSample = CPUFrq / SAMPLE_RATE;
+    public static final int PAL_CLOCK = 985248;
+    public static final int NTSC_CLOCK = 1022727;
+
+    // the frequency of the CPU clock the SID is clocked with
+    private final int CPUFrq;
+    // the rate the samples are written at, when not adjusted
+    private final int nominalSampleRate;
+    // cycles needed to fill the buffer, rounded up
+    private final int clocksPerBuffer;
+    private int chipVersion;
+    private sampling_method samplingMethod = sampling_method.SAMPLE_FAST;
+    private SID.CycleCount deltaCycles;
+    private volatile double sampleRate;
+    private double sidSampleRate;
+    // cpu cycle up to which the SID has been clocked
+    private long sidCycles = 0;
     private int pos = 0;
     private AudioDriver audioDriver;
     private ControlBus controlBus;
+    final PeriodicTimeEvent updateEvent;
+
+    // threaded mode
+    private boolean threaded = false;
+    private boolean started = false;
+    private SIDWriteRing writeRing;
+    private SID shadow;
+    private long shadowCycles;
+    private Thread renderThread;
+    private volatile boolean rendering;
+    private volatile long renderedCycles;
 
     public RESID(ControlBus controlBus) {
-        audioDriver = new AudioDriverSE();
-        audioDriver.init(44000, 22000);
+        this(controlBus, new AudioDriverRing());
+    }
+
+    /***
+     * @param audioDriver
+     *            driver the samples are written to, initialized here
+     */
+    public RESID(ControlBus controlBus, AudioDriver audioDriver) {
+        this(controlBus, audioDriver, SAMPLE_RATE);
+    }
+
+    /***
+     * @param audioDriver
+     *            driver the samples are written to, initialized here
+     * @param sampleRate
+     *            samples per second written to the driver
+     */
+    public RESID(ControlBus controlBus, AudioDriver audioDriver, int sampleRate) {
+        this(controlBus, audioDriver, sampleRate, PAL_CLOCK);
+    }
+
+    /***
+     * @param audioDriver
+     *            driver the samples are written to, initialized here
+     * @param sampleRate
+     *            samples per second written to the driver
+     * @param clockFrequency
+     *            CPU cycles per second, PAL_CLOCK or NTSC_CLOCK
+     */
+    public RESID(ControlBus controlBus, AudioDriver audioDriver, int sampleRate, int clockFrequency) {
+        this.CPUFrq = clockFrequency;
+        this.nominalSampleRate = sampleRate;
+        this.sampleRate = sampleRate;
+        this.sidSampleRate = sampleRate;
+        clocksPerBuffer = (BUFFER_SIZE * CPUFrq + sampleRate - 1) / sampleRate;
+        updateEvent = new PeriodicTimeEvent(clocksPerBuffer) {
+            public void execute(long currentCpuCycles) {
+                if (threaded) {
+                    publishCycles(currentCpuCycles);
+                } else {
+                    clockSID(currentCpuCycles);
+                }
+            }
+        };
+
+        this.audioDriver = audioDriver;
+        audioDriver.init(sampleRate, LINE_BUFFER_SIZE);
         audioDriver.setSoundOn(true);
 
         sid = new SID();
+        deltaCycles = sid.new CycleCount(0);
 
-        sid.set_sampling_parameters(CPUFrq, sampling_method.SAMPLE_FAST, SAMPLE_RATE, -1, 0.97);
+        setSamplingMethod(samplingMethod);
         setChipVersion(RESID_6581);
 
         this.controlBus = controlBus;
     }
 
-    TimeEvent updateEvent = new TimeEvent(0) {
-        public void execute(long currentCpuCycles) {
-            RESID.this.execute();
-
-            controlBus.addEvent(this, currentCpuCycles + clocksPerSample);
-        }
-    };
-
     public void clock(long cycles) {
     }
 
     @Override
     public boolean write(int address, int data, long currentCpuCycles) {
         if (super.write(address, data, currentCpuCycles)) {
-            sid.write(address - getStartAddress(), data);
+            int register = address - getStartAddress();
+            if (threaded) {
+                clockShadow(currentCpuCycles);
+                shadow.write(register, data);
+                if (!writeRing.offer(currentCpuCycles, register, data)) {
+                    if (!rendering) {
+                        // nobody else is replaying the writes
+                        renderTo(currentCpuCycles);
+                    }
+                    writeRing.put(currentCpuCycles, register, data);
+                }
+            } else {
+                clockSID(currentCpuCycles);
+                sid.write(register, data);
+            }
 
             return true;
         }
@@ -71,52 +171,282 @@ public class RESID extends AddressableChip implements SIDIf {
     }
 
     @Override
-    public Integer read(int address, long currentCpuCycles) {
-        Integer result = super.read(address, currentCpuCycles);
+    public int read(int address, long currentCpuCycles) {
+        int result = super.read(address, currentCpuCycles);
 
-        if (result != null) {
+        if (result != NOT_READABLE) {
+            if (threaded) {
+                clockShadow(currentCpuCycles);
+                return shadow.read(address - getStartAddress());
+            }
+            clockSID(currentCpuCycles);
             return sid.read(address - getStartAddress());
         }
 
-        return null;
+        return NOT_READABLE;
     }
 
     @Override
     public void start(long currentCpuCycles) {
-        controlBus.addEvent(updateEvent, currentCpuCycles + clocksPerSample);
+        started = true;
+        sidCycles = currentCpuCycles;
+        if (threaded) {
+            shadowCycles = currentCpuCycles;
+            startRendering();
+        }
+        controlBus.addEvent(updateEvent, currentCpuCycles + clocksPerBuffer);
     }
 
     @Override
     public void stop() {
         controlBus.removeEvent(updateEvent);
+        if (threaded) {
+            stopRendering();
+        }
+        started = false;
     }
 
     @Override
     public void reset() {
-        sid.reset();
-        controlBus.addEvent(updateEvent, clocksPerSample);
+        if (threaded) {
+            // reset both SIDs at the same cycle. Rather than logging the reset
+            // and maybe waiting for a render thread that doesn't take the log,
+            // stop it and replay the log here
+            boolean wasRendering = renderThread != null;
+            if (wasRendering) {
+                stopRendering();
+            } else {
+                renderTo(shadowCycles);
+            }
+            synchronized (sid) {
+                sid.reset();
+            }
+            shadow.reset();
+            if (wasRendering) {
+                startRendering();
+            }
+            controlBus.addEvent(updateEvent, shadowCycles + clocksPerBuffer);
+        } else {
+            sid.reset();
+            controlBus.addEvent(updateEvent, sidCycles + clocksPerBuffer);
+        }
+    }
+
+    /***
+     * Turns the filter and the external filter (the output stage) of the SID
+     * generating the sound on or off.
+     */
+    public void setFilter(boolean filter) {
+        synchronized (sid) {
+            sid.enable_filter(filter);
+            sid.enable_external_filter(filter);
+        }
     }
 
     public void setChipVersion(int version) {
-        if (version == RESID_6581) {
+        chipVersion = version;
+        synchronized (sid) {
+            setChipModel(sid);
+        }
+        if (shadow != null) {
+            setChipModel(shadow);
+        }
+    }
+
+    private void setChipModel(SID sid) {
+        if (chipVersion == RESID_6581) {
             sid.set_chip_model(ISIDDefs.chip_model.MOS6581);
         } else {
             sid.set_chip_model(ISIDDefs.chip_model.MOS8580);
         }
     }
 
-    private void execute() {
-        // Clock resid!
-        for (int q = 0; q < clocksPerSample; q++) {
-            sid.clock();
+    /***
+     * Selects how the samples are taken from the SID: {@code SAMPLE_FAST}
+     * picks the nearest sample, {@code SAMPLE_INTERPOLATE} interpolates
+     * linearly and the {@code SAMPLE_RESAMPLE_*} methods resample with a FIR
+     * filter, the best sound but the most expensive.
+     * <p>
+     * {@code SAMPLE_FAST} clocks the SID in steps, up to the next sample or
+     * register access, and its filters integrate each step at once. So its
+     * samples also depend on the cycles the registers are accessed at (always
+     * the same for the same program), not only on the writes. The other
+     * methods clock the SID cycle by cycle and don't.
+     * 
+     * @return false if the method can't be used at the sample rate, the
+     *         previous one is kept then
+     */
+    public boolean setSamplingMethod(sampling_method method) {
+        synchronized (sid) {
+            if (!sid.set_sampling_parameters(CPUFrq, method, nominalSampleRate, -1, 0.97)) {
+                return false;
+            }
+            sidSampleRate = nominalSampleRate;
+        }
+        samplingMethod = method;
+        return true;
+    }
+
+    public sampling_method getSamplingMethod() {
+        return samplingMethod;
+    }
+
+    public int getSampleRate() {
+        return nominalSampleRate;
+    }
+
+    public int getClockFrequency() {
+        return CPUFrq;
+    }
+
+    /***
+     * Moves the sample rate slightly to follow the clock of the sound card,
+     * see {@link AudioClockPacer}.
+     */
+    public void adjustSamplingFrequency(double sampleRate) {
+        // taken over by the thread clocking the SID
+        this.sampleRate = sampleRate;
+    }
+
+    public AudioDriver getAudioDriver() {
+        return audioDriver;
+    }
+
+    /***
+     * Replaces the driver the samples are written to, while stopped.
+     */
+    public void setAudioDriver(AudioDriver audioDriver) {
+        this.audioDriver = audioDriver;
+    }
+
+    /***
+     * Switches the threaded mode, where the sound is generated on a thread of
+     * its own, on or off. To be called from the emulation thread.
+     */
+    public void setThreaded(boolean threaded) {
+        if (threaded == this.threaded) {
+            return;
+        }
+        if (threaded) {
+            if (shadow == null) {
+                shadow = new SID();
+                shadow.enable_filter(false);
+                shadow.enable_external_filter(false);
+                setChipModel(shadow);
+                writeRing = new SIDWriteRing(WRITE_RING_SIZE);
+            }
+            shadow.write_state(sid.read_state());
+            shadowCycles = sidCycles;
+            this.threaded = true;
+            if (started) {
+                startRendering();
+            }
+        } else {
+            if (started) {
+                stopRendering();
+            }
+            sidCycles = Math.max(sidCycles, shadowCycles);
+            this.threaded = false;
+        }
+    }
+
+    public boolean isThreaded() {
+        return threaded;
+    }
+
+    private void clockShadow(long currentCpuCycles) {
+        long delta = currentCpuCycles - shadowCycles;
+        if (delta > 0) {
+            shadow.clock((int) delta);
+            shadowCycles = currentCpuCycles;
+        }
+    }
+
+    private void publishCycles(long currentCpuCycles) {
+        writeRing.publishCycles(currentCpuCycles);
+        LockSupport.unpark(renderThread);
+        if (!audioDriver.fullSpeed()) {
+            // let the sound keep up, as the blocking write does when not
+            // threaded
+            while (rendering && currentCpuCycles - renderedCycles > MAX_RENDER_LAG * clocksPerBuffer) {
+                LockSupport.parkNanos(500000);
+            }
+        }
+    }
+
+    private void startRendering() {
+        writeRing.publishCycles(shadowCycles);
+        renderedCycles = sidCycles;
+        rendering = true;
+        renderThread = new Thread(this::render, "SID render");
+        renderThread.setDaemon(true);
+        renderThread.start();
+    }
+
+    private void stopRendering() {
+        rendering = false;
+        LockSupport.unpark(renderThread);
+        try {
+            renderThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        renderThread = null;
+        // replay the writes logged since the last publishing
+        renderTo(shadowCycles);
+    }
+
+    private void render() {
+        while (rendering) {
+            long cycles = writeRing.getPublishedCycles();
+            if (cycles > sidCycles) {
+                renderTo(cycles);
+            } else {
+                LockSupport.parkNanos(this, 1000000);
+            }
+        }
+    }
+
+    /***
+     * Replays the logged writes up to cycles, on the render thread.
+     */
+    private void renderTo(long cycles) {
+        synchronized (sid) {
+            while (!writeRing.isEmpty() && writeRing.peekCycle() <= cycles) {
+                clockSID(writeRing.peekCycle());
+                sid.write(writeRing.peekRegister(), writeRing.peekValue());
+                writeRing.remove();
+            }
+            clockSID(cycles);
         }
+        renderedCycles = sidCycles;
+    }
 
-        // and take the sample!
-        int sample = sid.output();
-        buffer[pos++] = (byte) (sample & 0xff);
-        buffer[pos++] = (byte) ((sample >> 8));
-        if (pos == buffer.length) {
-            writeSamples();
+    /***
+     * Clocks the SID from the last cycle it has been clocked to
+     * currentCpuCycles, collecting the samples generated meanwhile.
+     */
+    private void clockSID(long currentCpuCycles) {
+        long delta = currentCpuCycles - sidCycles;
+        if (delta <= 0) {
+            return;
+        }
+        sidCycles = currentCpuCycles;
+        if (sampleRate != sidSampleRate) {
+            sidSampleRate = sampleRate;
+            sid.adjust_sampling_frequency(sidSampleRate);
+        }
+        deltaCycles.delta_t = (int) delta;
+        while (deltaCycles.delta_t > 0) {
+            int n = sid.clock(deltaCycles, samples, BUFFER_SIZE - pos / 2, 1);
+            for (int i = 0; i < n; i++) {
+                int sample = samples[i];
+                buffer[pos++] = (byte) (sample & 0xff);
+                buffer[pos++] = (byte) ((sample >> 8));
+            }
+            if (pos == buffer.length) {
+                writeSamples();
+            }
         }
     }
 
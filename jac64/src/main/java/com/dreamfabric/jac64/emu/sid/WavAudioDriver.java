@@ -0,0 +1,162 @@
+package com.dreamfabric.jac64.emu.sid;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+/***
+ * {@link AudioDriver} writing the samples to a WAV file (16 bit mono) as fast
+ * as they come, for rendering without a sound card. The sizes in the header
+ * are set by {@link #close()}.
+ */
+public class WavAudioDriver extends AudioDriver implements Closeable {
+
+    private static final int HEADER_SIZE = 44;
+
+    private final String fileName;
+    private OutputStream out;
+    private int sampleRate;
+    private long dataBytes = 0;
+    private IOException error;
+    private boolean soundOn = true;
+
+    public WavAudioDriver(String fileName) {
+        this.fileName = fileName;
+    }
+
+    /***
+     * Creates the file, the buffer size is not used.
+     */
+    public void init(int sampleRate, int bufferSize) {
+        this.sampleRate = sampleRate;
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(fileName), 1 << 16);
+            // the sizes are written when closed
+            out.write(header(0));
+        } catch (IOException e) {
+            error = e;
+        }
+    }
+
+    private byte[] header(long dataBytes) {
+        byte[] h = new byte[HEADER_SIZE];
+        ascii(h, 0, "RIFF");
+        int32(h, 4, (int) (36 + dataBytes));
+        ascii(h, 8, "WAVE");
+        ascii(h, 12, "fmt ");
+        int32(h, 16, 16);
+        // PCM, mono
+        int16(h, 20, 1);
+        int16(h, 22, 1);
+        int32(h, 24, sampleRate);
+        int32(h, 28, sampleRate * 2);
+        int16(h, 32, 2);
+        int16(h, 34, 16);
+        ascii(h, 36, "data");
+        int32(h, 40, (int) dataBytes);
+        return h;
+    }
+
+    private static void ascii(byte[] b, int offset, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            b[offset + i] = (byte) s.charAt(i);
+        }
+    }
+
+    private static void int16(byte[] b, int offset, int value) {
+        b[offset] = (byte) value;
+        b[offset + 1] = (byte) (value >> 8);
+    }
+
+    private static void int32(byte[] b, int offset, int value) {
+        int16(b, offset, value);
+        int16(b, offset + 2, value >> 16);
+    }
+
+    public void write(byte[] buffer) {
+        if (out == null || error != null) {
+            return;
+        }
+        try {
+            if (soundOn) {
+                out.write(buffer);
+            } else {
+                out.write(new byte[buffer.length]);
+            }
+            dataBytes += buffer.length;
+        } catch (IOException e) {
+            error = e;
+        }
+    }
+
+    /***
+     * Completes the file, throws the first error met while writing.
+     */
+    @Override
+    public void close() throws IOException {
+        if (out != null) {
+            OutputStream o = out;
+            out = null;
+            o.close();
+            if (error == null) {
+                try (RandomAccessFile file = new RandomAccessFile(fileName, "rw")) {
+                    file.write(header(dataBytes));
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /***
+     * Returns the number of samples written.
+     */
+    public long getSamples() {
+        return dataBytes / 2;
+    }
+
+    public long getMicros() {
+        return sampleRate == 0 ? 0 : getSamples() * 1000000 / sampleRate;
+    }
+
+    public boolean hasSound() {
+        return true;
+    }
+
+    public int available() {
+        return Integer.MAX_VALUE;
+    }
+
+    public int getMasterVolume() {
+        return 100;
+    }
+
+    public void setMasterVolume(int v) {
+    }
+
+    public void shutdown() {
+        try {
+            close();
+        } catch (IOException e) {
+            // already reported by close()
+        }
+    }
+
+    public void setSoundOn(boolean on) {
+        soundOn = on;
+    }
+
+    public void setFullSpeed(boolean full) {
+    }
+
+    /***
+     * Always true, nothing waits for a file.
+     */
+    public boolean fullSpeed() {
+        return true;
+    }
+}
@@ -16,7 +16,9 @@ import java.awt.Image;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionListener;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
 import java.awt.image.MemoryImageSource;
+import java.util.Arrays;
 
 import javax.swing.JPanel;
 
@@ -28,6 +30,7 @@ import com.dreamfabric.jac64.IMonitor;
 import com.dreamfabric.jac64.emu.bus.AddressableBus;
 import com.dreamfabric.jac64.emu.bus.AddressableChip;
 import com.dreamfabric.jac64.emu.bus.ControlBus;
+import com.dreamfabric.jac64.emu.bus.VicMemoryView;
 import com.dreamfabric.jac64.emu.cia.CIA1;
 import com.dreamfabric.jac64.emu.cia.CIA2;
 import com.dreamfabric.jac64.emu.cpu.MOS6510Core;
@@ -91,6 +94,7 @@ public class C64Screen extends AddressableChip implements VICIf, MouseMotionList
     private C64Canvas canvas;
 
     private int[] cbmcolor = VICConstants.COLOR_SETS[0];
+    private GlyphLookup glyphs = new GlyphLookup();
 
     // -------------------------------------------------------------------
     // VIC-II variables
@@ -127,6 +131,12 @@ public class C64Screen extends AddressableChip implements VICIf, MouseMotionList
 
     private int vicBaseAddress = 0;
     private boolean badLine = false;
+    // cycles of the current line with something to do, see buildSchedule()
+    private long schedule = -1L >>> 1;
+    private long syncSchedule = 1L << VICConstants.SCAN_RATE;
+    // runs every cycle of the visible lines, for the tests to check the
+    // schedule
+    boolean unscheduled = false;
     private int spr0BlockSel;
 
     // New type of position in video matrix - Video Counter (VIC II docs)
@@ -149,8 +159,9 @@ public class C64Screen extends AddressableChip implements VICIf, MouseMotionList
     boolean paintBorder = false;
     boolean paintSideBorder = false;
 
-    int borderColor = cbmcolor[0];
-    int bgColor = cbmcolor[1];
+    // colour indices
+    int borderColor = 0;
+    int bgColor = 1;
 
     private boolean extended = false;
     private boolean multiCol = false;
@@ -160,7 +171,13 @@ public class C64Screen extends AddressableChip implements VICIf, MouseMotionList
     int multiColor[] = new int[4];
 
     // 48 extra for the case of an expanded sprite byte
-    int collissionMask[] = new int[SC_WIDTH + 48];
+    // Bit masks over the pixels of the current line: the foreground graphics
+    // and the pixels painted by each sprite (for the collissions)
+    private static final int MASK_WORDS = (SC_WIDTH + 48 + 63) >> 6;
+    long foregroundMask[] = new long[MASK_WORDS];
+    long spriteMask[][] = new long[8][MASK_WORDS];
+    // true when a sprite has painted pixels on the current line
+    boolean spriteLine = false;
 
     Sprite sprites[] = new Sprite[8];
 
@@ -179,9 +196,26 @@ public class C64Screen extends AddressableChip implements VICIf, MouseMotionList
     public Image screen = null;
     private MemoryImageSource mis = null;
 
-    // The array to generate the screen in Extra rows for sprite clipping
-    // And for clipping when scrolling (smooth)
-    int mem[] = new int[SC_WIDTH * (SC_HEIGHT + 10)];
+    // The array to generate the screen in (one colour index per pixel). Extra
+    // rows for sprite clipping And for clipping when scrolling (smooth)
+    byte pixels[] = new byte[SC_WIDTH * (SC_HEIGHT + 10)];
+    // The ARGB frames, converted from pixels once per frame and handed over
+    // to the AWT thread which shows them in paint()
+    private TripleBuffer frames = new TripleBuffer(SC_WIDTH * SC_HEIGHT);
+    private FrameSink frameSink;
+
+    // Hashes of the painted lines and frames, to find out what has changed
+    // since the previous painted frame
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private long[] lineHashes = new long[SC_HEIGHT];
+    // lines changed so far in the frame being painted
+    private long[] dirtyLines = new long[(SC_HEIGHT + 63) >> 6];
+    // lines changed in the last completed frame
+    private long[] changedLines = new long[(SC_HEIGHT + 63) >> 6];
+    private long frameHash = FNV_OFFSET;
+    private int identicalFrames = 0;
+    private long identicalFrameTotal = 0;
 
     int rnd = 754;
     String message;
@@ -189,6 +223,14 @@ public class C64Screen extends AddressableChip implements VICIf, MouseMotionList
 
     int frame = 0;
     private boolean updating = false;
+
+    // Frame skip: the number of frames not painted after each painted one,
+    // or FRAME_SKIP_ALL. Skipped frames are emulated as usual (raster IRQs,
+    // bad lines, sprite DMA and collissions) but no pixels are written.
+    public static final int FRAME_SKIP_ALL = -1;
+    private int frameSkip = 0;
+    private int skippedFrames = 0;
+    private boolean paintFrame = true;
     boolean displayEnabled = true;
     boolean irqTriggered = false;
     long lastLine = 0;
@@ -202,6 +244,7 @@ public class C64Screen extends AddressableChip implements VICIf, MouseMotionList
     private boolean isrRunning = false;
 
     private AddressableBus addressableBus;
+    private VicMemoryView vicMemory;
     private ControlBus controlBus;
 
     public C64Screen(IMonitor m, boolean dob) {
@@ -229,11 +272,14 @@ public class C64Screen extends AddressableChip implements VICIf, MouseMotionList
 
     public void setAutoscale(boolean val) {
         DOUBLE = val;
-        canvas.setAutoscale(val);
+        if (canvas != null) {
+            canvas.setAutoscale(val);
+        }
     }
 
     public void setAddressableBus(AddressableBus addressableBus) {
         this.addressableBus = addressableBus;
+        vicMemory = addressableBus.getVicMemoryView();
     }
 
     private void makeColors(Color[] colors, Color c1, Color c2) {
@@ -254,19 +300,16 @@ public class C64Screen extends AddressableChip implements VICIf, MouseMotionList
 
     public void setColorSet(int c) {
         if (c >= 0 && c < VICConstants.COLOR_SETS.length) {
+            // colours are kept as indices, the next frame is converted with
+            // the new palette
             cbmcolor = VICConstants.COLOR_SETS[c];
-            borderColor = cbmcolor[bCol];
-            bgColor = cbmcolor[bgCol[0]];
-            for (int i = 0, n = 8; i < n; i++) {
-                sprites[i].color[0] = bgColor;
-                sprites[i].color[1] = cbmcolor[sprMC0];
-                sprites[i].color[3] = cbmcolor[sprMC1];
-            }
         }
     }
 
     public void setIntegerScaling(boolean yes) {
-        canvas.setIntegerScaling(yes);
+        if (canvas != null) {
+            canvas.setIntegerScaling(yes);
+        }
     }
 
     public JPanel getScreen() {
@@ -311,6 +354,14 @@ public class C64Screen extends AddressableChip implements VICIf, MouseMotionList
     }
 
     public void init(ControlBus controlBus) {
+        init(controlBus, true);
+    }
+
+    /***
+     * Initializes the VIC, with display false there is no canvas (and no AWT
+     * at all), frames are only handed to the frame sink.
+     */
+    public void init(ControlBus controlBus, boolean display) {
         this.controlBus = controlBus;
 
         for (int i = 0, n = sprites.length; i < n; i++) {
@@ -318,18 +369,23 @@ public class C64Screen extends AddressableChip implements VICIf, MouseMotionList
             sprites[i].spriteNo = i;
         }
 
-        canvas = new C64Canvas(this, DOUBLE, controlBus);
-        canvas.addMouseMotionListener(this);
-
         for (int i = 0; i < SC_WIDTH * SC_HEIGHT; i++) {
-            mem[i] = cbmcolor[6];
+            pixels[i] = 6;
         }
 
-        mis = new MemoryImageSource(SC_WIDTH, SC_HEIGHT, mem, 0, SC_WIDTH);
+        if (display) {
+            canvas = new C64Canvas(this, DOUBLE, controlBus);
+            canvas.addMouseMotionListener(this);
+
+            convertFrame();
+            frames.takeLatest();
 
-        mis.setAnimated(true);
-        mis.setFullBufferUpdates(true);
-        screen = canvas.createImage(mis);
+            mis = new MemoryImageSource(SC_WIDTH, SC_HEIGHT, frames.getFrontFrame(), 0, SC_WIDTH);
+
+            mis.setAnimated(true);
+            mis.setFullBufferUpdates(true);
+            screen = canvas.createImage(mis);
+        }
 
         // to fix bug
         // http://developer.java.sun.com/developer/bugParade/bugs/4464723.html
@@ -356,16 +412,16 @@ public class C64Screen extends AddressableChip implements VICIf, MouseMotionList
     };
 
     @Override
-    public Integer read(int address, long currentCpuCycles) {
+    public int read(int address, long currentCpuCycles) {
 
         // dX00 => and address
         // d000 - d3ff => &d063
         int pos = (address >> 8) & 0xf;
         int originalAddress = address;
 
-        Integer result = super.read(address, currentCpuCycles);
-        if (result == null) {
-            return null;
+        int result = super.read(address, currentCpuCycles);
+        if (result == NOT_READABLE) {
+            return NOT_READABLE;
         }
 
         // monitor.info("Address before: " + address);
@@ -476,6 +532,9 @@ public class C64Screen extends AddressableChip implements VICIf, MouseMotionList
         int originalAddress = address;
         address = address & IO_ADDRAND[pos];
 
+        // the pixels recorded so far were made with the old register values
+        flushLine();
+
         switch (address) {
             // -------------------------------------------------------------------
             // VIC related
@@ -526,6 +585,7 @@ public class C64Screen extends AddressableChip implements VICIf, MouseMotionList
                     if (oldBadLine != badLine) {
                         LOGGER.debug("#### BadLC diff@" + vbeam + " => " + badLine + " vScroll: " + vScroll + " vmli: "
                                 + vmli + " vc: " + vc + " rc: " + rc);
+                        buildSchedule();
                     }
                 }
 
@@ -560,6 +620,7 @@ public class C64Screen extends AddressableChip implements VICIf, MouseMotionList
                 for (int i = 0, m = 1, n = 8; i < n; i++, m = m << 1) {
                     sprites[i].enabled = (data & m) != 0;
                 }
+                buildSchedule();
                 // System.out.println("Setting sprite enable to " + data);
 
                 break;
@@ -635,12 +696,14 @@ public class C64Screen extends AddressableChip implements VICIf, MouseMotionList
             case 0xd01c:
                 sprMul = data;
                 for (int i = 0, m = 1, n = 8; i < n; i++, m = m << 1) {
+                    sprites[i].endSpan();
                     sprites[i].multicolor = (data & m) != 0;
                 }
                 break;
             case 0xd01d:
                 sprXEX = data;
                 for (int i = 0, m = 1, n = 8; i < n; i++, m = m << 1) {
+                    sprites[i].endSpan();
                     sprites[i].expandX = (data & m) != 0;
                 }
                 break;
@@ -651,10 +714,11 @@ public class C64Screen extends AddressableChip implements VICIf, MouseMotionList
                 sprBgCol = data;
                 break;
             case 0xd020:
-                borderColor = cbmcolor[bCol = data & 15];
+                borderColor = bCol = data & 15;
                 break;
             case 0xd021:
-                bgColor = cbmcolor[bgCol[0] = data & 15];
+                bgColor = bgCol[0] = data & 15;
+                glyphs.setBackgroundColor(0, bgCol[0]);
                 for (int i = 0, n = 8; i < n; i++) {
                     sprites[i].color[0] = bgColor;
                 }
@@ -663,17 +727,18 @@ public class C64Screen extends AddressableChip implements VICIf, MouseMotionList
             case 0xd023:
             case 0xd024:
                 bgCol[address - 0xd021] = data & 15;
+                glyphs.setBackgroundColor(address - 0xd021, data & 15);
                 break;
             case 0xd025:
                 sprMC0 = data & 15;
                 for (int i = 0, n = 8; i < n; i++) {
-                    sprites[i].color[1] = cbmcolor[sprMC0];
+                    sprites[i].color[1] = sprMC0;
                 }
                 break;
             case 0xd026:
                 sprMC1 = data & 15;
                 for (int i = 0, n = 8; i < n; i++) {
-                    sprites[i].color[3] = cbmcolor[sprMC1];
+                    sprites[i].color[3] = sprMC1;
                 }
                 break;
             case 0xd027:
@@ -684,7 +749,7 @@ public class C64Screen extends AddressableChip implements VICIf, MouseMotionList
             case 0xd02c:
             case 0xd02d:
             case 0xd02e:
-                sprites[address - 0xd027].color[2] = cbmcolor[data & 15];
+                sprites[address - 0xd027].color[2] = data & 15;
                 sprites[address - 0xd027].col = data & 15;
                 // System.out.println("Sprite " + (address - 0xd027) + " color set to: " + (data
                 // & 15));
@@ -711,23 +776,35 @@ public class C64Screen extends AddressableChip implements VICIf, MouseMotionList
         vmli = 0;
         // rc = 0;
         updating = true;
+        if (frameSkip == FRAME_SKIP_ALL) {
+            paintFrame = false;
+        } else if (skippedFrames >= frameSkip) {
+            paintFrame = true;
+            skippedFrames = 0;
+        } else {
+            paintFrame = false;
+            skippedFrames++;
+        }
 
         // // First rendered line will start at cpu.cycles - no at next_scan!
         // firstLine = nextScanLine;
 
         for (int i = 0; i < 8; i++) {
             sprites[i].nextByte = 0;
+            sprites[i].endSpan();
             sprites[i].painting = false;
             sprites[i].spriteReg = 0;
         }
 
-        if (colors == null) {
-            colors = new Color[16];
-            for (int i = 0; i < 16; i++) {
-                colors[i] = new Color(cbmcolor[i]);
+        if (canvas != null) {
+            if (colors == null) {
+                colors = new Color[16];
+                for (int i = 0; i < 16; i++) {
+                    colors[i] = new Color(cbmcolor[i]);
+                }
             }
+            canvas.setBackground(colors[bCol & 15]);
         }
-        canvas.setBackground(colors[bCol & 15]);
     }
 
     // -------------------------------------------------------------------
@@ -739,10 +816,226 @@ public class C64Screen extends AddressableChip implements VICIf, MouseMotionList
     private int xPos = 0;
     private long lastCycle = 0;
 
+    // Line rendering: the memory fetches are still made on each cycle, but
+    // painting the pixels is only recorded and done for the whole line at
+    // its end. Before anything that depends on the pixels (sprites) or that
+    // changes how they are painted (register writes) the recorded part of the
+    // line is painted, so the result is the same as painting on each cycle.
+    private static final int OP_BACKGROUND = 0;
+    private static final int OP_GRAPHICS = 1;
+    private static final int MAX_LINE_OPS = VICConstants.SCAN_RATE * 2;
+    private boolean lineRendering = false;
+    private int lineOps = 0;
+    private int[] opType = new int[MAX_LINE_OPS];
+    private int[] opPos = new int[MAX_LINE_OPS];
+    private int[] opBorderState = new int[MAX_LINE_OPS];
+    private int[] opScroll = new int[MAX_LINE_OPS];
+    private int[] opVmli = new int[MAX_LINE_OPS];
+    private int[] opData = new int[MAX_LINE_OPS];
+    private int[] opChar = new int[MAX_LINE_OPS];
+    private int[] opColor = new int[MAX_LINE_OPS];
+    private boolean[] opBorder = new boolean[MAX_LINE_OPS];
+
+    /***
+     * Switches between painting eight pixels on every cycle (the default) and
+     * painting each raster line in one go at its end.
+     */
+    public void setLineRendering(boolean lineRendering) {
+        flushLine();
+        this.lineRendering = lineRendering;
+    }
+
+    public boolean isLineRendering() {
+        return lineRendering;
+    }
+
+    /***
+     * Sets the number of frames to skip after each painted frame (0 paints
+     * all of them), or FRAME_SKIP_ALL to paint none. Used from the next frame
+     * on.
+     */
+    public void setFrameSkip(int frameSkip) {
+        if (frameSkip < FRAME_SKIP_ALL) {
+            throw new IllegalArgumentException("Illegal frame skip: " + frameSkip);
+        }
+        this.frameSkip = frameSkip;
+        skippedFrames = 0;
+    }
+
+    public int getFrameSkip() {
+        return frameSkip;
+    }
+
+    /***
+     * Sets the sink that gets every painted frame, null for none.
+     */
+    public void setFrameSink(FrameSink frameSink) {
+        this.frameSink = frameSink;
+    }
+
+    public FrameSink getFrameSink() {
+        return frameSink;
+    }
+
+    /***
+     * Returns the hash of the last completed (painted) frame.
+     */
+    public long getFrameHash() {
+        return frameHash;
+    }
+
+    /***
+     * Returns true if the line was changed in the last completed frame,
+     * compared to the frame painted before it.
+     */
+    public boolean isLineChanged(int line) {
+        return (changedLines[line >> 6] & (1L << line)) != 0;
+    }
+
+    /***
+     * Returns the lines changed in the last completed frame as ranges, first
+     * line and the line after the last one of each range: { first0, end0,
+     * first1, end1, ... }.
+     */
+    public int[] getChangedLineRanges() {
+        int[] ranges = new int[SC_HEIGHT + 1];
+        int count = 0;
+        int line = 0;
+        while (line < SC_HEIGHT) {
+            if (isLineChanged(line)) {
+                ranges[count++] = line;
+                while (line < SC_HEIGHT && isLineChanged(line)) {
+                    line++;
+                }
+                ranges[count++] = line;
+            } else {
+                line++;
+            }
+        }
+        return Arrays.copyOf(ranges, count);
+    }
+
+    /***
+     * Returns the number of completed frames in a row that were identical to
+     * the frame before them.
+     */
+    public int getIdenticalFrames() {
+        return identicalFrames;
+    }
+
+    /***
+     * Returns the number of completed frames identical to the frame before
+     * them since the VIC was started.
+     */
+    public long getIdenticalFrameTotal() {
+        return identicalFrameTotal;
+    }
+
+    /***
+     * Works out the cycles of the current line at which the VIC has something
+     * to do (schedule), and the ones at which the CPU has to catch up with it
+     * since BA may be pulled low (syncSchedule). Bit n is cycle n of the line.
+     * Both depend on the sprite DMA, the bad line and the sprite enable, and
+     * are rebuilt at the start of the line and whenever one of them changes.
+     */
+    private void buildSchedule() {
+        // IRQs are raised at the start of a line, BA is pulled low for the
+        // sprite DMA and on bad lines. Nothing else is visible to the CPU
+        // unless it accesses the VIC.
+        // Every cycle at which clock() calls setCpuBALowUntil() must have its
+        // bit here, else the CPU runs past it. clock() pulls no BA for sprite
+        // 4 (VICConstants.BA_SP4 is unused), so there is no bit for it; one
+        // has to be added together with such a pull. C64ScreenTest checks
+        // this.
+        long sync = 1L << VICConstants.SCAN_RATE;
+        if (sprites[5].dma) {
+            sync |= 1L << 1;
+        }
+        if (sprites[6].dma) {
+            sync |= 1L << 3;
+        }
+        if (sprites[7].dma) {
+            sync |= 1L << 5;
+        }
+        if (badLine) {
+            sync |= 1L << 11 | 1L << 55;
+        }
+        if (badLine || sprEN != 0 || sprites[0].dma) {
+            sync |= 1L << 54;
+        }
+        if (sprites[1].dma) {
+            sync |= 1L << 56;
+        }
+        if (sprites[2].dma) {
+            sync |= 1L << 57;
+        }
+        if (sprites[3].dma) {
+            sync |= 1L << 61;
+        }
+        syncSchedule = sync;
+
+        if (notVisible) {
+            // nothing happens on a not visible line before its end
+            schedule = 1L | 1L << 62;
+            return;
+        }
+        if (unscheduled) {
+            schedule = -1L >>> 1;
+            return;
+        }
+        // the start and the end of the line, the border and everything from
+        // the first visible cycle on
+        long work = 1L | 1L << 9 | -1L << 12 & ~(1L << 63);
+        if (sprites[3].dma || sprites[5].dma) {
+            work |= 1L << 1;
+        }
+        if (sprites[4].dma || sprites[6].dma) {
+            work |= 1L << 3;
+        }
+        if (sprites[5].dma || sprites[7].dma) {
+            work |= 1L << 5;
+        }
+        if (sprites[6].dma) {
+            work |= 1L << 7;
+        }
+        if (badLine) {
+            work |= 1L << 11;
+        }
+        schedule = work;
+    }
+
+    @Override
+    public void clock(long fromCpuCycles, long toCpuCycles) {
+        for (long cycle = fromCpuCycles; cycle <= toCpuCycles; cycle++) {
+            int vicCycle = (int) (cycle - lastLine);
+            if (vicCycle >= 0 && vicCycle < 63) {
+                // jump to the next cycle with something to do
+                cycle = lastLine + Long.numberOfTrailingZeros(schedule & (-1L << vicCycle));
+                if (cycle > toCpuCycles) {
+                    return;
+                }
+            }
+            clock(cycle);
+        }
+    }
+
+    @Override
+    public long getNextSyncCycle(long currentCpuCycles) {
+        // Cycles into the current raster line, -1 just after its end
+        int vicCycle = (int) (currentCpuCycles - lastLine);
+        if (vicCycle < 0) {
+            return lastLine;
+        }
+        if (vicCycle >= VICConstants.SCAN_RATE) {
+            return lastLine + VICConstants.SCAN_RATE;
+        }
+        return lastLine + Long.numberOfTrailingZeros(syncSchedule & (-1L << (vicCycle + 1)));
+    }
+
     @Override
     public void clock(long currentCpuCycles) {
 
-        if (lastCycle + 1 < currentCpuCycles) {
+        if (LOGGER.isDebugEnabled() && lastCycle + 1 < currentCpuCycles) {
             LOGGER.debug("More than one cycle passed: " + (currentCpuCycles - lastCycle) + " at " + currentCpuCycles);
 
             if (lastCycle == currentCpuCycles) {
@@ -755,9 +1048,9 @@ public class C64Screen extends AddressableChip implements VICIf, MouseMotionList
         // Delta is cycles into the current raster line!
         int vicCycle = (int) (currentCpuCycles - lastLine);
 
-        if (notVisible) {
-            if (vicCycle < 62)
-                return;
+        if (vicCycle >= 0 && vicCycle < 63 && (schedule & (1L << vicCycle)) == 0) {
+            // nothing to do in this cycle
+            return;
         }
 
         // Each cycle is 8 pixels (a byte)
@@ -819,6 +1112,7 @@ public class C64Screen extends AddressableChip implements VICIf, MouseMotionList
                 if (vPos < 0 || vPos >= 284) {
                     controlBus.setCpuBALowUntil(0);
                     notVisible = true;
+                    buildSchedule();
                     LOGGER.debug("FINISH next at " + vbeam);
                     // Jump directly to VS_FINISH and wait for end of line...
                     break;
@@ -837,9 +1131,16 @@ public class C64Screen extends AddressableChip implements VICIf, MouseMotionList
                 badLine = (displayEnabled && vbeam >= 0x30 && vbeam <= 0xf7) && (vbeam & 0x7) == vScroll;
 
                 // Clear the collission masks each line... - not needed???
-                for (int i = 0, n = SC_WIDTH; i < n; i++) {
-                    collissionMask[i] = 0;
+                for (int i = 0, n = SC_WIDTH >> 6; i < n; i++) {
+                    foregroundMask[i] = 0;
+                    if (spriteLine) {
+                        for (int j = 0; j < 8; j++) {
+                            spriteMask[j][i] = 0;
+                        }
+                    }
                 }
+                spriteLine = false;
+                buildSchedule();
                 break;
             case 1: // Sprite data - sprite 3
                 if (sprites[3].dma) {
@@ -902,6 +1203,7 @@ public class C64Screen extends AddressableChip implements VICIf, MouseMotionList
                         // Reset sprite data to avoid garbage since they are not painted...
                         for (int i = 0, n = 7; i < n; i++) {
                             if (!sprites[i].painting) {
+                                sprites[i].endSpan();
                                 sprites[i].lineFinished = true;
                             }
                         }
@@ -913,8 +1215,10 @@ public class C64Screen extends AddressableChip implements VICIf, MouseMotionList
 
                     // Reset sprite data to avoid garbage since they are not painted...
                     for (int i = 0, n = 7; i < n; i++) {
-                        if (!sprites[i].painting)
+                        if (!sprites[i].painting) {
+                            sprites[i].endSpan();
                             sprites[i].lineFinished = true;
+                        }
                     }
                 }
                 break;
@@ -971,6 +1275,7 @@ public class C64Screen extends AddressableChip implements VICIf, MouseMotionList
                     if (sprites[i].nextByte == 63)
                         sprites[i].dma = false;
                 }
+                buildSchedule();
 
                 break;
             case 16:
@@ -1054,6 +1359,7 @@ public class C64Screen extends AddressableChip implements VICIf, MouseMotionList
                     }
                     mult = mult << 1;
                 }
+                buildSchedule();
                 if (sprites[0].dma) {
                     controlBus.setCpuBALowUntil(lastLine + VICConstants.BA_SP0);
                 }
@@ -1172,6 +1478,7 @@ public class C64Screen extends AddressableChip implements VICIf, MouseMotionList
                 }
                 break;
             case 62:
+                flushLine();
                 // Should this be made??? or should sprite 0 be repaintable
                 // same line?
                 // Reset sprites so that they can be repainted again...
@@ -1179,11 +1486,22 @@ public class C64Screen extends AddressableChip implements VICIf, MouseMotionList
                     sprites[i].reset();
                 }
                 lastLine += VICConstants.SCAN_RATE;
+                if (!notVisible && paintFrame) {
+                    hashLine(vPos);
+                }
                 // Update screen
                 if (updating) {
                     if (vPos == 285) {
-                        mis.newPixels();
-                        canvas.repaint();
+                        if (paintFrame) {
+                            completeFrameHash();
+                            if (frameSink != null) {
+                                frameSink.frameCompleted(frame, currentCpuCycles, pixels, cbmcolor.clone());
+                            }
+                            if (canvas != null) {
+                                convertFrame();
+                                canvas.repaint();
+                            }
+                        }
                         updating = false;
                     }
                 }
@@ -1195,16 +1513,33 @@ public class C64Screen extends AddressableChip implements VICIf, MouseMotionList
     // Used to draw background where either border or background should be
     // painted...
     private void drawBackground() {
-        int bpos = mpos;
+        if (!paintFrame) {
+            return;
+        }
+        if (lineRendering) {
+            int op = lineOps++;
+            opType[op] = OP_BACKGROUND;
+            opPos[op] = mpos;
+            opBorderState[op] = borderState;
+        } else {
+            paintBackground(mpos, borderState);
+        }
+    }
+
+    private void paintBackground(int bpos, int borderState) {
+        if (!paintFrame) {
+            return;
+        }
         int currentBg = borderState > 0 ? borderColor : bgColor;
         for (int i = 0; i < 8; i++) {
-            mem[bpos++] = currentBg;
+            pixels[bpos++] = (byte) currentBg;
         }
     }
 
     /**
-     * <code>drawGraphics</code> - draw the VIC graphics (text/bitmap) Note that
-     * sprites are not drawn here... (yet?)
+     * <code>drawGraphics</code> - fetches the VIC graphics (text/bitmap) for
+     * the current cycle and paints them, or records them when painting whole
+     * lines. Note that sprites are not drawn here... (yet?)
      *
      *
      * @param mpos
@@ -1212,16 +1547,94 @@ public class C64Screen extends AddressableChip implements VICIf, MouseMotionList
      *            graphics from (already fixed with hscroll)
      */
     private final void drawGraphics(int mpos) {
-        if (!gfxVisible || paintBorder || (borderState & 1) == 1) {
+        boolean border = !gfxVisible || paintBorder || (borderState & 1) == 1;
+        int data = 0;
+        if (!border) {
+            // position is an starting address (i.e. in Character ROM) of the
+            // character glyphs data. Each character has 8 bytes data.
+            // https://www.c64-wiki.com/wiki/Character_set#Character_sequence
+            int position;
+            if ((control1 & 0x20) == 0) {
+                if (extended) {
+                    position = charSetBaseAddress + ((vicCharCache[vmli] & 0x3f) << 3);
+                } else {
+                    position = charSetBaseAddress + (vicCharCache[vmli] << 3);
+                }
+                // rc is the row offset for the character that is drawn. RC = 0...7
+                position += rc;
+            } else {
+                position = vicBaseAddress + (vc & 0x3ff) * 8 + rc;
+            }
+            data = getMemory(position);
+        }
+
+        if (lineRendering) {
+            int op = lineOps++;
+            opType[op] = OP_GRAPHICS;
+            opPos[op] = mpos;
+            opBorder[op] = border;
+            opBorderState[op] = borderState;
+            opScroll[op] = horizScroll;
+            opVmli[op] = vmli;
+            opData[op] = data;
+            opChar[op] = vicCharCache[vmli];
+            opColor[op] = vicColCache[vmli];
+        } else {
+            paintGraphics(mpos, border, borderState, horizScroll, vmli, data, vicCharCache[vmli], vicColCache[vmli]);
+        }
+
+        if (!border) {
+            vc++;
+        }
+        // trick to use vmli as a if var even when no gfx.
+        vmli++;
+    }
+
+    /***
+     * Paints everything recorded for the current line so far.
+     */
+    private void flushLine() {
+        for (int op = 0; op < lineOps; op++) {
+            if (opType[op] == OP_BACKGROUND) {
+                paintBackground(opPos[op], opBorderState[op]);
+            } else {
+                paintGraphics(opPos[op], opBorder[op], opBorderState[op], opScroll[op], opVmli[op], opData[op],
+                        opChar[op], opColor[op]);
+            }
+        }
+        lineOps = 0;
+    }
+
+    /**
+     * <code>paintGraphics</code> - paints the eight pixels of the VIC graphics
+     * (text/bitmap) fetched by {@link #drawGraphics(int)}.
+     *
+     * @param mpos
+     *            position to draw the graphics from (already fixed with
+     *            hscroll)
+     * @param border
+     *            true when the border (or background) is painted instead of
+     *            graphics
+     */
+    private final void paintGraphics(int mpos, boolean border, int borderState, int horizScroll, int vmli, int data,
+            int charCode, int colorCode) {
+        if (!paintFrame) {
+            if (!border) {
+                // only the foreground for the collissions
+                boolean multicolorData = multiCol && ((control1 & 0x20) != 0 || (colorCode & 15) > 7);
+                setForeground((vmli << 3) + horizScroll + SC_XOFFS,
+                        multicolorData ? GlyphLookup.MULTICOLOR_FOREGROUND[data] : GlyphLookup.HIRES_FOREGROUND[data]);
+            }
+            return;
+        }
+        if (border) {
             // We know that display is not enabled, and that mpos is already
             // at a correct place, except horizScroll...
             mpos -= horizScroll;
             int color = (paintBorder || (borderState > 0)) ? borderColor : bgColor;
             for (int i = mpos, n = mpos + 8; i < n; i++) {
-                mem[i] = color;
+                pixels[i] = (byte) color;
             }
-            // trick to use vmli as a if var even when no gfx.
-            vmli++;
             return;
         }
 
@@ -1230,69 +1643,31 @@ public class C64Screen extends AddressableChip implements VICIf, MouseMotionList
         // Paint background if first col (should maybe be made later also...)
         if (vmli == 0) {
             for (int i = mpos - horizScroll, n = i + 8; i < n; i++) {
-                mem[i] = bgColor;
+                pixels[i] = (byte) bgColor;
             }
         }
 
-        // position is an starting address (i.e. in Character ROM) of the character
-        // glyphs data. Each character has 8 bytes data.
-        // https://www.c64-wiki.com/wiki/Character_set#Character_sequence
-        int position = 0;
-        int data = 0, penColor = 0, bgcol = bgColor;
+        int dataPos = data << 3;
 
         if ((control1 & 0x20) == 0) {
             // here we have a text mode
-            int tmp;
-            int pcol;
-
-            // This should be in a cache some where...
-            if (multiCol) {
-                multiColor[0] = bgColor;
-                multiColor[1] = cbmcolor[bgCol[1]];
-                multiColor[2] = cbmcolor[bgCol[2]];
-            }
-
-            penColor = cbmcolor[pcol = vicColCache[vmli] & 15];
-            if (extended) {
-                position = charSetBaseAddress + (((data = vicCharCache[vmli]) & 0x3f) << 3);
-                bgcol = cbmcolor[bgCol[(data >> 6)]];
-            } else {
-                position = charSetBaseAddress + (vicCharCache[vmli] << 3);
-            }
-
-            // rc is the row offset for the character that is drawn. RC = 0...7
-            data = getMemory(position + rc); // data should contain the specific value for a specific character
+            int pcol = colorCode & 15;
 
             if (multiCol && pcol > 7) {
-                multiColor[3] = cbmcolor[pcol & 7];
-                for (int pix = 0; pix < 8; pix += 2) {
-                    tmp = (data >> pix) & 3;
-                    mem[mpos + 6 - pix] = mem[mpos + 7 - pix] = multiColor[tmp];
-                    // both 00 and 01 => no collission!?
-                    // but what about priority?
-                    if (tmp > 0x01) {
-                        tmp = 256;
-                    } else {
-                        tmp = 0;
-                    }
-                    collissionMask[collX + 7 - pix] = collissionMask[collX + 6 - pix] = tmp;
-                }
+                System.arraycopy(glyphs.getMulticolorText(pcol & 7), dataPos, pixels, mpos, 8);
+                // both 00 and 01 => no collission!?
+                // but what about priority?
+                setForeground(collX, GlyphLookup.MULTICOLOR_FOREGROUND[data]);
             } else {
-                for (int pix = 0; pix < 8; pix++) {
-                    if ((data & (1 << pix)) > 0) {
-                        mem[mpos + 7 - pix] = penColor;
-                        collissionMask[collX + 7 - pix] = 256;
-                    } else {
-                        mem[mpos + 7 - pix] = bgcol;
-                        collissionMask[collX + 7 - pix] = 0;
-                    }
-                }
+                byte[] row = extended ? glyphs.getExtendedText(charCode >> 6, pcol) : glyphs.getText(pcol);
+                System.arraycopy(row, dataPos, pixels, mpos, 8);
+                setForeground(collX, GlyphLookup.HIRES_FOREGROUND[data]);
             }
 
             if (multiCol && extended) {
                 // Illegal mode => all black!
                 for (int pix = 0; pix < 8; pix++) {
-                    mem[mpos + 7 - pix] = 0xff000000;
+                    pixels[mpos + 7 - pix] = 0;
                 }
             }
 
@@ -1305,49 +1680,27 @@ public class C64Screen extends AddressableChip implements VICIf, MouseMotionList
             // -------------------------------------------------------------------
             // Bitmap mode!
             // -------------------------------------------------------------------
-            position = vicBaseAddress + (vc & 0x3ff) * 8 + rc;
             if (multiCol) {
                 multiColor[0] = bgColor;
-            }
-            int vmliData = vicCharCache[vmli];
-            penColor = cbmcolor[(vmliData & 0xf0) >> 4];
-            bgcol = cbmcolor[vmliData & 0x0f];
-
-            data = getMemory(position);
-
-            if (multiCol) {
-                multiColor[1] = cbmcolor[(vmliData >> 4) & 0x0f];
-                multiColor[2] = cbmcolor[vmliData & 0x0f];
-                multiColor[3] = cbmcolor[vicColCache[vmli] & 0x0f];
+                multiColor[1] = (charCode >> 4) & 0x0f;
+                multiColor[2] = charCode & 0x0f;
+                multiColor[3] = colorCode & 0x0f;
 
                 // Multicolor
-                int tmp;
-                for (int pix = 0; pix < 8; pix += 2) {
-                    mem[mpos + 6 - pix] = mem[mpos + 7 - pix] = multiColor[tmp = (data >> pix) & 3];
-                    if (tmp > 0x01) {
-                        tmp = 256;
-                    } else {
-                        tmp = 0;
-                    }
-                    collissionMask[collX + 7 - pix] = collissionMask[collX + 6 - pix] = tmp;
+                for (int pix = 0; pix < 8; pix++) {
+                    pixels[mpos + pix] = (byte) multiColor[GlyphLookup.MULTICOLOR_PIXELS[dataPos + pix]];
                 }
+                setForeground(collX, GlyphLookup.MULTICOLOR_FOREGROUND[data]);
             } else {
                 // Non multicolor
-                for (int pix = 0; pix < 8; pix++) {
-                    if ((data & (1 << pix)) > 0) {
-                        mem[7 - pix + mpos] = penColor;
-                        collissionMask[collX + 7 - pix] = 256;
-                    } else {
-                        mem[7 - pix + mpos] = bgcol;
-                        collissionMask[collX + 7 - pix] = 0;
-                    }
-                }
+                System.arraycopy(glyphs.getBitmap(charCode & 0xff), dataPos, pixels, mpos, 8);
+                setForeground(collX, GlyphLookup.HIRES_FOREGROUND[data]);
             }
 
             if (extended) {
                 // Illegal mode => all black!
                 for (int pix = 0; pix < 8; pix++) {
-                    mem[mpos + 7 - pix] = 0xff000000;
+                    pixels[mpos + 7 - pix] = 0;
                 }
             }
 
@@ -1357,14 +1710,21 @@ public class C64Screen extends AddressableChip implements VICIf, MouseMotionList
             // }
             // }
         }
-        vc++;
-        vmli++;
     }
 
     // -------------------------------------------------------------------
     // Sprites...
     // -------------------------------------------------------------------
     private final void drawSprites() {
+        if (!isSpritePainting()) {
+            // no sprite on this part of the line
+            xPos += 8;
+            return;
+        }
+        if (lineRendering) {
+            flushLine();
+        }
+
         int smult = 0x100;
         int lastX = xPos - 8;
 
@@ -1376,57 +1736,139 @@ public class C64Screen extends AddressableChip implements VICIf, MouseMotionList
                 continue;
             }
             int x = sprite.x + SC_SPXOFFS; // 0 in sprite x => xPos = 8
-            int mpos = vPos * SC_WIDTH;
 
             if (x < xPos) {
                 // Ok, we should write some data...
                 int minX = lastX > x ? lastX : x;
-                // if (i == 0) monitor.info("Writing sprite " + i + " first pixel at " +
-                // minX + " vPos = " + vPos);
-
-                for (int j = minX, m = xPos; j < m; j++) {
-                    int c = sprite.getPixel();
-                    if (c != 0 && borderState == 0) {
-                        int tmp = (collissionMask[j] |= smult);
-                        if (!sprite.priority || (tmp & 0x100) == 0) {
-                            mem[mpos + j] = sprite.color[c];
-                        }
-
-                        if (tmp != smult) {
-                            // If collission with bg then notice!
-                            if ((tmp & 0x100) != 0) {
-                                sprBgCol |= smult;
-                                // monitor.info("***** Sprite x Bkg collission!");
-                            }
-                            // If collission with sprite, all colls must
-                            // be registered!
-                            if ((tmp & 0xff) != smult) {
-                                sprCol |= tmp & 0xff;
-                                // monitor.info("***** Sprite x Sprite collission: d01e = " +
-                                // sprCol + " sprite: " + i + " => " +
-                                // smult + " at " + j + "," + vbeam);
-                            }
-                        }
+                int n = xPos - minX;
+                long bits = sprite.takePixels(n);
+                int spanPos = sprite.spanPos - n;
+                if (bits == 0 || borderState != 0) {
+                    continue;
+                }
+
+                long foreground = getBits(foregroundMask, minX, n);
+                if ((bits & foreground) != 0) {
+                    // If collission with bg then notice!
+                    sprBgCol |= smult;
+                }
+                // If collission with sprite, all colls must be registered!
+                for (int j = 0; j < 8; j++) {
+                    if (j != i && (getBits(spriteMask[j], minX, n) & bits) != 0) {
+                        sprCol |= smult | (1 << j);
                     }
+                }
+                setBits(spriteMask[i], minX, n, getBits(spriteMask[i], minX, n) | bits);
+                spriteLine = true;
 
-                    // if (SPRITEDEBUG) {
-                    // if ((sprite.nextByte == 3) && ((j & 4) == 0)) {
-                    // mem[mpos + j] = 0xff00ff00;
-                    // }
-                    // if ((sprite.nextByte == 63) && ((j & 4) == 0)) {
-                    // mem[mpos + j] = 0xffff0000;
-                    // }
-                    //
-                    // if (j == x) {
-                    // mem[mpos + j] = 0xff000000 + sprite.pointer;
-                    // }
-                    // }
+                if (!paintFrame) {
+                    continue;
+                }
+                if (sprite.priority) {
+                    bits &= ~foreground;
+                }
+                int mpos = vPos * SC_WIDTH + minX;
+                while (bits != 0) {
+                    int pix = Long.numberOfTrailingZeros(bits);
+                    pixels[mpos + pix] = (byte) sprite.color[sprite.span[spanPos + pix]];
+                    bits &= bits - 1;
                 }
             }
         }
         xPos += 8;
     }
 
+    /***
+     * Sets the foreground pixels of eight pixels of graphics. As the graphics
+     * replace whatever was painted at these pixels before, so do they in the
+     * sprite masks.
+     */
+    private void setForeground(int collX, int bits) {
+        setBits(foregroundMask, collX, 8, bits);
+        if (spriteLine) {
+            for (int i = 0; i < 8; i++) {
+                setBits(spriteMask[i], collX, 8, 0);
+            }
+        }
+    }
+
+    // returns n (up to 57) bits from the mask starting at pos
+    private static long getBits(long[] mask, int pos, int n) {
+        int word = pos >> 6;
+        int shift = pos & 63;
+        long bits = mask[word] >>> shift;
+        if (shift + n > 64) {
+            bits |= mask[word + 1] << (64 - shift);
+        }
+        return bits & ((1L << n) - 1);
+    }
+
+    // replaces n (up to 57) bits of the mask starting at pos
+    private static void setBits(long[] mask, int pos, int n, long bits) {
+        int word = pos >> 6;
+        int shift = pos & 63;
+        long m = (1L << n) - 1;
+        mask[word] = (mask[word] & ~(m << shift)) | (bits << shift);
+        if (shift + n > 64) {
+            int s = 64 - shift;
+            mask[word + 1] = (mask[word + 1] & ~(m >>> s)) | (bits >>> s);
+        }
+    }
+
+    private void hashLine(int line) {
+        long hash = FNV_OFFSET;
+        for (int i = line * SC_WIDTH, n = i + SC_WIDTH; i < n; i++) {
+            hash = (hash ^ pixels[i]) * FNV_PRIME;
+        }
+        if (hash != lineHashes[line]) {
+            lineHashes[line] = hash;
+            dirtyLines[line >> 6] |= 1L << line;
+        }
+    }
+
+    private void completeFrameHash() {
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < SC_HEIGHT; i++) {
+            hash = (hash ^ lineHashes[i]) * FNV_PRIME;
+        }
+        frameHash = hash;
+
+        boolean changed = false;
+        for (int i = 0; i < dirtyLines.length; i++) {
+            changed |= dirtyLines[i] != 0;
+            changedLines[i] = dirtyLines[i];
+            dirtyLines[i] = 0;
+        }
+        if (changed) {
+            identicalFrames = 0;
+        } else {
+            identicalFrames++;
+            identicalFrameTotal++;
+        }
+    }
+
+    /***
+     * Converts the colour indices of the frame into ARGB with the current
+     * palette and publishes it to be shown.
+     */
+    private void convertFrame() {
+        int[] palette = cbmcolor;
+        int[] argb = frames.getBackFrame();
+        for (int i = 0, n = SC_WIDTH * SC_HEIGHT; i < n; i++) {
+            argb[i] = palette[pixels[i]];
+        }
+        frames.publish();
+    }
+
+    private boolean isSpritePainting() {
+        for (int i = 0; i < 8; i++) {
+            if (sprites[i].painting && !sprites[i].lineFinished) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public void stop() {
     }
 
@@ -1434,9 +1876,10 @@ public class C64Screen extends AddressableChip implements VICIf, MouseMotionList
         // Clear a lot of stuff...???
         initUpdate();
         lastLine = 0;
+        lineOps = 0;
 
-        for (int i = 0; i < mem.length; i++)
-            mem[i] = 0;
+        for (int i = 0; i < pixels.length; i++)
+            pixels[i] = 0;
         reset = 100;
 
         sprCol = 0;
@@ -1473,6 +1916,10 @@ public class C64Screen extends AddressableChip implements VICIf, MouseMotionList
             }
         }
 
+        if (frames.takeLatest()) {
+            mis.newPixels(frames.getFrontFrame(), ColorModel.getRGBdefault(), 0, SC_WIDTH);
+        }
+
         // Why is there transparency?
         g2.drawImage(screen, 0, 0, null);
 
@@ -1549,6 +1996,17 @@ public class C64Screen extends AddressableChip implements VICIf, MouseMotionList
         int pixelsLeft = 0;
         int currentPixel = 0;
 
+        // The pixels (0 - 3) left to shift out on this line, worked out from
+        // the sprite data when the sprite starts painting. spanMask has a bit
+        // set for each pixel that is not transparent. Taking pixels out of
+        // the span does not touch the shift register, that is brought up to
+        // date by endSpan() before anything changes it.
+        byte[] span = new byte[64];
+        long spanMask;
+        int spanLength;
+        int spanPos;
+        boolean spanValid = false;
+
         // The sprites color value (col)
         int col;
         // Sprites real colors
@@ -1586,11 +2044,69 @@ public class C64Screen extends AddressableChip implements VICIf, MouseMotionList
             return currentPixel;
         }
 
+        /***
+         * Takes the next n pixels out of the span and returns the mask of
+         * the ones that are not transparent (bit 0 is the first pixel).
+         */
+        long takePixels(int n) {
+            if (!spanValid) {
+                buildSpan();
+            }
+            long bits = spanPos < 64 ? (spanMask >>> spanPos) & ((1L << n) - 1) : 0;
+            spanPos += n;
+            if (spanPos > spanLength) {
+                // getPixel() would have found the end of the data
+                lineFinished = true;
+            }
+            return bits;
+        }
+
+        private void buildSpan() {
+            int reg = spriteReg;
+            int left = pixelsLeft;
+            int pixel = currentPixel;
+            spanLength = 0;
+            spanMask = 0;
+            while (spanLength < span.length) {
+                int c = getPixel();
+                if (lineFinished) {
+                    break;
+                }
+                span[spanLength] = (byte) c;
+                if (c != 0) {
+                    spanMask |= 1L << spanLength;
+                }
+                spanLength++;
+            }
+            spriteReg = reg;
+            pixelsLeft = left;
+            currentPixel = pixel;
+            lineFinished = false;
+            spanPos = 0;
+            spanValid = true;
+        }
+
+        /***
+         * Shifts out the pixels taken from the span so far, has to be called
+         * before the sprite data or the way it is shifted out changes.
+         */
+        void endSpan() {
+            if (spanValid) {
+                spanValid = false;
+                lineFinished = false;
+                for (int i = 0; i < spanPos; i++) {
+                    getPixel();
+                }
+            }
+        }
+
         void reset() {
+            endSpan();
             lineFinished = false;
         }
 
         void readSpriteData() {
+            endSpan();
             // Read pointer + the three sprite data pointers...
             pointer = getMemory(spr0BlockSel + spriteNo) * 0x40;
             spriteReg = ((getMemory(pointer + nextByte++) & 0xff) << 16)
@@ -1634,13 +2150,13 @@ public class C64Screen extends AddressableChip implements VICIf, MouseMotionList
 
         setVideoMem();
 
-        return addressableBus.readVicExclusive(address);
+        return vicMemory.read(address);
     };
 
     protected int getFromColorRAM(int localColorRAMAddress) {
         setVideoMem();
 
-        return addressableBus.readVicExclusiveFromColorRAM(localColorRAMAddress);
+        return vicMemory.readColor(localColorRAMAddress);
     }
 
     private ControlBus getControlBus() {
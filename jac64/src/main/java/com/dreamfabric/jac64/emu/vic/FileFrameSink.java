@@ -0,0 +1,202 @@
+package com.dreamfabric.jac64.emu.vic;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/***
+ * {@link FrameSink} streaming the frames to a file, either raw (one byte, the
+ * colour index, per pixel) or as YUV4MPEG2 (4:4:4) which most video tools
+ * read. The frames are copied into a bounded queue and written by a
+ * background thread; when the writer falls behind the emulation waits for it
+ * instead of dropping frames.
+ */
+public class FileFrameSink implements FrameSink, Closeable {
+    private static Logger LOGGER = LoggerFactory.getLogger(FileFrameSink.class);
+
+    public enum Format {
+        RAW, Y4M
+    }
+
+    private static final int WIDTH = C64Screen.IMG_TOTWIDTH;
+    private static final int HEIGHT = C64Screen.IMG_TOTHEIGHT;
+    private static final int FRAME_SIZE = WIDTH * HEIGHT;
+
+    public static final int PAL_CYCLES_PER_FRAME = VICConstants.SCAN_RATE * VICConstants.PAL_LINES;
+    public static final int NTSC_CYCLES_PER_FRAME = VICConstants.NTSC_SCAN_RATE * VICConstants.NTSC_LINES;
+
+    private static final byte[] Y4M_FRAME = "FRAME\n".getBytes(StandardCharsets.US_ASCII);
+
+    private static class Frame {
+        byte[] pixels = new byte[FRAME_SIZE];
+        int[] palette;
+    }
+
+    // put to the queue to stop the writer
+    private static final Frame END = new Frame();
+
+    private final Format format;
+    private final OutputStream out;
+    private final BlockingQueue<Frame> free;
+    private final BlockingQueue<Frame> written;
+    private final Thread writer;
+    private volatile IOException error;
+    private boolean closed = false;
+
+    // YUV of the palette last used
+    private int[] yuvPalette;
+    private byte[] y = new byte[16];
+    private byte[] u = new byte[16];
+    private byte[] v = new byte[16];
+    private byte[] planes;
+
+    public FileFrameSink(String fileName, Format format) throws IOException {
+        this(new FileOutputStream(fileName), format, 8);
+    }
+
+    public FileFrameSink(OutputStream out, Format format, int queueSize) throws IOException {
+        this(out, format, queueSize, VICConstants.PAL_CLOCK, PAL_CYCLES_PER_FRAME);
+    }
+
+    /***
+     * @param queueSize
+     *            number of frames that can wait to be written
+     * @param clock
+     *            CPU cycles per second, for the frame rate of Y4M
+     * @param cyclesPerFrame
+     *            CPU cycles per frame, PAL_CYCLES_PER_FRAME or
+     *            NTSC_CYCLES_PER_FRAME
+     */
+    public FileFrameSink(OutputStream out, Format format, int queueSize, int clock, int cyclesPerFrame)
+            throws IOException {
+        this.format = format;
+        this.out = new BufferedOutputStream(out, 1 << 16);
+        free = new ArrayBlockingQueue<Frame>(queueSize);
+        written = new ArrayBlockingQueue<Frame>(queueSize + 1);
+        for (int i = 0; i < queueSize; i++) {
+            free.add(new Frame());
+        }
+        if (format == Format.Y4M) {
+            this.out.write(getY4MHeader(clock, cyclesPerFrame).getBytes(StandardCharsets.US_ASCII));
+            planes = new byte[FRAME_SIZE * 3];
+        }
+
+        writer = new Thread(this::writeFrames, "FrameSink writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /***
+     * Returns the YUV4MPEG2 stream header, the frame rate is clock /
+     * cyclesPerFrame.
+     */
+    private static String getY4MHeader(int clock, int cyclesPerFrame) {
+        int gcd = clock;
+        for (int b = cyclesPerFrame; b != 0;) {
+            int t = gcd % b;
+            gcd = b;
+            b = t;
+        }
+        return "YUV4MPEG2 W" + WIDTH + " H" + HEIGHT + " F" + clock / gcd + ":" + cyclesPerFrame / gcd
+                + " Ip A1:1 C444\n";
+    }
+
+    @Override
+    public void frameCompleted(int frameNumber, long cpuCycles, byte[] pixels, int[] palette) {
+        if (closed || error != null) {
+            return;
+        }
+        try {
+            Frame frame = free.take();
+            System.arraycopy(pixels, 0, frame.pixels, 0, FRAME_SIZE);
+            frame.palette = palette;
+            written.put(frame);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /***
+     * Writes the frames still in the queue and closes the file.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            try {
+                written.put(END);
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                out.close();
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private void writeFrames() {
+        try {
+            Frame frame;
+            while ((frame = written.take()) != END) {
+                if (error == null) {
+                    try {
+                        writeFrame(frame);
+                    } catch (IOException e) {
+                        LOGGER.error("Could not write frame", e);
+                        error = e;
+                    }
+                }
+                free.put(frame);
+            }
+            out.flush();
+        } catch (InterruptedException e) {
+            // stopped
+        } catch (IOException e) {
+            error = e;
+        }
+    }
+
+    private void writeFrame(Frame frame) throws IOException {
+        if (format == Format.RAW) {
+            out.write(frame.pixels, 0, FRAME_SIZE);
+            return;
+        }
+        if (!Arrays.equals(frame.palette, yuvPalette)) {
+            setYUVPalette(frame.palette);
+        }
+        byte[] pixels = frame.pixels;
+        for (int i = 0; i < FRAME_SIZE; i++) {
+            int c = pixels[i];
+            planes[i] = y[c];
+            planes[FRAME_SIZE + i] = u[c];
+            planes[FRAME_SIZE * 2 + i] = v[c];
+        }
+        out.write(Y4M_FRAME);
+        out.write(planes);
+    }
+
+    // BT.601, limited range
+    private void setYUVPalette(int[] palette) {
+        for (int i = 0; i < 16; i++) {
+            int r = (palette[i] >> 16) & 0xff;
+            int g = (palette[i] >> 8) & 0xff;
+            int b = palette[i] & 0xff;
+            y[i] = (byte) (16 + ((66 * r + 129 * g + 25 * b + 128) >> 8));
+            u[i] = (byte) (128 + ((-38 * r - 74 * g + 112 * b + 128) >> 8));
+            v[i] = (byte) (128 + ((112 * r - 94 * g - 18 * b + 128) >> 8));
+        }
+        yuvPalette = palette;
+    }
+}
@@ -0,0 +1,24 @@
+package com.dreamfabric.jac64.emu.vic;
+
+/***
+ * Receives the frames painted by {@link C64Screen}, for example to record or
+ * analyze them without a display.
+ */
+public interface FrameSink {
+
+    /***
+     * Called on the emulation thread when a frame has been painted.
+     *
+     * @param frameNumber
+     *            number of the frame since the VIC was started
+     * @param cpuCycles
+     *            cpu cycle at which the frame was completed
+     * @param pixels
+     *            the frame as colour indices (0 - 15), row by row, the first
+     *            {@link C64Screen#IMG_TOTWIDTH} * {@link C64Screen#IMG_TOTHEIGHT}
+     *            entries are the frame. Only valid during the call.
+     * @param palette
+     *            the ARGB colour of each index, a copy the sink may keep
+     */
+    void frameCompleted(int frameNumber, long cpuCycles, byte[] pixels, int[] palette);
+}
@@ -0,0 +1,110 @@
+package com.dreamfabric.jac64.emu.vic;
+
+import java.util.Arrays;
+
+/***
+ * Lookup tables used by {@link C64Screen} to expand a byte of character or
+ * bitmap data into eight pixels (colour indices). Each table row holds the
+ * eight pixels of all 256 data bytes for one combination of colours and is
+ * built the first time it is needed. The rows of the text modes depend on the
+ * background colours ($D021 - $D024) and are thrown away when those change.
+ */
+final class GlyphLookup {
+
+    // foreground pixels (the ones sprites collide with) of a data byte, bit n
+    // is the n:th pixel from the left
+    static final int[] HIRES_FOREGROUND = new int[256];
+    static final int[] MULTICOLOR_FOREGROUND = new int[256];
+    // colour number (0 - 3) of the eight pixels of a multicolour data byte
+    static final byte[] MULTICOLOR_PIXELS = new byte[256 * 8];
+
+    static {
+        for (int data = 0; data < 256; data++) {
+            for (int pix = 0; pix < 8; pix++) {
+                int pos = (data << 3) + pix;
+                if (((data >> (7 - pix)) & 1) != 0) {
+                    HIRES_FOREGROUND[data] |= 1 << pix;
+                }
+                int color = (data >> (6 - (pix & 6))) & 3;
+                MULTICOLOR_PIXELS[pos] = (byte) color;
+                if (color > 0x01) {
+                    MULTICOLOR_FOREGROUND[data] |= 1 << pix;
+                }
+            }
+        }
+    }
+
+    private final int[] bgCol = new int[4];
+
+    // rows by pen colour
+    private final byte[][] text = new byte[16][];
+    // rows by background register (0 - 3) << 4 | pen colour
+    private final byte[][] extendedText = new byte[64][];
+    // rows by pen colour (0 - 7)
+    private final byte[][] multicolorText = new byte[8][];
+    // rows by the screen memory byte (pen colour << 4 | background colour)
+    private final byte[][] bitmap = new byte[256][];
+
+    void setBackgroundColor(int register, int color) {
+        if (bgCol[register] != color) {
+            bgCol[register] = color;
+            invalidateText();
+        }
+    }
+
+    byte[] getText(int penColor) {
+        byte[] row = text[penColor];
+        if (row == null) {
+            row = text[penColor] = hires(penColor, bgCol[0]);
+        }
+        return row;
+    }
+
+    byte[] getExtendedText(int bgRegister, int penColor) {
+        int key = (bgRegister << 4) | penColor;
+        byte[] row = extendedText[key];
+        if (row == null) {
+            row = extendedText[key] = hires(penColor, bgCol[bgRegister]);
+        }
+        return row;
+    }
+
+    byte[] getMulticolorText(int penColor) {
+        byte[] row = multicolorText[penColor];
+        if (row == null) {
+            int[] colors = { bgCol[0], bgCol[1], bgCol[2], penColor };
+            row = multicolorText[penColor] = multicolor(colors);
+        }
+        return row;
+    }
+
+    byte[] getBitmap(int screenData) {
+        byte[] row = bitmap[screenData];
+        if (row == null) {
+            row = bitmap[screenData] = hires(screenData >> 4, screenData & 0x0f);
+        }
+        return row;
+    }
+
+    private void invalidateText() {
+        Arrays.fill(text, null);
+        Arrays.fill(extendedText, null);
+        Arrays.fill(multicolorText, null);
+    }
+
+    private static byte[] hires(int penColor, int bgColor) {
+        byte[] row = new byte[256 * 8];
+        for (int i = 0; i < row.length; i++) {
+            row[i] = (byte) ((HIRES_FOREGROUND[i >> 3] & (1 << (i & 7))) != 0 ? penColor : bgColor);
+        }
+        return row;
+    }
+
+    private static byte[] multicolor(int[] colors) {
+        byte[] row = new byte[256 * 8];
+        for (int i = 0; i < row.length; i++) {
+            row[i] = (byte) colors[MULTICOLOR_PIXELS[i]];
+        }
+        return row;
+    }
+}
@@ -0,0 +1,64 @@
+package com.dreamfabric.jac64.emu.vic;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/***
+ * Three frames handed from the emulation thread (the producer) to the thread
+ * presenting them (the consumer) without locking. The producer writes the
+ * back frame and publishes it, the consumer shows the front frame. The third
+ * one is in between: publishing swaps the back frame with it and taking the
+ * latest frame swaps it with the front frame, both with one atomic
+ * operation. Neither side ever waits for the other and the consumer always
+ * gets a complete frame; when it is too slow frames are just dropped.
+ */
+public class TripleBuffer {
+
+    // set in the middle index when it holds a frame not yet taken
+    private static final int FRESH = 4;
+
+    private final int[][] frames;
+    private final AtomicInteger middle = new AtomicInteger(1);
+    // only used by the producer
+    private int back = 0;
+    // only used by the consumer
+    private int front = 2;
+
+    public TripleBuffer(int frameSize) {
+        frames = new int[3][frameSize];
+    }
+
+    /***
+     * Returns the frame for the producer to write, until the next call to
+     * {@link #publish()}.
+     */
+    public int[] getBackFrame() {
+        return frames[back];
+    }
+
+    /***
+     * Hands the back frame over to the consumer.
+     */
+    public void publish() {
+        back = middle.getAndSet(back | FRESH) & 3;
+    }
+
+    /***
+     * Makes the latest published frame the front frame, returns false when
+     * nothing has been published since the last call.
+     */
+    public boolean takeLatest() {
+        if ((middle.get() & FRESH) == 0) {
+            return false;
+        }
+        front = middle.getAndSet(front) & 3;
+        return true;
+    }
+
+    /***
+     * Returns the frame for the consumer to show, until the next call to
+     * {@link #takeLatest()}.
+     */
+    public int[] getFrontFrame() {
+        return frames[front];
+    }
+}
@@ -34,6 +34,13 @@ public class VICConstants {
 
     public static final int SCAN_RATE = 63;
 
+    // Frame timing of PAL (the one emulated) and NTSC machines
+    public static final int PAL_CLOCK = 985248;
+    public static final int PAL_LINES = 312;
+    public static final int NTSC_CLOCK = 1022727;
+    public static final int NTSC_SCAN_RATE = 65;
+    public static final int NTSC_LINES = 263;
+
     // Sprite BA untils...
     public static final int BA_SP0 = 59;
     public static final int BA_SP1 = 61;
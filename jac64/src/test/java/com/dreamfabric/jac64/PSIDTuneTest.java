@@ -0,0 +1,139 @@
+package com.dreamfabric.jac64;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class PSIDTuneTest {
+
+    private static final int HEADER_V1_SIZE = 0x76;
+    private static final int HEADER_V2_SIZE = 0x7c;
+
+    /***
+     * A one song tune, the v2 fields are only written from version 2.
+     */
+    public static byte[] file(String magic, int version, int load, int init, int play, int flags, int startPage,
+            int pageLength, int... data) {
+        int dataOffset = version >= 2 ? HEADER_V2_SIZE : HEADER_V1_SIZE;
+        byte[] file = new byte[dataOffset + data.length];
+        for (int i = 0; i < 4; i++) {
+            file[i] = (byte) magic.charAt(i);
+        }
+        word(file, 4, version);
+        word(file, 6, dataOffset);
+        word(file, 8, load);
+        word(file, 10, init);
+        word(file, 12, play);
+        word(file, 14, 1);
+        word(file, 16, 1);
+        ascii(file, 0x16, "Test");
+        ascii(file, 0x36, "Tester");
+        ascii(file, 0x56, "2026 Test");
+        if (version >= 2) {
+            word(file, 0x76, flags);
+            file[0x78] = (byte) startPage;
+            file[0x79] = (byte) pageLength;
+        }
+        for (int i = 0; i < data.length; i++) {
+            file[dataOffset + i] = (byte) data[i];
+        }
+        return file;
+    }
+
+    private static void word(byte[] b, int offset, int value) {
+        b[offset] = (byte) (value >> 8);
+        b[offset + 1] = (byte) value;
+    }
+
+    private static void ascii(byte[] b, int offset, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            b[offset + i] = (byte) s.charAt(i);
+        }
+    }
+
+    public static PSIDTune read(byte[] file) throws IOException {
+        return PSIDTune.read(new ByteArrayInputStream(file));
+    }
+
+    private static void assertNotRead(byte[] file) {
+        try {
+            read(file);
+            fail("read");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testVersion1() throws IOException {
+        PSIDTune tune = read(file("PSID", 1, 0x1000, 0x1003, 0x1006, 0, 0, 0, 1, 2, 3));
+        assertEquals(1, tune.getVersion());
+        assertFalse(tune.isRSID());
+        assertEquals(0x1000, tune.getLoadAddress());
+        assertEquals(0x1003, tune.getInitAddress());
+        assertEquals(0x1006, tune.getPlayAddress());
+        assertEquals(0x1003, tune.getEndAddress());
+        assertEquals("Test", tune.getName());
+        assertEquals("Tester", tune.getAuthor());
+        assertEquals("2026 Test", tune.getReleased());
+        // the data right after the v1 header, no v2 fields
+        assertArrayEquals(new byte[] { 1, 2, 3 }, tune.getData());
+        assertEquals(0, tune.getFlags());
+        assertEquals(0, tune.getStartPage());
+        assertFalse(tune.isNTSC());
+    }
+
+    @Test
+    public void testVersion2() throws IOException {
+        PSIDTune tune = read(file("RSID", 2, 0x1000, 0x1000, 0, PSIDTune.FLAG_CLOCK_NTSC | PSIDTune.FLAG_MODEL_8580,
+                0xc0, 0x10, 1, 2, 3));
+        assertEquals(2, tune.getVersion());
+        assertTrue(tune.isRSID());
+        assertEquals(PSIDTune.FLAG_CLOCK_NTSC | PSIDTune.FLAG_MODEL_8580, tune.getFlags());
+        assertTrue(tune.isNTSC());
+        assertEquals(0xc0, tune.getStartPage());
+        assertEquals(0x10, tune.getPageLength());
+        assertArrayEquals(new byte[] { 1, 2, 3 }, tune.getData());
+
+        // PAL and NTSC plays on PAL
+        tune = read(file("PSID", 2, 0x1000, 0x1000, 0, PSIDTune.FLAG_CLOCK_PAL | PSIDTune.FLAG_CLOCK_NTSC, 0, 0, 1));
+        assertFalse(tune.isNTSC());
+    }
+
+    @Test
+    public void testLoadAddressInData() throws IOException {
+        // no init address, init at the load address
+        PSIDTune tune = read(file("PSID", 2, 0, 0, 0x2003, 0, 0, 0, 0x00, 0x20, 1, 2, 3));
+        assertEquals(0x2000, tune.getLoadAddress());
+        assertEquals(0x2000, tune.getInitAddress());
+        assertArrayEquals(new byte[] { 1, 2, 3 }, tune.getData());
+        assertEquals(0x2003, tune.getEndAddress());
+
+        assertNotRead(file("PSID", 2, 0, 0, 0, 0, 0, 0, 0x00));
+    }
+
+    @Test
+    public void testBadFiles() {
+        byte[] file = file("PSID", 2, 0x1000, 0x1000, 0, 0, 0, 0, 1, 2, 3);
+        file[0] = 'X';
+        assertNotRead(file);
+        // the header cut short
+        assertNotRead(Arrays.copyOf(file("PSID", 1, 0x1000, 0x1000, 0, 0, 0, 0), 0x70));
+
+        // data offset inside the v1 header
+        file = file("PSID", 1, 0x1000, 0x1000, 0, 0, 0, 0, 1, 2, 3);
+        word(file, 6, 0x70);
+        assertNotRead(file);
+        // and after the end of the file
+        word(file, 6, 0x100);
+        assertNotRead(file);
+    }
+}
@@ -0,0 +1,61 @@
+package com.dreamfabric.jac64.emu;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.dreamfabric.jac64.emu.cpu.C64Cpu;
+import com.dreamfabric.jac64.emu.sid.VoidSID;
+import com.dreamfabric.jac64.emu.vic.C64Screen;
+import com.dreamfabric.jac64.emu.vic.FrameSink;
+
+public class EmulationContextTest {
+
+    private static final int FRAME_PIXELS = C64Screen.IMG_TOTWIDTH * C64Screen.IMG_TOTHEIGHT;
+
+    @Test
+    public void testHeadlessFrames() {
+        EmulationContext context = new EmulationContext(false, null);
+        assertTrue(context.getSid() instanceof VoidSID);
+
+        final List<Long> cycles = new ArrayList<Long>();
+        final List<Integer> frameNumbers = new ArrayList<Integer>();
+        final List<Integer> borders = new ArrayList<Integer>();
+        final List<Integer> colours = new ArrayList<Integer>();
+        context.getVic().setFrameSink(new FrameSink() {
+            @Override
+            public void frameCompleted(int frameNumber, long cpuCycles, byte[] pixels, int[] palette) {
+                assertTrue(pixels.length >= FRAME_PIXELS);
+                assertEquals(16, palette.length);
+                frameNumbers.add(frameNumber);
+                cycles.add(cpuCycles);
+                int middle = C64Screen.IMG_TOTHEIGHT / 2 * C64Screen.IMG_TOTWIDTH;
+                borders.add((int) pixels[middle]);
+                colours.add((int) pixels[middle + C64Screen.IMG_TOTWIDTH / 2]);
+            }
+        });
+
+        C64Cpu cpu = context.getCpu();
+        cpu.reset();
+        context.getSid().reset();
+        cpu.setPc(0xfce2);
+        context.getSid().start(cpu.getCycles());
+        // the KERNAL clears the screen after about 100 frames
+        while (frameNumbers.size() < 120) {
+            cpu.emulateOp();
+        }
+
+        for (int i = 1; i < frameNumbers.size(); i++) {
+            assertEquals(frameNumbers.get(i - 1) + 1, (int) frameNumbers.get(i));
+            // PAL: 312 lines of 63 cycles
+            assertEquals(63 * 312, cycles.get(i) - cycles.get(i - 1));
+        }
+        // the light blue border and blue background of the BASIC screen
+        assertEquals(14, (int) borders.get(borders.size() - 1));
+        assertEquals(6, (int) colours.get(colours.size() - 1));
+    }
+}
@@ -0,0 +1,104 @@
+package com.dreamfabric.jac64.emu;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.dreamfabric.jac64.PSIDTune;
+import com.dreamfabric.jac64.PSIDTuneTest;
+
+public class PSIDRendererTest {
+
+    private static final int LOAD = 0x1000;
+    private static final int PLAY = 0x1015;
+
+    // A saw tone on voice 1, the play routine steps its frequency
+    private static final int[] TUNE = { //
+            0xa9, 0x0f, 0x8d, 0x18, 0xd4, // LDA #$0F, STA $D418: volume
+            0xa9, 0xf0, 0x8d, 0x06, 0xd4, // LDA #$F0, STA $D406: sustain
+            0xa9, 0x10, 0x8d, 0x01, 0xd4, // LDA #$10, STA $D401
+            0xa9, 0x21, 0x8d, 0x04, 0xd4, // LDA #$21, STA $D404: saw, gate
+            0x60, // RTS
+            // play
+            0xe6, 0xfb, // INC $FB
+            0xa5, 0xfb, // LDA $FB
+            0x8d, 0x01, 0xd4, // STA $D401
+            0x60 // RTS
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static PSIDTune tune(int startPage, int pageLength) throws IOException {
+        return PSIDTuneTest.read(PSIDTuneTest.file("PSID", 2, LOAD, LOAD, PLAY, 0, startPage, pageLength, TUNE));
+    }
+
+    private byte[] render(PSIDRenderer renderer, PSIDTune tune) throws IOException {
+        File file = folder.newFile();
+        long samples = renderer.render(tune, 1, 0.2, file.getPath());
+        byte[] data = Files.readAllBytes(file.toPath());
+        assertEquals(44 + 2 * samples, data.length);
+        return data;
+    }
+
+    @Test
+    public void testRender() throws IOException {
+        byte[] data = render(new PSIDRenderer(), tune(0, 0));
+        // 0.2 s at 44100 Hz, in whole buffers
+        int samples = (data.length - 44) / 2;
+        assertTrue(samples + " samples", Math.abs(samples - 8820) < 1024);
+        int loud = 0;
+        for (int i = 44; i < data.length; i += 2) {
+            short sample = (short) ((data[i] & 0xff) | data[i + 1] << 8);
+            if (Math.abs(sample) > 1000) {
+                loud++;
+            }
+        }
+        assertTrue(loud + " loud samples", loud > samples / 4);
+
+        // the same again with another renderer
+        assertArrayEquals(data, render(new PSIDRenderer(), tune(0, 0)));
+    }
+
+    @Test
+    public void testRendersOnce() throws IOException {
+        PSIDRenderer renderer = new PSIDRenderer();
+        render(renderer, tune(0, 0));
+        try {
+            render(renderer, tune(0, 0));
+            fail("rendered twice");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testDriverAddress() throws IOException {
+        assertEquals(0x0334, PSIDRenderer.getDriverAddress(tune(0, 0)));
+        assertEquals(0x0334, PSIDRenderer.getDriverAddress(tune(0xff, 0)));
+        assertEquals(0x4000, PSIDRenderer.getDriverAddress(tune(0x40, 1)));
+        assertEquals(0xc000, PSIDRenderer.getDriverAddress(tune(0xc0, 0x10)));
+
+        // no free pages
+        assertEquals(0x0334, PSIDRenderer.getDriverAddress(tune(0x40, 0)));
+        // the tune
+        assertEquals(0x0334, PSIDRenderer.getDriverAddress(tune(0x10, 1)));
+        // the stack, a ROM and the I/O
+        assertEquals(0x0334, PSIDRenderer.getDriverAddress(tune(0x01, 1)));
+        assertEquals(0x0334, PSIDRenderer.getDriverAddress(tune(0xa0, 1)));
+        assertEquals(0x0334, PSIDRenderer.getDriverAddress(tune(0xd0, 1)));
+
+        // a tune over $0334
+        PSIDTune low = PSIDTuneTest.read(PSIDTuneTest.file("PSID", 2, 0x0300, 0x0300, 0, 0, 0, 0, new int[0x100]));
+        assertEquals(0x0200, PSIDRenderer.getDriverAddress(low));
+    }
+}
@@ -0,0 +1,135 @@
+package com.dreamfabric.jac64.emu.cpu;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.dreamfabric.jac64.emu.EmulationContext;
+import com.dreamfabric.jac64.emu.memory.RAM;
+
+public class C64CpuTest {
+
+    private static final int FRAME_CYCLES = 63 * 312;
+
+    private static final int PROGRAM = 0xc000;
+    private static final int IRQ_HANDLER = 0xc100;
+    private static final int NMI_HANDLER = 0xc180;
+    private static final int IRQ_LOG = 0x3000;
+    private static final int NMI_LOG = 0x3100;
+
+    // Starts timer A of CIA 1 (IRQ) and of CIA 2 (NMI), turns on the bad
+    // lines and waits in JMP *
+    private static final int[] MAIN = { //
+            0x78, // SEI
+            0xa9, 0x35, 0x85, 0x01, // LDA #$35, STA $01: IO, no ROMs
+            0xa9, 0x00, 0x8d, 0xfe, 0xff, // LDA #<IRQ, STA $FFFE
+            0xa9, 0xc1, 0x8d, 0xff, 0xff, // LDA #>IRQ, STA $FFFF
+            0xa9, 0x80, 0x8d, 0xfa, 0xff, // LDA #<NMI, STA $FFFA
+            0xa9, 0xc1, 0x8d, 0xfb, 0xff, // LDA #>NMI, STA $FFFB
+            0xa9, 0x7f, 0x8d, 0x0d, 0xdc, 0x8d, 0x0d, 0xdd, // LDA #$7F, STA $DC0D, STA $DD0D
+            0xad, 0x0d, 0xdc, 0xad, 0x0d, 0xdd, // LDA $DC0D, LDA $DD0D
+            0xa9, 0x37, 0x8d, 0x04, 0xdc, 0xa9, 0x13, 0x8d, 0x05, 0xdc, // CIA 1 timer A = $1337
+            0xa9, 0x11, 0x8d, 0x0e, 0xdc, // LDA #$11, STA $DC0E: load and start
+            0xa9, 0x81, 0x8d, 0x0d, 0xdc, // LDA #$81, STA $DC0D
+            0xa9, 0xc5, 0x8d, 0x04, 0xdd, 0xa9, 0x2f, 0x8d, 0x05, 0xdd, // CIA 2 timer A = $2FC5
+            0xa9, 0x11, 0x8d, 0x0e, 0xdd, // LDA #$11, STA $DD0E
+            0xa9, 0x81, 0x8d, 0x0d, 0xdd, // LDA #$81, STA $DD0D
+            0xa9, 0x1b, 0x8d, 0x11, 0xd0, // LDA #$1B, STA $D011
+            0x58, // CLI
+            0x4c, 0x55, 0xc0 // JMP *
+    };
+
+    // Logs the timer low byte and the interrupt flags of the CIA at (LOG),X
+    private static final int[] IRQ = { //
+            0x48, 0x8a, 0x48, // PHA, TXA, PHA
+            0xa6, 0xfb, // LDX $FB
+            0xad, 0x04, 0xdc, 0x9d, 0x00, 0x30, // LDA $DC04, STA IRQ_LOG,X
+            0xad, 0x0d, 0xdc, 0x9d, 0x01, 0x30, // LDA $DC0D, STA IRQ_LOG+1,X
+            0xe8, 0xe8, 0x86, 0xfb, // INX, INX, STX $FB
+            0x68, 0xaa, 0x68, // PLA, TAX, PLA
+            0x40 // RTI
+    };
+
+    private static final int[] NMI = { //
+            0x48, 0x8a, 0x48, // PHA, TXA, PHA
+            0xa6, 0xfc, // LDX $FC
+            0xad, 0x04, 0xdd, 0x9d, 0x00, 0x31, // LDA $DD04, STA NMI_LOG,X
+            0xad, 0x0d, 0xdd, 0x9d, 0x01, 0x31, // LDA $DD0D, STA NMI_LOG+1,X
+            0xe8, 0xe8, 0x86, 0xfc, // INX, INX, STX $FC
+            0x68, 0xaa, 0x68, // PLA, TAX, PLA
+            0x40 // RTI
+    };
+
+    private static class Run {
+        List<Long> irqCycles = new ArrayList<Long>();
+        List<Long> nmiCycles = new ArrayList<Long>();
+        int[] log = new int[0x200];
+        int instructions;
+    }
+
+    private static Run run(boolean idleDetection, boolean eventHorizon) {
+        EmulationContext context = new EmulationContext(false, null);
+        RAM ram = context.getRAM();
+        poke(ram, PROGRAM, MAIN);
+        poke(ram, IRQ_HANDLER, IRQ);
+        poke(ram, NMI_HANDLER, NMI);
+
+        C64Cpu cpu = context.getCpu();
+        cpu.setUsageStatistics(false);
+        cpu.reset();
+        cpu.setPc(PROGRAM);
+        cpu.setEventHorizon(eventHorizon);
+        cpu.setIdleDetection(idleDetection);
+
+        Run run = new Run();
+        long end = cpu.getCycles() + 12 * FRAME_CYCLES;
+        while (cpu.getCycles() < end) {
+            cpu.emulateOp();
+            run.instructions++;
+            if (cpu.getPc() == IRQ_HANDLER) {
+                run.irqCycles.add(cpu.getCycles());
+            } else if (cpu.getPc() == NMI_HANDLER) {
+                run.nmiCycles.add(cpu.getCycles());
+            }
+        }
+        for (int i = 0; i < run.log.length; i++) {
+            run.log[i] = ram.read0(IRQ_LOG + i);
+        }
+        return run;
+    }
+
+    private static void poke(RAM ram, int address, int[] data) {
+        for (int i = 0; i < data.length; i++) {
+            ram.write0(address + i, data[i]);
+        }
+    }
+
+    private static void assertSameRun(Run expected, Run actual) {
+        assertEquals(expected.irqCycles, actual.irqCycles);
+        assertEquals(expected.nmiCycles, actual.nmiCycles);
+        assertArrayEquals(expected.log, actual.log);
+        // JMP * is skipped up to the next line
+        assertTrue(actual.instructions * 4 < expected.instructions);
+    }
+
+    @Test
+    public void testIdleLoopSkipKeepsInterrupts() {
+        Run expected = run(false, false);
+        // $1337 and $2FC5 cycles
+        assertTrue(expected.irqCycles.size() > 40);
+        assertTrue(expected.nmiCycles.size() > 15);
+
+        assertSameRun(expected, run(true, false));
+    }
+
+    @Test
+    public void testIdleLoopSkipWithEventHorizon() {
+        Run expected = run(false, false);
+        assertSameRun(expected, run(true, true));
+    }
+}
@@ -0,0 +1,100 @@
+package com.dreamfabric.jac64.emu.sid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.dreamfabric.jac64.emu.bus.ControlBus;
+import com.dreamfabric.jac64.emu.scheduler.EventQueue;
+
+public class AudioClockPacerTest {
+
+    // as RESID sets up an AudioDriverRing: an 8 KB ring and an 8 KB line
+    private static final int MAX_QUEUED = 8192 + 8192;
+
+    /***
+     * An AudioDriverRing without a line, with the queue set by the test.
+     */
+    static class StubDriver extends AudioDriverRing {
+        int queued;
+
+        @Override
+        public boolean hasSound() {
+            return true;
+        }
+
+        @Override
+        public int getQueuedBytes() {
+            return queued;
+        }
+
+        @Override
+        public int getMaxQueuedBytes() {
+            return MAX_QUEUED;
+        }
+    }
+
+    private StubDriver driver;
+    private AudioClockPacer pacer;
+
+    @Before
+    public void init() {
+        driver = new StubDriver();
+        RESID resid = new RESID(null, new RESIDTest.CapturingAudioDriver());
+        pacer = new AudioClockPacer(985248, resid, driver, 100);
+        pacer.start(new ControlBus(null, null, null, new EventQueue(), null), 0);
+    }
+
+    @Test
+    public void testThresholds() {
+        // 100 ms of 16 bit samples at 44000 Hz
+        assertEquals(8800, pacer.getTargetBytes());
+        // reached before a write of a 512 bytes buffer is dropped
+        assertTrue(pacer.getBlockingBytes() > pacer.getTargetBytes());
+        assertTrue(pacer.getBlockingBytes() <= MAX_QUEUED - 512);
+    }
+
+    @Test
+    public void testRateControl() {
+        driver.queued = 10000;
+        for (int i = 0; i < 100; i++) {
+            pacer.pace(0);
+        }
+        // fewer samples while more than the target is queued
+        assertTrue(pacer.getAdjustment() > 0);
+        assertTrue(pacer.getAdjustment() <= 0.005);
+        assertEquals(0, pacer.getCardWaits());
+
+        driver.queued = 6000;
+        for (int i = 0; i < 200; i++) {
+            pacer.pace(0);
+        }
+        assertTrue(pacer.getAdjustment() < 0);
+        assertEquals(0, pacer.getCardWaits());
+    }
+
+    @Test
+    public void testWaitsForTheCard() {
+        driver.queued = pacer.getBlockingBytes();
+        pacer.pace(0);
+        assertEquals(0, pacer.getCardWaits());
+
+        // the card plays slower than the rate control can follow
+        driver.queued = 15000;
+        long start = System.nanoTime();
+        pacer.pace(0);
+        assertEquals(1, pacer.getCardWaits());
+        // waited until the queue would be back at the target
+        assertTrue(System.nanoTime() - start >= (15000 - 8800) * 1000000000L / 88000);
+    }
+
+    @Test
+    public void testSmallDriver() {
+        // a target the driver can't hold is lowered
+        pacer = new AudioClockPacer(985248, new RESID(null, new RESIDTest.CapturingAudioDriver()), driver, 500);
+        assertEquals(MAX_QUEUED * 3 / 4, pacer.getTargetBytes());
+        assertTrue(pacer.getBlockingBytes() <= MAX_QUEUED - 512);
+    }
+}
@@ -0,0 +1,192 @@
+package com.dreamfabric.jac64.emu.sid;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Proxy;
+
+import javax.sound.sampled.SourceDataLine;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AudioDriverRingTest {
+
+    private static final int RING_SIZE = 64;
+    private static final int LINE_SIZE = 16;
+
+    /***
+     * The part of a SourceDataLine the drain thread uses. The test plays the
+     * bytes held in the line.
+     */
+    static class FakeLine {
+        private final ByteArrayOutputStream played = new ByteArrayOutputStream();
+        private final byte[] held = new byte[LINE_SIZE];
+        private int heldBytes;
+
+        synchronized int write(byte[] data, int offset, int length) throws InterruptedException {
+            int n = Math.min(length, LINE_SIZE - heldBytes);
+            if (n == 0) {
+                // as a full line blocks, but the drain thread has to stop
+                wait(1);
+            }
+            System.arraycopy(data, offset, held, heldBytes, n);
+            heldBytes += n;
+            return n;
+        }
+
+        synchronized int available() {
+            return LINE_SIZE - heldBytes;
+        }
+
+        synchronized void play(int length) {
+            int n = Math.min(length, heldBytes);
+            played.write(held, 0, n);
+            System.arraycopy(held, n, held, 0, heldBytes - n);
+            heldBytes -= n;
+        }
+
+        synchronized byte[] getPlayed() {
+            return played.toByteArray();
+        }
+
+        SourceDataLine asLine() {
+            return (SourceDataLine) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] { SourceDataLine.class }, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                        case "write":
+                            return write((byte[]) args[0], (Integer) args[1], (Integer) args[2]);
+                        case "available":
+                            return available();
+                        case "getBufferSize":
+                            return LINE_SIZE;
+                        case "close":
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                        }
+                    });
+        }
+    }
+
+    private FakeLine line;
+    private AudioDriverRing driver;
+
+    @Before
+    public void init() {
+        line = new FakeLine();
+        driver = new AudioDriverRing();
+        driver.start(line.asLine(), RING_SIZE);
+    }
+
+    @After
+    public void shutdown() {
+        driver.shutdown();
+    }
+
+    private static byte[] bytes(int from, int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (from + i);
+        }
+        return data;
+    }
+
+    /***
+     * Waits for the drain thread to move the ring into the line, as far as
+     * it fits.
+     */
+    private void awaitDrained() throws InterruptedException {
+        long end = System.currentTimeMillis() + 5000;
+        while (driver.getFillLevel() > 0 && line.available() > 0) {
+            assertTrue("drain thread stuck", System.currentTimeMillis() < end);
+            Thread.sleep(1);
+        }
+    }
+
+    private void awaitUnderruns(long underruns) throws InterruptedException {
+        long end = System.currentTimeMillis() + 5000;
+        while (driver.getUnderruns() < underruns) {
+            assertTrue("no underrun", System.currentTimeMillis() < end);
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void testWraparound() throws InterruptedException {
+        assertEquals(RING_SIZE, driver.getCapacity());
+        // 24 bytes don't divide the ring, so writes and line writes wrap
+        // at all positions
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        for (int i = 0; i < 100; i++) {
+            while (driver.available() < 24) {
+                line.play(5);
+                Thread.sleep(1);
+            }
+            byte[] data = bytes(i * 24, 24);
+            driver.write(data);
+            written.write(data, 0, data.length);
+        }
+        while (driver.getFillLevel() > 0) {
+            line.play(5);
+            awaitDrained();
+        }
+        line.play(LINE_SIZE);
+
+        assertArrayEquals(written.toByteArray(), line.getPlayed());
+        assertEquals(0, driver.getOverruns());
+    }
+
+    @Test
+    public void testOverrun() throws InterruptedException {
+        driver.write(bytes(0, 32));
+        awaitDrained();
+        // the line takes what it holds, the rest stays in the ring
+        assertEquals(32 - LINE_SIZE, driver.getFillLevel());
+        assertEquals(32, driver.getQueuedBytes());
+
+        driver.write(bytes(32, RING_SIZE - 16));
+        assertEquals(RING_SIZE, driver.getFillLevel());
+        assertEquals(driver.getMaxQueuedBytes(), driver.getQueuedBytes());
+        assertEquals(0, driver.getOverruns());
+
+        // dropped as a whole
+        driver.write(bytes(0, 1));
+        driver.write(bytes(0, 8));
+        assertEquals(2, driver.getOverruns());
+        assertEquals(driver.getMaxQueuedBytes(), driver.getQueuedBytes());
+
+        for (int queued = driver.getQueuedBytes(); queued > 0; queued -= 8) {
+            line.play(8);
+            awaitDrained();
+            assertEquals(queued - 8, driver.getQueuedBytes());
+        }
+        assertArrayEquals(bytes(0, RING_SIZE + 16), line.getPlayed());
+        assertEquals(2, driver.getOverruns());
+    }
+
+    @Test
+    public void testUnderrun() throws InterruptedException {
+        assertEquals(0, driver.getQueuedBytes());
+        // an empty line waiting for the first write is starving too
+        awaitUnderruns(1);
+
+        driver.write(bytes(0, 8));
+        awaitDrained();
+        line.play(4);
+        Thread.sleep(20);
+        // counted once the line has run dry, not while it still plays
+        assertEquals(1, driver.getUnderruns());
+        assertEquals(4, driver.getQueuedBytes());
+
+        line.play(4);
+        awaitUnderruns(2);
+        Thread.sleep(20);
+        // once for each time
+        assertEquals(2, driver.getUnderruns());
+        assertEquals(0, driver.getQueuedBytes());
+    }
+}
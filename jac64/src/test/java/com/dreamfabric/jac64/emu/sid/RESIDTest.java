@@ -0,0 +1,316 @@
+package com.dreamfabric.jac64.emu.sid;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import org.junit.Test;
+
+import com.dreamfabric.jac64.emu.bus.ControlBus;
+import com.dreamfabric.jac64.emu.scheduler.EventQueue;
+import com.dreamfabric.resid.ISIDDefs.sampling_method;
+
+public class RESIDTest {
+
+    // cycle of the last write, and up to which the SID is clocked
+    private static final long END_CYCLES = 300000;
+
+    /***
+     * Keeps all the samples written to it.
+     */
+    static class CapturingAudioDriver extends AudioDriver {
+        private final ByteArrayOutputStream samples = new ByteArrayOutputStream();
+        int sampleRate;
+
+        @Override
+        public void init(int sampleRate, int bufferSize) {
+            this.sampleRate = sampleRate;
+        }
+
+        @Override
+        public synchronized void write(byte[] buffer) {
+            samples.write(buffer, 0, buffer.length);
+        }
+
+        @Override
+        public long getMicros() {
+            return 0;
+        }
+
+        @Override
+        public boolean hasSound() {
+            return false;
+        }
+
+        @Override
+        public int available() {
+            return 0;
+        }
+
+        @Override
+        public int getMasterVolume() {
+            return 100;
+        }
+
+        @Override
+        public void setMasterVolume(int v) {
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public void setSoundOn(boolean on) {
+        }
+
+        @Override
+        public void setFullSpeed(boolean full) {
+        }
+
+        @Override
+        public boolean fullSpeed() {
+            return true;
+        }
+
+        synchronized byte[] getSamples() {
+            return samples.toByteArray();
+        }
+    }
+
+    static void play(RESID sid, int split) {
+        new Player(sid, null).play(split);
+    }
+
+    /***
+     * Plays notes on the three voices, with the register writes at fixed
+     * cycles. When it has a queue the events due (the sample buffers) are
+     * executed before each access, as the CPU does.
+     */
+    static class Player {
+        final RESID sid;
+        final EventQueue queue;
+        final List<Integer> reads = new ArrayList<Integer>();
+
+        Player(RESID sid, EventQueue queue) {
+            this.sid = sid;
+            this.queue = queue;
+        }
+
+        /***
+         * Every split cycles OSC3 and ENV3 are read too, which clocks the SID
+         * up to there, 0 for no reads.
+         */
+        void play(int split) {
+            play(split, 0);
+        }
+
+        /***
+         * Plays with all the cycles moved by offset.
+         */
+        void play(int split, long offset) {
+            int[] waveforms = { 0x11, 0x21, 0x41, 0x81, 0x15, 0x23 };
+            long cycles = offset + 100;
+            write(0x18, 0x0f, cycles);
+            for (int voice = 0; voice < 3; voice++) {
+                write(7 * voice + 5, 0x22, cycles += 7);
+                write(7 * voice + 6, 0xa8, cycles += 7);
+            }
+            for (int note = 0; note < 40; note++) {
+                int voice = 7 * (note % 3);
+                long start = cycles;
+                cycles += 4999;
+                if (split > 0) {
+                    for (long read = start + split; read < cycles; read += split) {
+                        read(0x1b, read);
+                        read(0x1c, read);
+                    }
+                }
+                write(voice, (note * 53) & 0xff, cycles);
+                write(voice + 1, 8 + (note * 7) % 40, cycles += 4);
+                write(voice + 2, 0, cycles += 4);
+                write(voice + 3, 8, cycles += 4);
+                write(voice + 4, waveforms[note % 6], cycles += 4);
+            }
+            read(0x1b, offset + END_CYCLES);
+        }
+
+        /***
+         * Writes random values to random registers (but the volume) and reads
+         * OSC3 and ENV3 after each write.
+         */
+        void playRandom(long seed, int writes) {
+            Random random = new Random(seed);
+            long cycles = 100;
+            write(0x18, 0x0f, cycles);
+            for (int i = 0; i < writes; i++) {
+                cycles += 1 + random.nextInt(400);
+                write(random.nextInt(0x18), random.nextInt(256), cycles);
+                cycles += 1 + random.nextInt(100);
+                read(0x1b, cycles);
+                read(0x1c, cycles);
+            }
+        }
+
+        private void write(int register, int data, long cycles) {
+            executeEvents(cycles);
+            sid.write(SIDIf.START_ADDRESS + register, data, cycles);
+        }
+
+        private void read(int register, long cycles) {
+            executeEvents(cycles);
+            reads.add(sid.read(SIDIf.START_ADDRESS + register, cycles));
+        }
+
+        private void executeEvents(long cycles) {
+            while (queue != null && queue.nextTime != 0 && queue.nextTime <= cycles) {
+                long time = queue.nextTime;
+                queue.popFirst().execute(time);
+            }
+        }
+    }
+
+    static byte[] play(sampling_method method, int sampleRate, int split) {
+        CapturingAudioDriver driver = new CapturingAudioDriver();
+        RESID sid = new RESID(null, driver, sampleRate);
+        sid.setEnabled(true);
+        if (method != null) {
+            assertTrue(sid.setSamplingMethod(method));
+            assertEquals(method, sid.getSamplingMethod());
+        }
+        assertEquals(sampleRate, driver.sampleRate);
+        play(sid, split);
+        return driver.getSamples();
+    }
+
+    private static long crc(byte[] samples) {
+        CRC32 crc = new CRC32();
+        crc.update(samples);
+        return crc.getValue();
+    }
+
+    // the whole buffers of 256 samples generated up to END_CYCLES
+    private static int expectedBytes(int sampleRate) {
+        long samples = (END_CYCLES - 100) * sampleRate / 985248;
+        return (int) (samples / 256 * 512);
+    }
+
+    @Test
+    public void testFixedWrites() {
+        byte[] samples = play(null, RESID.SAMPLE_RATE, 0);
+        assertEquals(expectedBytes(RESID.SAMPLE_RATE), samples.length);
+        // recorded
+        assertEquals(0x60799982L, crc(samples));
+    }
+
+    @Test
+    public void testSplitPoints() {
+        // SAMPLE_RESAMPLE_FAST takes seconds to build its FIR table
+        for (sampling_method method : new sampling_method[] { sampling_method.SAMPLE_FAST,
+                sampling_method.SAMPLE_INTERPOLATE, sampling_method.SAMPLE_RESAMPLE_INTERPOLATE }) {
+            byte[] samples = play(method, RESID.SAMPLE_RATE, 0);
+            byte[] splitSamples = play(method, RESID.SAMPLE_RATE, 61);
+            assertEquals(method.toString(), samples.length, splitSamples.length);
+            if (method != sampling_method.SAMPLE_FAST) {
+                // clocked cycle by cycle, the accesses don't matter
+                assertArrayEquals(method.toString(), samples, splitSamples);
+            }
+        }
+    }
+
+    @Test
+    public void testThreaded() {
+        // the reads split the clocking of the SID only when not threaded,
+        // without the filters that doesn't change the samples
+        Player direct = playWithEvents(false);
+        Player threaded = playWithEvents(true);
+        byte[] samples = ((CapturingAudioDriver) direct.sid.getAudioDriver()).getSamples();
+        assertEquals(expectedBytes(RESID.SAMPLE_RATE), samples.length);
+        assertArrayEquals(samples, ((CapturingAudioDriver) threaded.sid.getAudioDriver()).getSamples());
+        // the shadow SID is exact for these notes
+        assertEquals(direct.reads, threaded.reads);
+    }
+
+    private static Player createPlayer(boolean threaded) {
+        EventQueue queue = new EventQueue();
+        RESID sid = new RESID(new ControlBus(null, null, null, queue, null), new CapturingAudioDriver());
+        sid.setEnabled(true);
+        sid.setFilter(false);
+        sid.setThreaded(threaded);
+        assertEquals(threaded, sid.isThreaded());
+        sid.reset();
+        sid.start(0);
+        return new Player(sid, queue);
+    }
+
+    private static Player playWithEvents(boolean threaded) {
+        Player player = createPlayer(threaded);
+        player.play(37);
+        player.sid.stop();
+        return player;
+    }
+
+    @Test
+    public void testThreadedReset() {
+        Player[] players = new Player[2];
+        for (int i = 0; i < players.length; i++) {
+            Player player = players[i] = createPlayer(i == 1);
+            player.play(37);
+            player.sid.reset();
+            player.play(37, END_CYCLES);
+            player.sid.stop();
+        }
+        byte[] samples = ((CapturingAudioDriver) players[0].sid.getAudioDriver()).getSamples();
+        assertEquals(expectedBytes(RESID.SAMPLE_RATE) * 2, samples.length, 512);
+        assertArrayEquals(samples, ((CapturingAudioDriver) players[1].sid.getAudioDriver()).getSamples());
+        assertEquals(players[0].reads, players[1].reads);
+    }
+
+    @Test
+    public void testShadowReads() {
+        Player[] players = new Player[2];
+        for (int i = 0; i < players.length; i++) {
+            Player player = players[i] = createPlayer(i == 1);
+            // the filters only change the sound, not OSC3 and ENV3
+            player.sid.setFilter(true);
+            player.playRandom(1234, 5000);
+            player.sid.stop();
+        }
+        // also with sync, ring modulation and the test bit
+        assertEquals(players[0].reads, players[1].reads);
+    }
+
+    @Test
+    public void testResampling() {
+        byte[] fast = play(sampling_method.SAMPLE_FAST, RESID.SAMPLE_RATE, 0);
+        byte[] resampled = play(sampling_method.SAMPLE_RESAMPLE_INTERPOLATE, RESID.SAMPLE_RATE, 0);
+        assertEquals(fast.length, resampled.length);
+        assertFalse(Arrays.equals(fast, resampled));
+        // recorded
+        assertEquals(0x88490160L, crc(resampled));
+    }
+
+    @Test
+    public void testSamplingMethodFailure() {
+        // the FIR filter needs a sample at least every 131 cycles
+        CapturingAudioDriver driver = new CapturingAudioDriver();
+        RESID sid = new RESID(null, driver, 4000);
+        sid.setEnabled(true);
+        assertFalse(sid.setSamplingMethod(sampling_method.SAMPLE_RESAMPLE_FAST));
+        assertEquals(sampling_method.SAMPLE_FAST, sid.getSamplingMethod());
+
+        // still sampling as before
+        play(sid, 0);
+        byte[] samples = driver.getSamples();
+        assertEquals(expectedBytes(4000), samples.length);
+        assertArrayEquals(play(sampling_method.SAMPLE_FAST, 4000, 0), samples);
+    }
+}
@@ -0,0 +1,96 @@
+package com.dreamfabric.jac64.emu.sid;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WavAudioDriverTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static String ascii(byte[] data, int from) {
+        return new String(data, from, 4, StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void testHeaderAndData() throws IOException {
+        File file = folder.newFile("test.wav");
+        WavAudioDriver wav = new WavAudioDriver(file.getPath());
+        wav.init(44100, 1024);
+        byte[] samples = new byte[300];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (byte) i;
+        }
+        wav.write(Arrays.copyOf(samples, 100));
+        wav.setSoundOn(false);
+        wav.write(new byte[] { 1, 2 });
+        wav.setSoundOn(true);
+        wav.write(Arrays.copyOfRange(samples, 100, 300));
+        assertEquals(151, wav.getSamples());
+        wav.close();
+
+        byte[] data = Files.readAllBytes(file.toPath());
+        assertEquals(44 + 302, data.length);
+        ByteBuffer header = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals("RIFF", ascii(data, 0));
+        assertEquals(36 + 302, header.getInt(4));
+        assertEquals("WAVE", ascii(data, 8));
+        assertEquals("fmt ", ascii(data, 12));
+        assertEquals(16, header.getInt(16));
+        // PCM, mono, 16 bit
+        assertEquals(1, header.getShort(20));
+        assertEquals(1, header.getShort(22));
+        assertEquals(44100, header.getInt(24));
+        assertEquals(88200, header.getInt(28));
+        assertEquals(2, header.getShort(32));
+        assertEquals(16, header.getShort(34));
+        assertEquals("data", ascii(data, 36));
+        assertEquals(302, header.getInt(40));
+
+        assertArrayEquals(Arrays.copyOf(samples, 100), Arrays.copyOfRange(data, 44, 144));
+        // silenced
+        assertArrayEquals(new byte[2], Arrays.copyOfRange(data, 144, 146));
+        assertArrayEquals(Arrays.copyOfRange(samples, 100, 300), Arrays.copyOfRange(data, 146, 346));
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        File file = folder.newFile("empty.wav");
+        WavAudioDriver wav = new WavAudioDriver(file.getPath());
+        wav.init(22050, 1024);
+        wav.close();
+        byte[] data = Files.readAllBytes(file.toPath());
+        assertEquals(44, data.length);
+        ByteBuffer header = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(36, header.getInt(4));
+        assertEquals(22050, header.getInt(24));
+        assertEquals(0, header.getInt(40));
+    }
+
+    @Test
+    public void testErrorOnClose() throws IOException {
+        // a directory can't be written
+        WavAudioDriver wav = new WavAudioDriver(folder.newFolder().getPath());
+        wav.init(44100, 1024);
+        wav.write(new byte[10]);
+        try {
+            wav.close();
+            fail("closed");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,508 @@
+package com.dreamfabric.jac64.emu.vic;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.dreamfabric.jac64.emu.EmulationContext;
+import com.dreamfabric.jac64.emu.cpu.C64Cpu;
+import com.dreamfabric.jac64.emu.memory.RAM;
+
+public class C64ScreenTest {
+
+    private static final int FRAME_CYCLES = 63 * 312;
+
+    private static final int PROGRAM = 0xc000;
+    private static final int MAIN_LOOP = 0xc044;
+    private static final int STILL_LOOP = 0xc02e;
+    private static final int IRQ_HANDLER = 0xc100;
+    private static final int SPRITE_TABLE = 0xc200;
+    private static final int LOG = 0x3000;
+    private static final int LOG_LENGTH = 0x1000;
+
+    // Sets up the sprites, the bad lines and a raster IRQ, then reads the
+    // raster line forever
+    private static final int[] MAIN = { //
+            0x78, // SEI
+            0xa9, 0x35, 0x85, 0x01, // LDA #$35, STA $01: IO, no ROMs
+            0xa9, 0x00, 0x8d, 0xfe, 0xff, // LDA #<IRQ, STA $FFFE
+            0xa9, 0xc1, 0x8d, 0xff, 0xff, // LDA #>IRQ, STA $FFFF
+            0xa9, 0x7f, 0x8d, 0x0d, 0xdc, // LDA #$7F, STA $DC0D
+            0xad, 0x0d, 0xdc, // LDA $DC0D
+            0xa9, 0x03, 0x8d, 0x02, 0xdd, 0x8d, 0x00, 0xdd, // VIC bank 0
+            0xa2, 0x0f, // LDX #$0F
+            0xbd, 0x00, 0xc2, // LDA SPRITE_TABLE,X
+            0x9d, 0x00, 0xd0, // STA $D000,X
+            0xca, 0x10, 0xf7, // DEX, BPL
+            0xa9, 0x1b, 0x8d, 0x11, 0xd0, // LDA #$1B, STA $D011
+            0xa9, 0x1a, 0x8d, 0x18, 0xd0, // LDA #$1A, STA $D018
+            0xa9, 0x30, 0x8d, 0x12, 0xd0, // LDA #$30, STA $D012
+            0xa9, 0x01, 0x8d, 0x1a, 0xd0, // LDA #$01, STA $D01A
+            0xa9, 0xff, 0x8d, 0x15, 0xd0, // LDA #$FF, STA $D015
+            0x58, // CLI
+            0xad, 0x12, 0xd0, // MAIN_LOOP: LDA $D012
+            0x85, 0x02, // STA $02
+            0x4c, 0x44, 0xc0 // JMP MAIN_LOOP
+    };
+
+    // Logs the raster line, both collision latches and $D011 to (LOG),
+    // moves sprite 0, changes the colours in the middle of the line and sets
+    // the next raster IRQ 29 lines later
+    private static final int[] IRQ = { //
+            0x48, 0x98, 0x48, // PHA, TYA, PHA
+            0xad, 0x19, 0xd0, 0x8d, 0x19, 0xd0, // LDA $D019, STA $D019
+            0xa0, 0x00, // LDY #0
+            0xad, 0x12, 0xd0, 0x91, 0xfb, 0xc8, // LDA $D012, STA ($FB),Y, INY
+            0xad, 0x1e, 0xd0, 0x91, 0xfb, 0xc8, // LDA $D01E, STA ($FB),Y, INY
+            0xad, 0x1f, 0xd0, 0x91, 0xfb, 0xc8, // LDA $D01F, STA ($FB),Y, INY
+            0xad, 0x11, 0xd0, 0x91, 0xfb, // LDA $D011, STA ($FB),Y
+            0x18, 0xa5, 0xfb, 0x69, 0x04, 0x85, 0xfb, // CLC, LDA $FB, ADC #4, STA $FB
+            0x90, 0x02, 0xe6, 0xfc, // BCC +2, INC $FC
+            0xee, 0x00, 0xd0, // INC $D000
+            0xad, 0x12, 0xd0, 0x18, 0x69, 0x1d, // LDA $D012, CLC, ADC #29
+            0xc9, 0xf8, 0x90, 0x02, 0xa9, 0x30, // CMP #$F8, BCC +2, LDA #$30
+            0x8d, 0x12, 0xd0, // STA $D012
+            0xee, 0x20, 0xd0, 0xee, 0x21, 0xd0, // INC $D020, INC $D021
+            0x68, 0xa8, 0x68, // PLA, TAY, PLA
+            0x40 // RTI
+    };
+
+    // A still screen: border 2, background 5, the solid characters in colour 7
+    private static final int[] STILL = { //
+            0x78, // SEI
+            0xa9, 0x35, 0x85, 0x01, // LDA #$35, STA $01
+            0xa9, 0x03, 0x8d, 0x02, 0xdd, 0x8d, 0x00, 0xdd, // VIC bank 0
+            0xa9, 0x1b, 0x8d, 0x11, 0xd0, // LDA #$1B, STA $D011
+            0xa9, 0x1a, 0x8d, 0x18, 0xd0, // LDA #$1A, STA $D018
+            0xa9, 0x02, 0x8d, 0x20, 0xd0, // LDA #$02, STA $D020
+            0xa9, 0x05, 0x8d, 0x21, 0xd0, // LDA #$05, STA $D021
+            0xa9, 0x07, 0xa2, 0x00, // LDA #$07, LDX #0
+            0x9d, 0x00, 0xd8, 0x9d, 0x00, 0xd9, // STA $D800,X, STA $D900,X
+            0xe8, 0xd0, 0xf7, // INX, BNE
+            0x4c, 0x2e, 0xc0 // STILL_LOOP: JMP *
+    };
+
+    // X and Y of the sprites, 0 and 1, 2 and 3, 6 and 7 overlap
+    private static final int[] SPRITES = { //
+            0x60, 0x50, 0x6c, 0x58, 0xa0, 0x80, 0xa8, 0x88, //
+            0x30, 0xa0, 0xc0, 0xb0, 0x50, 0xc8, 0x58, 0xd0 };
+
+    private static class Run {
+        List<Long> irqCycles = new ArrayList<Long>();
+        List<Integer> frameNumbers = new ArrayList<Integer>();
+        List<Long> frameHashes = new ArrayList<Long>();
+        int[] log = new int[LOG_LENGTH];
+    }
+
+    private static EmulationContext createContext() {
+        EmulationContext context = new EmulationContext(false, null);
+        RAM ram = context.getRAM();
+        poke(ram, PROGRAM, MAIN);
+        poke(ram, IRQ_HANDLER, IRQ);
+        poke(ram, SPRITE_TABLE, SPRITES);
+        // solid sprites at $2000
+        for (int i = 0; i < 64; i++) {
+            ram.write0(0x2000 + i, 0xff);
+        }
+        for (int i = 0; i < 8; i++) {
+            ram.write0(0x07f8 + i, 0x2000 >> 6);
+        }
+        // characters at $2800, 0 is empty and 1 solid, the upper half of the
+        // screen is solid
+        for (int i = 0; i < 8; i++) {
+            ram.write0(0x2808 + i, 0xff);
+        }
+        for (int i = 0; i < 1000; i++) {
+            ram.write0(0x0400 + i, i < 12 * 40 ? 1 : 0);
+        }
+        ram.write0(0xfb, LOG & 0xff);
+        ram.write0(0xfc, LOG >> 8);
+
+        C64Cpu cpu = context.getCpu();
+        cpu.setUsageStatistics(false);
+        cpu.reset();
+        cpu.setPc(PROGRAM);
+        return context;
+    }
+
+    private static void poke(RAM ram, int address, int[] data) {
+        for (int i = 0; i < data.length; i++) {
+            ram.write0(address + i, data[i]);
+        }
+    }
+
+    private static Run run(EmulationContext context, int frames) {
+        final Run run = new Run();
+        final C64Screen vic = context.getVic();
+        vic.setFrameSink(new FrameSink() {
+            @Override
+            public void frameCompleted(int frameNumber, long cpuCycles, byte[] pixels, int[] palette) {
+                run.frameNumbers.add(frameNumber);
+                run.frameHashes.add(vic.getFrameHash());
+            }
+        });
+
+        C64Cpu cpu = context.getCpu();
+        long end = cpu.getCycles() + frames * FRAME_CYCLES;
+        while (cpu.getCycles() < end) {
+            cpu.emulateOp();
+            if (cpu.getPc() == IRQ_HANDLER) {
+                run.irqCycles.add(cpu.getCycles());
+            }
+        }
+        RAM ram = context.getRAM();
+        for (int i = 0; i < LOG_LENGTH; i++) {
+            run.log[i] = ram.read0(LOG + i);
+        }
+        return run;
+    }
+
+    private static Run runWithEventHorizon(boolean eventHorizon) {
+        EmulationContext context = createContext();
+        context.getCpu().setEventHorizon(eventHorizon);
+        return run(context, 12);
+    }
+
+    private static void assertSameRun(Run expected, Run actual) {
+        assertTrue(expected.irqCycles.size() > 50);
+        assertEquals(expected.irqCycles, actual.irqCycles);
+        assertArrayEquals(expected.log, actual.log);
+    }
+
+    @Test
+    public void testProgramCollides() {
+        Run run = runWithEventHorizon(false);
+        int spriteCollisions = 0;
+        int backgroundCollisions = 0;
+        for (int i = 0; i < run.irqCycles.size(); i++) {
+            spriteCollisions |= run.log[i * 4 + 1];
+            backgroundCollisions |= run.log[i * 4 + 2];
+        }
+        assertEquals(0x0f | 0xc0, spriteCollisions);
+        assertEquals(0x0f, backgroundCollisions);
+    }
+
+    @Test
+    public void testEventHorizonKeepsTiming() {
+        Run expected = runWithEventHorizon(false);
+        Run actual = runWithEventHorizon(true);
+        assertSameRun(expected, actual);
+        assertEquals(expected.frameHashes, actual.frameHashes);
+    }
+
+    private static EmulationContext createStillContext() {
+        EmulationContext context = createContext();
+        poke(context.getRAM(), PROGRAM, STILL);
+        C64Cpu cpu = context.getCpu();
+        while (cpu.getPc() != STILL_LOOP) {
+            cpu.emulateOp();
+        }
+        return context;
+    }
+
+    private static void runFrames(EmulationContext context, int frames) {
+        C64Cpu cpu = context.getCpu();
+        for (long end = cpu.getCycles() + frames * FRAME_CYCLES; cpu.getCycles() < end;) {
+            cpu.emulateOp();
+        }
+    }
+
+    /***
+     * Writes the VIC registers (address, value, ...) on the still screen
+     * and returns $D01E and $D01F after two frames.
+     */
+    private static int[] collide(int... writes) {
+        EmulationContext context = createStillContext();
+        C64Screen vic = context.getVic();
+        C64Cpu cpu = context.getCpu();
+        for (int i = 0; i < writes.length; i += 2) {
+            vic.write(writes[i], writes[i + 1], cpu.getCycles());
+        }
+        runFrames(context, 2);
+        return new int[] { vic.read(0xd01e, cpu.getCycles()), vic.read(0xd01f, cpu.getCycles()) };
+    }
+
+    @Test
+    public void testIndexedFrame() {
+        EmulationContext context = createStillContext();
+        final byte[] frame = new byte[C64Screen.IMG_TOTWIDTH * C64Screen.IMG_TOTHEIGHT];
+        final int[][] palettes = new int[1][];
+        context.getVic().setFrameSink(new FrameSink() {
+            @Override
+            public void frameCompleted(int frameNumber, long cpuCycles, byte[] pixels, int[] palette) {
+                System.arraycopy(pixels, 0, frame, 0, frame.length);
+                palettes[0] = palette;
+            }
+        });
+        runFrames(context, 3);
+
+        // colour indices, not ARGB
+        int colours = 0;
+        for (byte pixel : frame) {
+            assertEquals(0, pixel & ~15);
+            colours |= 1 << pixel;
+        }
+        assertEquals(1 << 2 | 1 << 5 | 1 << 7, colours);
+        assertEquals(2, frame[C64Screen.IMG_TOTHEIGHT / 2 * C64Screen.IMG_TOTWIDTH]);
+        assertArrayEquals(VICConstants.COLOR_SETS[0], palettes[0]);
+        // the sink cannot change the colour set
+        assertNotSame(VICConstants.COLOR_SETS[0], palettes[0]);
+    }
+
+    @Test
+    public void testSpriteCollisions() {
+        // sprites 0 and 1 side by side below the characters
+        assertArrayEquals(new int[] { 0, 0 }, collide(0xd015, 3, 0xd000, 0x40, 0xd001, 0xc0, 0xd002, 0x58, 0xd003, 0xc0));
+        assertArrayEquals(new int[] { 3, 0 }, collide(0xd015, 3, 0xd000, 0x40, 0xd001, 0xc0, 0xd002, 0x57, 0xd003, 0xc0));
+        // sprite 0 twice as wide
+        assertArrayEquals(new int[] { 0, 0 },
+                collide(0xd015, 3, 0xd01d, 1, 0xd000, 0x40, 0xd001, 0xc0, 0xd002, 0x70, 0xd003, 0xc0));
+        assertArrayEquals(new int[] { 3, 0 },
+                collide(0xd015, 3, 0xd01d, 1, 0xd000, 0x40, 0xd001, 0xc0, 0xd002, 0x6f, 0xd003, 0xc0));
+        // sprites 1 and 2 without sprite 0
+        assertArrayEquals(new int[] { 6, 0 }, collide(0xd015, 6, 0xd002, 0x40, 0xd003, 0xc0, 0xd004, 0x50, 0xd005, 0xd0));
+    }
+
+    @Test
+    public void testTransparentSpritePixels() {
+        EmulationContext context = createContext();
+        RAM ram = context.getRAM();
+        // sprite 1 only has its rightmost pixel
+        ram.write0(0x07f9, 0x2040 >> 6);
+        for (int i = 0; i < 63; i++) {
+            ram.write0(0x2040 + i, i % 3 == 2 ? 0x01 : 0x00);
+        }
+        poke(ram, PROGRAM, STILL);
+        C64Cpu cpu = context.getCpu();
+        while (cpu.getPc() != STILL_LOOP) {
+            cpu.emulateOp();
+        }
+        C64Screen vic = context.getVic();
+        vic.write(0xd015, 3, cpu.getCycles());
+        vic.write(0xd000, 0x40, cpu.getCycles());
+        vic.write(0xd001, 0xc0, cpu.getCycles());
+        vic.write(0xd003, 0xc0, cpu.getCycles());
+
+        // the pixel is 23 pixels right of the sprite position
+        vic.write(0xd002, 0x28, cpu.getCycles());
+        runFrames(context, 2);
+        assertEquals(0, vic.read(0xd01e, cpu.getCycles()));
+        vic.write(0xd002, 0x29, cpu.getCycles());
+        runFrames(context, 2);
+        assertEquals(3, vic.read(0xd01e, cpu.getCycles()));
+        vic.write(0xd002, 0x58, cpu.getCycles());
+        runFrames(context, 2);
+        assertEquals(0, vic.read(0xd01e, cpu.getCycles()));
+    }
+
+    @Test
+    public void testBackgroundCollisions() {
+        // below the characters
+        assertArrayEquals(new int[] { 0, 0 }, collide(0xd015, 1, 0xd000, 0x40, 0xd001, 0xc0));
+        // over the characters, also when behind them
+        assertArrayEquals(new int[] { 0, 1 }, collide(0xd015, 1, 0xd000, 0x40, 0xd001, 0x80));
+        assertArrayEquals(new int[] { 0, 1 }, collide(0xd015, 1, 0xd01b, 1, 0xd000, 0x40, 0xd001, 0x80));
+        // in the border
+        assertArrayEquals(new int[] { 0, 0 }, collide(0xd015, 1, 0xd000, 0x40, 0xd001, 0x10));
+    }
+
+    @Test
+    public void testCollisionsClearedByRead() {
+        EmulationContext context = createStillContext();
+        C64Screen vic = context.getVic();
+        C64Cpu cpu = context.getCpu();
+        vic.write(0xd015, 3, cpu.getCycles());
+        vic.write(0xd000, 0x40, cpu.getCycles());
+        vic.write(0xd001, 0x80, cpu.getCycles());
+        vic.write(0xd002, 0x48, cpu.getCycles());
+        vic.write(0xd003, 0x80, cpu.getCycles());
+        runFrames(context, 2);
+        assertEquals(3, vic.read(0xd01e, cpu.getCycles()));
+        assertEquals(0, vic.read(0xd01e, cpu.getCycles()));
+        assertEquals(3, vic.read(0xd01f, cpu.getCycles()));
+        assertEquals(0, vic.read(0xd01f, cpu.getCycles()));
+        // latched again by the next frame
+        runFrames(context, 1);
+        assertEquals(3, vic.read(0xd01e, cpu.getCycles()));
+    }
+
+    @Test
+    public void testChangedLines() {
+        EmulationContext context = createStillContext();
+        C64Screen vic = context.getVic();
+        runFrames(context, 3);
+        long still = vic.getFrameHash();
+        int identical = vic.getIdenticalFrames();
+        assertTrue(identical > 0);
+        assertEquals(0, vic.getChangedLineRanges().length);
+
+        runFrames(context, 1);
+        assertEquals(still, vic.getFrameHash());
+        assertEquals(identical + 1, vic.getIdenticalFrames());
+
+        // one character is eight lines
+        context.getRAM().write0(0x0400 + 20 * 40 + 5, 1);
+        runFrames(context, 1);
+        int[] ranges = vic.getChangedLineRanges();
+        assertEquals(2, ranges.length);
+        assertEquals(8, ranges[1] - ranges[0]);
+        assertTrue(vic.isLineChanged(ranges[0]));
+        assertTrue(!vic.isLineChanged(ranges[1]));
+        assertEquals(0, vic.getIdenticalFrames());
+        assertTrue(still != vic.getFrameHash());
+
+        // back to the same frame and hash
+        context.getRAM().write0(0x0400 + 20 * 40 + 5, 0);
+        runFrames(context, 1);
+        assertArrayEquals(ranges, vic.getChangedLineRanges());
+        assertEquals(still, vic.getFrameHash());
+
+        // the border is on every line, changed between two frames
+        final C64Screen screen = vic;
+        vic.setFrameSink(new FrameSink() {
+            @Override
+            public void frameCompleted(int frameNumber, long cpuCycles, byte[] pixels, int[] palette) {
+                screen.write(0xd020, 3, cpuCycles);
+                screen.setFrameSink(null);
+            }
+        });
+        runFrames(context, 2);
+        assertArrayEquals(new int[] { 0, C64Screen.IMG_TOTHEIGHT }, vic.getChangedLineRanges());
+        long total = vic.getIdenticalFrameTotal();
+        runFrames(context, 2);
+        assertEquals(total + 2, vic.getIdenticalFrameTotal());
+    }
+
+    @Test
+    public void testLineRenderingPaintsSameFrames() {
+        Run expected = run(createContext(), 12);
+        assertTrue(new HashSet<Long>(expected.frameHashes).size() > 5);
+
+        EmulationContext context = createContext();
+        context.getVic().setLineRendering(true);
+        Run actual = run(context, 12);
+        assertSameRun(expected, actual);
+        assertEquals(expected.frameHashes, actual.frameHashes);
+    }
+
+    @Test
+    public void testFrameSkipKeepsTiming() {
+        Run expected = run(createContext(), 12);
+        for (int frameSkip : new int[] { 1, 3, C64Screen.FRAME_SKIP_ALL }) {
+            EmulationContext context = createContext();
+            context.getVic().setFrameSkip(frameSkip);
+            Run actual = run(context, 12);
+            // the same raster IRQs and collisions
+            assertSameRun(expected, actual);
+
+            if (frameSkip == C64Screen.FRAME_SKIP_ALL) {
+                assertTrue(actual.frameNumbers.isEmpty());
+                continue;
+            }
+            assertTrue(actual.frameNumbers.size() >= expected.frameNumbers.size() / (frameSkip + 1));
+            // the painted frames are the same as without skipping
+            for (int i = 0; i < actual.frameNumbers.size(); i++) {
+                int frame = expected.frameNumbers.indexOf(actual.frameNumbers.get(i));
+                assertEquals(expected.frameHashes.get(frame), actual.frameHashes.get(i));
+                if (i > 0) {
+                    assertEquals(frameSkip + 1, actual.frameNumbers.get(i) - actual.frameNumbers.get(i - 1));
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalFrameSkip() {
+        new C64Screen(null, false).setFrameSkip(-2);
+    }
+
+    /***
+     * Clocks the VIC alone in steps of the given cycles, doing only the
+     * cycles in its schedule or all of them, and returns the frame hashes and
+     * the collision latches of each frame.
+     */
+    private static List<Long> clockAlone(int step, boolean unscheduled) {
+        EmulationContext context = createStillContext();
+        final C64Screen vic = context.getVic();
+        vic.unscheduled = unscheduled;
+        long cycle = context.getCpu().getCycles();
+        for (int i = 0; i < SPRITES.length; i++) {
+            vic.write(0xd000 + i, SPRITES[i], cycle);
+        }
+        vic.write(0xd015, 0xff, cycle);
+        vic.write(0xd017, 0x0c, cycle);
+        vic.write(0xd01d, 0x30, cycle);
+        vic.write(0xd01c, 0x81, cycle);
+
+        final List<Long> result = new ArrayList<Long>();
+        vic.setFrameSink(new FrameSink() {
+            @Override
+            public void frameCompleted(int frameNumber, long cpuCycles, byte[] pixels, int[] palette) {
+                result.add(vic.getFrameHash());
+                result.add((long) vic.read(0xd01e, cpuCycles));
+                result.add((long) vic.read(0xd01f, cpuCycles));
+            }
+        });
+        for (long end = cycle + 4 * FRAME_CYCLES; cycle < end; cycle += step) {
+            if (step == 1) {
+                vic.clock(cycle + 1);
+            } else {
+                vic.clock(cycle + 1, cycle + step);
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void testScheduleSkipsOnlyIdleCycles() {
+        List<Long> expected = clockAlone(1, true);
+        assertEquals(4 * 3, expected.size());
+        assertTrue(expected.get(1) != 0 && expected.get(2) != 0);
+        assertEquals(expected, clockAlone(1, false));
+        assertEquals(expected, clockAlone(7, false));
+        assertEquals(expected, clockAlone(FRAME_CYCLES, false));
+    }
+
+    /***
+     * The CPU only synchronizes with the VIC at the cycles given by
+     * getNextSyncCycle(), so the VIC must not pull BA at any other cycle.
+     */
+    @Test
+    public void testBAPulledAtSyncCycles() {
+        EmulationContext context = createContext();
+        C64Cpu cpu = context.getCpu();
+        C64Screen vic = context.getVic();
+        // let the program set up the VIC, from then on the VIC runs alone
+        while (cpu.getPc() != MAIN_LOOP) {
+            cpu.emulateOp();
+        }
+
+        long cycle = cpu.getCycles();
+        long next = vic.getNextSyncCycle(cycle);
+        long pullCycles = 0;
+        for (long end = cycle + 3 * FRAME_CYCLES; cycle < end;) {
+            cycle++;
+            int lineCycle = (int) (cycle - vic.lastLine);
+            long baLowUntil = cpu.baLowUntil;
+            vic.clock(cycle);
+            if (cpu.baLowUntil > cycle && cpu.baLowUntil != baLowUntil) {
+                assertEquals("BA pulled at line cycle " + lineCycle, next, cycle);
+                pullCycles |= 1L << lineCycle;
+            }
+            if (cycle >= next) {
+                next = vic.getNextSyncCycle(cycle);
+                // at the latest at the start of the next line
+                assertTrue(next > cycle && next <= vic.lastLine + VICConstants.SCAN_RATE);
+            }
+        }
+        // all the sprites and the bad lines have pulled BA
+        assertEquals(1L << 1 | 1L << 3 | 1L << 5 | 1L << 11 | 1L << 54 | 1L << 56 | 1L << 57 | 1L << 61, pullCycles);
+    }
+}
@@ -0,0 +1,72 @@
+package com.dreamfabric.jac64.emu.vic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.dreamfabric.jac64.emu.vic.FileFrameSink.Format;
+
+public class FileFrameSinkTest {
+
+    private static final int FRAME_SIZE = C64Screen.IMG_TOTWIDTH * C64Screen.IMG_TOTHEIGHT;
+
+    private static byte[] writeTwoFrames(Format format, int clock, int cyclesPerFrame) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FileFrameSink sink = new FileFrameSink(out, format, 1, clock, cyclesPerFrame);
+        // the VIC hands over a larger array
+        byte[] pixels = new byte[FRAME_SIZE + 100];
+        int[] palette = VICConstants.COLOR_SETS[0].clone();
+        sink.frameCompleted(0, 0, pixels, palette);
+        Arrays.fill(pixels, (byte) 1);
+        sink.frameCompleted(1, cyclesPerFrame, pixels, palette);
+        sink.close();
+        return out.toByteArray();
+    }
+
+    private static String text(byte[] data, int from, int length) {
+        return new String(data, from, length, StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void testRaw() throws Exception {
+        byte[] data = writeTwoFrames(Format.RAW, VICConstants.PAL_CLOCK, FileFrameSink.PAL_CYCLES_PER_FRAME);
+        assertEquals(2 * FRAME_SIZE, data.length);
+        assertEquals(0, data[FRAME_SIZE - 1]);
+        assertEquals(1, data[FRAME_SIZE]);
+        assertEquals(1, data[2 * FRAME_SIZE - 1]);
+    }
+
+    @Test
+    public void testY4M() throws Exception {
+        byte[] data = writeTwoFrames(Format.Y4M, VICConstants.PAL_CLOCK, FileFrameSink.PAL_CYCLES_PER_FRAME);
+        // 985248 / 19656 Hz
+        String header = "YUV4MPEG2 W" + C64Screen.IMG_TOTWIDTH + " H" + C64Screen.IMG_TOTHEIGHT
+                + " F13684:273 Ip A1:1 C444\n";
+        int frameLength = "FRAME\n".length() + 3 * FRAME_SIZE;
+        assertEquals(header.length() + 2 * frameLength, data.length);
+        assertEquals(header, text(data, 0, header.length()));
+
+        int first = header.length();
+        int second = first + frameLength;
+        assertEquals("FRAME\n", text(data, first, 6));
+        assertEquals("FRAME\n", text(data, second, 6));
+        // black and white in the Y plane, no colour in U and V
+        assertEquals(16, data[first + 6] & 0xff);
+        assertEquals(235, data[second + 6] & 0xff);
+        assertEquals(128, data[second + 6 + FRAME_SIZE] & 0xff);
+        assertEquals(128, data[second + 6 + 2 * FRAME_SIZE] & 0xff);
+    }
+
+    @Test
+    public void testNTSCFrameRate() throws Exception {
+        byte[] data = writeTwoFrames(Format.Y4M, VICConstants.NTSC_CLOCK, FileFrameSink.NTSC_CYCLES_PER_FRAME);
+        String header = text(data, 0, 64);
+        // 263 lines of 65 cycles
+        assertTrue(header, header.contains(" F1022727:17095 "));
+    }
+}
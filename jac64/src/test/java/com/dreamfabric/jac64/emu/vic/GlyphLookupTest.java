@@ -0,0 +1,87 @@
+package com.dreamfabric.jac64.emu.vic;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class GlyphLookupTest {
+
+    private static byte[] pixels(byte[] row, int data) {
+        return Arrays.copyOfRange(row, data << 3, (data << 3) + 8);
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] result = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = (byte) values[i];
+        }
+        return result;
+    }
+
+    @Test
+    public void testForeground() {
+        // bit n is the n:th pixel from the left
+        assertEquals(0x01, GlyphLookup.HIRES_FOREGROUND[0x80]);
+        assertEquals(0x80, GlyphLookup.HIRES_FOREGROUND[0x01]);
+        assertEquals(0xff, GlyphLookup.HIRES_FOREGROUND[0xff]);
+
+        // colours 3, 2, 1, 0: only 2 and 3 are foreground
+        assertArrayEquals(bytes(3, 3, 2, 2, 1, 1, 0, 0), Arrays.copyOfRange(GlyphLookup.MULTICOLOR_PIXELS, 0xe4 << 3,
+                (0xe4 << 3) + 8));
+        assertEquals(0x0f, GlyphLookup.MULTICOLOR_FOREGROUND[0xe4]);
+        assertEquals(0x00, GlyphLookup.MULTICOLOR_FOREGROUND[0x55]);
+        assertEquals(0xff, GlyphLookup.MULTICOLOR_FOREGROUND[0xaa]);
+    }
+
+    @Test
+    public void testText() {
+        GlyphLookup glyphs = new GlyphLookup();
+        glyphs.setBackgroundColor(0, 6);
+        byte[] row = glyphs.getText(14);
+        assertArrayEquals(bytes(14, 6, 14, 6, 6, 14, 6, 14), pixels(row, 0xa5));
+        assertSame(row, glyphs.getText(14));
+
+        // the same colour keeps the rows
+        glyphs.setBackgroundColor(0, 6);
+        assertSame(row, glyphs.getText(14));
+
+        glyphs.setBackgroundColor(0, 2);
+        byte[] changed = glyphs.getText(14);
+        assertNotSame(row, changed);
+        assertArrayEquals(bytes(14, 2, 14, 2, 2, 14, 2, 14), pixels(changed, 0xa5));
+    }
+
+    @Test
+    public void testExtendedAndMulticolorText() {
+        GlyphLookup glyphs = new GlyphLookup();
+        glyphs.setBackgroundColor(0, 1);
+        glyphs.setBackgroundColor(1, 2);
+        glyphs.setBackgroundColor(2, 3);
+        glyphs.setBackgroundColor(3, 4);
+
+        assertArrayEquals(bytes(5, 4, 4, 4, 4, 4, 4, 5), pixels(glyphs.getExtendedText(3, 5), 0x81));
+        assertArrayEquals(bytes(5, 2, 2, 2, 2, 2, 2, 5), pixels(glyphs.getExtendedText(1, 5), 0x81));
+
+        // $D021, $D022, $D023 and the pen colour
+        assertArrayEquals(bytes(7, 7, 3, 3, 2, 2, 1, 1), pixels(glyphs.getMulticolorText(7), 0xe4));
+        glyphs.setBackgroundColor(1, 9);
+        assertArrayEquals(bytes(7, 7, 3, 3, 9, 9, 1, 1), pixels(glyphs.getMulticolorText(7), 0xe4));
+    }
+
+    @Test
+    public void testBitmap() {
+        GlyphLookup glyphs = new GlyphLookup();
+        // pen colour in the high nibble, background in the low one
+        byte[] row = glyphs.getBitmap(0x5c);
+        assertArrayEquals(bytes(5, 5, 12, 12, 12, 12, 5, 5), pixels(row, 0xc3));
+
+        // not depending on the background registers
+        glyphs.setBackgroundColor(0, 3);
+        assertSame(row, glyphs.getBitmap(0x5c));
+    }
+}
@@ -0,0 +1,95 @@
+package com.dreamfabric.jac64.emu.vic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class TripleBufferTest {
+
+    @Test
+    public void testHandoff() {
+        TripleBuffer buffer = new TripleBuffer(4);
+        assertFalse(buffer.takeLatest());
+        assertNotSame(buffer.getBackFrame(), buffer.getFrontFrame());
+
+        int[] first = buffer.getBackFrame();
+        Arrays.fill(first, 1);
+        buffer.publish();
+        assertNotSame(first, buffer.getBackFrame());
+        assertNotSame(buffer.getBackFrame(), buffer.getFrontFrame());
+
+        assertTrue(buffer.takeLatest());
+        assertSame(first, buffer.getFrontFrame());
+        // taken, so no longer fresh
+        assertFalse(buffer.takeLatest());
+        assertSame(first, buffer.getFrontFrame());
+    }
+
+    @Test
+    public void testOnlyLatestTaken() {
+        TripleBuffer buffer = new TripleBuffer(4);
+        for (int i = 1; i <= 5; i++) {
+            Arrays.fill(buffer.getBackFrame(), i);
+            buffer.publish();
+            assertNotSame(buffer.getBackFrame(), buffer.getFrontFrame());
+        }
+        assertTrue(buffer.takeLatest());
+        assertEquals(5, buffer.getFrontFrame()[0]);
+        assertFalse(buffer.takeLatest());
+
+        // the producer never gets the front frame
+        for (int i = 6; i <= 8; i++) {
+            Arrays.fill(buffer.getBackFrame(), i);
+            buffer.publish();
+            assertEquals(5, buffer.getFrontFrame()[0]);
+        }
+        assertTrue(buffer.takeLatest());
+        assertEquals(8, buffer.getFrontFrame()[0]);
+    }
+
+    @Test
+    public void testConcurrentHandoff() throws Exception {
+        final int frames = 200000;
+        final TripleBuffer buffer = new TripleBuffer(64);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    int last = 0;
+                    while (last < frames) {
+                        if (buffer.takeLatest()) {
+                            int[] frame = buffer.getFrontFrame();
+                            int number = frame[0];
+                            // complete and newer than the one before
+                            for (int value : frame) {
+                                assertEquals(number, value);
+                            }
+                            assertTrue(number > last);
+                            last = number;
+                        }
+                    }
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            }
+        };
+        consumer.start();
+        for (int i = 1; i <= frames && failure.get() == null; i++) {
+            Arrays.fill(buffer.getBackFrame(), i);
+            buffer.publish();
+        }
+        consumer.join(10000);
+        assertFalse(consumer.isAlive());
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+    }
+}